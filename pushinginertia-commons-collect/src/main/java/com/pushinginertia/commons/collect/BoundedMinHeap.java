@@ -16,69 +16,53 @@
 package com.pushinginertia.commons.collect;
 
 import com.pushinginertia.commons.core.validation.ValidateAs;
-import com.pushinginertia.commons.lang.Tuple2;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 
 /**
- * Extends {@link java.util.PriorityQueue} into a min-heap with a maximum size. Each inserted element must also have an
- * integer rank associated with it, which is used to maintain the heap. When the heap reaches its maximum size, the
- * element with the lowest rank (the root) is removed when an item is added that is >= the currently highest ranked
- * element.
+ * A min-heap with a maximum size. Each inserted element must also have an integer rank associated with it, which is
+ * used to maintain the heap. When the heap reaches its maximum size, the element with the lowest rank (the root) is
+ * removed when an item is added that is ranked higher than it, so the heap always holds the highest ranked items that
+ * have been added.
+ * <p>
+ * The heap is stored in an {@link IntBoundedMinHeap}, so ranks are never boxed once they're added.
  */
 public class BoundedMinHeap<T extends Serializable> {
-	private final PriorityQueue<ItemWithRank<T>> queue;
-	private final int maxSize;
-	private Integer maxRank = null;
-
-	private static class ItemWithRank<T extends Serializable> extends Tuple2<T, Integer>
-			implements Comparable<ItemWithRank<T>> {
-		private static final long serialVersionUID = 1L;
-
-		private ItemWithRank(final T item, final Integer score) {
-			super(item, score);
-		}
-
-		@SuppressWarnings("NullableProblems")
-		public int compareTo(final ItemWithRank<T> rhs) {
-			return getV2().compareTo(rhs.getV2());
-		}
-	}
+	private final IntBoundedMinHeap<T> heap;
 
 	public BoundedMinHeap(final int size) {
-		this.queue = new PriorityQueue<ItemWithRank<T>>(size);
-		this.maxSize = size;
+		this.heap = new IntBoundedMinHeap<T>(size);
 	}
 
 	/**
 	 * Adds an item with a given rank. When the heap reaches its maximum size, the element with the lowest rank (the
-	 * root) is removed if the given rank is >= the currently highest ranked element.
+	 * root) is removed if the given rank is higher than it. Otherwise the item is discarded.
 	 * @param item Item to add to the heap.
 	 * @param rank Rank associated with the item.
 	 */
 	public void add(final T item, final Integer rank) {
 		ValidateAs.notNull(rank, "rank");
-		final ItemWithRank<T> itemWithRank = new ItemWithRank<T>(item, rank);
+		heap.add(item, rank);
+	}
 
-		if (queue.size() < maxSize) {
-			if (maxRank == null) {
-				maxRank = rank;
-			} else if (maxRank.compareTo(rank) < 0) {
-				maxRank = rank;
-			}
-			queue.add(itemWithRank);
-			return;
-		}
+	/**
+	 * Indicates if the heap has reached its maximum size, meaning that further items are only kept if they rank higher
+	 * than {@link #getMinRank()}.
+	 * @return true if full
+	 */
+	public boolean isFull() {
+		return heap.isFull();
+	}
 
-		final int result = maxRank.compareTo(rank);
-		if (result <= 0) {
-			maxRank = rank;
-			queue.poll();  // remove the root, which is the min value that we no longer want
-			queue.add(itemWithRank);
-		}
+	/**
+	 * Returns the lowest rank in the heap, which is the rank of the root element.
+	 * @return lowest rank
+	 * @throws IllegalStateException if the heap is empty
+	 */
+	public int getMinRank() throws IllegalStateException {
+		return heap.getMinRank();
 	}
 
 	/**
@@ -86,7 +70,7 @@ public class BoundedMinHeap<T extends Serializable> {
 	 * @return Number of elements.
 	 */
 	public int size() {
-		return queue.size();
+		return heap.size();
 	}
 
 	/**
@@ -139,84 +123,39 @@ public class BoundedMinHeap<T extends Serializable> {
 	}
 
 	/**
-	 * Converts the items within the heap into a sorted list ordered by descending rank. Internally, an insertion sort
-	 * is performed since a min-heap has the property of being close to being sorted. This is generally an O(n)
-	 * operation.
+	 * Converts the items within the heap into a sorted list ordered by descending rank. A copy of the heap is heap
+	 * sorted, which is an O(n log n) operation.
 	 * @return List of items sorted by descending rank.
 	 */
 	public List<T> toListDescendingRank() {
-		final int size = queue.size();
-		final List<T> l = new ArrayList<T>(size);
-		for (int i = 0; i < size - 1; i++) {
-			l.add(null);
-		}
-		final int[] ranks = new int[size];
-		int len = size;
-		T item;
-		int rank;
-		for (final ItemWithRank<T> itemWithRank: queue) {
-			item = itemWithRank.getV1();
-			rank = itemWithRank.getV2();
-			if (len == size) {
-				l.add(item);
-				ranks[len - 1] = rank;
-			} else {
-				if (rank >= ranks[len]) {
-					l.set(len - 1, item);
-					ranks[len - 1] = rank;
-				} else {
-					// insertion sort
-					int insertIndex = findInsertIndexReverseOrder(rank, ranks, len, size - 1);
-					for (int i = len - 1; i < insertIndex; i++) {
-						ranks[i] = ranks[i + 1];
-						l.set(i, l.get(i + 1));
-					}
-					ranks[insertIndex] = rank;
-					l.set(insertIndex, item);
-				}
-			}
-			len--;
-		}
-		return l;
+		return heap.toListDescendingRank();
 	}
 
 	/**
-	 * Converts the items within the heap into a sorted list ordered by ascending rank. Internally, an insertion sort
-	 * is performed since a min-heap has the property of being close to being sorted. This is generally an O(n)
-	 * operation.
+	 * Converts the items within the heap into a sorted list ordered by ascending rank. A copy of the heap is heap
+	 * sorted, which is an O(n log n) operation.
 	 * @return List of items sorted by ascending rank.
 	 */
 	public List<T> toListAscendingRank() {
-		final List<T> l = new ArrayList<T>(queue.size());
-		final int[] ranks = new int[queue.size()];
-		int len = 0;
-		T item;
-		int rank;
-		for (final ItemWithRank<T> itemWithRank: queue) {
-			item = itemWithRank.getV1();
-			rank = itemWithRank.getV2();
-			if (len == 0) {
-				l.add(item);
-				ranks[0] = rank;
-			} else {
-				if (ranks[len - 1] <= rank) {
-					l.add(item);
-					ranks[len] = rank;
-				} else {
-					// insertion sort
-					int insertIndex = findInsertIndex(rank, ranks, len - 1);
-					ranks[len] = ranks[len - 1];
-					l.add(l.get(len - 1));
-					for (int i = len - 1; i > insertIndex; i--) {
-						ranks[i] = ranks[i - 1];
-						l.set(i, l.get(i - 1));
-					}
-					ranks[insertIndex] = rank;
-					l.set(insertIndex, item);
-				}
-			}
-			len++;
-		}
-		return l;
+		return heap.toListAscendingRank();
+	}
+
+	/**
+	 * Returns an iterator over the items ordered by descending rank that only sorts as far as it is read, so reading
+	 * the first page of p items out of n costs O(n + p log n).
+	 * @return New iterator.
+	 * @see IntBoundedMinHeap#iteratorDescendingRank()
+	 */
+	public Iterator<T> iteratorDescendingRank() {
+		return heap.iteratorDescendingRank();
+	}
+
+	/**
+	 * Returns an iterator over the items ordered by ascending rank that only sorts as far as it is read.
+	 * @return New iterator.
+	 * @see IntBoundedMinHeap#iteratorAscendingRank()
+	 */
+	public Iterator<T> iteratorAscendingRank() {
+		return heap.iteratorAscendingRank();
 	}
 }
@@ -0,0 +1,307 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A min-heap with a maximum size that keeps the highest ranked items added to it, like {@link BoundedMinHeap}, but with
+ * int ranks. Ranks are kept in a primitive array alongside an array of the items, ordered as a binary heap, so no
+ * boxing or wrapper objects are involved: an item that ranks too low is rejected by a single comparison with the root
+ * and an item that is kept is sifted into place in both arrays. Nothing is allocated after construction until the
+ * results are converted into a list.
+ * <p>
+ * An item only displaces the root when it ranks strictly higher, so among equally ranked items the earliest added are
+ * kept.
+ * @param <T> Type of the items stored in the heap.
+ */
+public class IntBoundedMinHeap<T> {
+	private final int[] ranks;
+	private final Object[] items;
+	private int size = 0;
+
+	/**
+	 * Creates an empty heap.
+	 * @param maxSize Maximum number of items to keep.
+	 */
+	public IntBoundedMinHeap(final int maxSize) {
+		ValidateAs.nonNegative(maxSize, "maxSize");
+		this.ranks = new int[maxSize];
+		this.items = new Object[maxSize];
+	}
+
+	/**
+	 * Wraps arrays that are already ordered as a full heap.
+	 */
+	private IntBoundedMinHeap(final int[] ranks, final Object[] items) {
+		this.ranks = ranks;
+		this.items = items;
+		this.size = ranks.length;
+	}
+
+	/**
+	 * Adds an item with a given rank. When the heap reaches its maximum size, the element with the lowest rank (the
+	 * root) is removed if the given rank is higher than it. Otherwise the item is discarded.
+	 * @param item Item to add to the heap.
+	 * @param rank Rank associated with the item.
+	 * @return true if the item was kept
+	 */
+	public boolean add(final T item, final int rank) {
+		if (size < ranks.length) {
+			siftUp(size++, item, rank);
+			return true;
+		}
+		if (size == 0 || rank <= ranks[0]) {
+			return false;
+		}
+		siftDown(0, size, item, rank);
+		return true;
+	}
+
+	/**
+	 * Adds every item of another heap with its rank, such as to merge heaps that were filled separately.
+	 * @param heap Heap to add the items of (left unchanged).
+	 */
+	public void addAll(final IntBoundedMinHeap<? extends T> heap) {
+		for (int i = 0; i < heap.size; i++) {
+			add(IntBoundedMinHeap.<T>item(heap.items, i), heap.ranks[i]);
+		}
+	}
+
+	/**
+	 * Indicates if an item with a given rank would be kept by {@link #add(Object, int)}, which lets callers avoid
+	 * creating an item that would be discarded.
+	 * @param rank Rank of the item.
+	 * @return true if the item would be kept
+	 */
+	public boolean accepts(final int rank) {
+		return size < ranks.length || (size > 0 && rank > ranks[0]);
+	}
+
+	/**
+	 * Moves a hole at a given index up towards the root until the given rank fits into it.
+	 */
+	private void siftUp(int index, final Object item, final int rank) {
+		while (index > 0) {
+			final int parent = (index - 1) >>> 1;
+			if (rank >= ranks[parent]) {
+				break;
+			}
+			ranks[index] = ranks[parent];
+			items[index] = items[parent];
+			index = parent;
+		}
+		ranks[index] = rank;
+		items[index] = item;
+	}
+
+	/**
+	 * Moves a hole at a given index down towards the leaves until the given rank fits into it.
+	 */
+	private void siftDown(int index, final int length, final Object item, final int rank) {
+		final int half = length >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			final int right = child + 1;
+			if (right < length && ranks[right] < ranks[child]) {
+				child = right;
+			}
+			if (ranks[child] >= rank) {
+				break;
+			}
+			ranks[index] = ranks[child];
+			items[index] = items[child];
+			index = child;
+		}
+		ranks[index] = rank;
+		items[index] = item;
+	}
+
+	/**
+	 * Indicates if the heap has reached its maximum size, meaning that further items are only kept if they rank higher
+	 * than {@link #getMinRank()}.
+	 * @return true if full
+	 */
+	public boolean isFull() {
+		return size >= ranks.length;
+	}
+
+	/**
+	 * Returns the lowest rank in the heap, which is the rank of the root element.
+	 * @return lowest rank
+	 * @throws IllegalStateException if the heap is empty
+	 */
+	public int getMinRank() throws IllegalStateException {
+		if (size == 0) {
+			throw new IllegalStateException("Heap is empty.");
+		}
+		return ranks[0];
+	}
+
+	/**
+	 * Returns the number of elements currently stored in the min-heap.
+	 * @return Number of elements.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Converts the items within the heap into a sorted list ordered by descending rank. A copy of the heap is sorted
+	 * with a heap sort, which is an O(n log n) operation, and the heap itself is left unchanged.
+	 * @return List of items sorted by descending rank.
+	 */
+	public List<T> toListDescendingRank() {
+		final Object[] sorted = sortedDescending();
+		final List<T> l = new ArrayList<T>(size);
+		for (int i = 0; i < size; i++) {
+			l.add(item(sorted, i));
+		}
+		return l;
+	}
+
+	/**
+	 * Converts the items within the heap into a sorted list ordered by ascending rank. A copy of the heap is sorted
+	 * with a heap sort, which is an O(n log n) operation, and the heap itself is left unchanged.
+	 * @return List of items sorted by ascending rank.
+	 */
+	public List<T> toListAscendingRank() {
+		final Object[] sorted = sortedDescending();
+		final List<T> l = new ArrayList<T>(size);
+		for (int i = size - 1; i >= 0; i--) {
+			l.add(item(sorted, i));
+		}
+		return l;
+	}
+
+	/**
+	 * Returns an iterator over the items ordered by descending rank that only sorts as far as it is read. A copy of
+	 * the heap is rearranged into a max-heap, which is O(n), and each item read removes the root of the copy in
+	 * O(log n). Reading the first p items therefore costs O(n + p log n), which is much cheaper than sorting every item
+	 * when only the first page of results is shown. The iterator isn't affected by items added to the heap afterwards.
+	 * @return New iterator.
+	 */
+	public Iterator<T> iteratorDescendingRank() {
+		return new SortedIterator<T>(Arrays.copyOf(ranks, size), Arrays.copyOf(items, size), true);
+	}
+
+	/**
+	 * Returns an iterator over the items ordered by ascending rank that only sorts as far as it is read. The heap is
+	 * already ordered by ascending rank, so a copy of it is used as is and each item read removes its root in
+	 * O(log n). The iterator isn't affected by items added to the heap afterwards.
+	 * @return New iterator.
+	 */
+	public Iterator<T> iteratorAscendingRank() {
+		return new SortedIterator<T>(Arrays.copyOf(ranks, size), Arrays.copyOf(items, size), false);
+	}
+
+	/**
+	 * Reads items from a private heap in rank order by repeatedly removing its root.
+	 */
+	private static final class SortedIterator<T> implements Iterator<T> {
+		private final int[] ranks;
+		private final Object[] items;
+		private final boolean descending;
+		private int length;
+
+		private SortedIterator(final int[] ranks, final Object[] items, final boolean descending) {
+			this.ranks = ranks;
+			this.items = items;
+			this.descending = descending;
+			this.length = ranks.length;
+			if (descending) {
+				for (int i = (length >>> 1) - 1; i >= 0; i--) {
+					siftDown(i, items[i], ranks[i]);
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return length > 0;
+		}
+
+		public T next() {
+			if (length == 0) {
+				throw new NoSuchElementException();
+			}
+			final T next = item(items, 0);
+			length--;
+			if (length > 0) {
+				siftDown(0, items[length], ranks[length]);
+			}
+			items[length] = null;
+			return next;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Indicates if rank a belongs closer to the root than rank b.
+		 */
+		private boolean precedes(final int a, final int b) {
+			return descending ? a > b : a < b;
+		}
+
+		private void siftDown(int index, final Object item, final int rank) {
+			final int half = length >>> 1;
+			while (index < half) {
+				int child = 2 * index + 1;
+				final int right = child + 1;
+				if (right < length && precedes(ranks[right], ranks[child])) {
+					child = right;
+				}
+				if (!precedes(ranks[child], rank)) {
+					break;
+				}
+				ranks[index] = ranks[child];
+				items[index] = items[child];
+				index = child;
+			}
+			ranks[index] = rank;
+			items[index] = item;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T item(final Object[] items, final int index) {
+		return (T) items[index];
+	}
+
+	/**
+	 * Heap sorts a copy of the items. Each step swaps the root, which has the lowest remaining rank, to the end of the
+	 * shrinking heap, so the items end up ordered by descending rank.
+	 * @return Copy of the items ordered by descending rank.
+	 */
+	private Object[] sortedDescending() {
+		final IntBoundedMinHeap<T> copy = new IntBoundedMinHeap<T>(Arrays.copyOf(ranks, size), Arrays.copyOf(items, size));
+		for (int length = size - 1; length > 0; length--) {
+			final int rank = copy.ranks[length];
+			final Object item = copy.items[length];
+			copy.ranks[length] = copy.ranks[0];
+			copy.items[length] = copy.items[0];
+			copy.siftDown(0, length, item, rank);
+		}
+		return copy.items;
+	}
+}
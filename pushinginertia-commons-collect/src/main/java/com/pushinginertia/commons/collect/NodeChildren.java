@@ -21,7 +21,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +32,13 @@ import java.util.Set;
 public class NodeChildren<T extends NodeChildren.Node<T>> implements Serializable {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * States of a node while checking for cycles.
+	 */
+	private static final byte UNVISITED = 0;
+	private static final byte VISITING = 1;
+	private static final byte LEADS_TO_ROOT = 2;
+
 	private Set<T> children;
 
 	/**
@@ -51,29 +57,77 @@ public class NodeChildren<T extends NodeChildren.Node<T>> implements Serializabl
 	/**
 	 * Instantiates a new instance as a root node. This node will point to all given nodes with no parents, defined as
 	 * {@link NodeChildren.Node#getParent()} == null. The remaining nodes with parents will be added as children in
-	 * their parent nodes' {@link NodeChildren} instances.
+	 * their parent nodes' {@link NodeChildren} instances. A node's parent is looked up in the list by its id, so the
+	 * parent reference only needs to have the right id.
+	 * <p>
+	 * The nodes are indexed by id and then each one is attached to its parent, which takes linear time regardless of
+	 * the order of the list. The list itself isn't modified. Nothing is attached unless the whole list forms a valid
+	 * hierarchy.
 	 * @param unsortedList A list of nodes. Each node must have its parent reference set, but the children references
 	 *                     will be computed.
+	 * @throws IllegalArgumentException if two different nodes have the same id, a node's parent isn't in the list,
+	 * or the parents of some nodes form a cycle
 	 */
-	public NodeChildren(final List<T> unsortedList) {
-		final Map<Long, T> nodeMap = new HashMap<>();
-
-		while (!unsortedList.isEmpty()) {
-			for (final Iterator<T> itr = unsortedList.iterator(); itr.hasNext();) {
-				final T node = itr.next();
-				nodeMap.put(node.getId(), node);
-
-				final T parentCategory = node.getParent();
-				if (parentCategory != null) {
-					final Long parentCategoryId = parentCategory.getId();
-					if (nodeMap.containsKey(parentCategoryId)) {
-						nodeMap.get(parentCategoryId).getChildren().addChild(node);
-						itr.remove();
-					}
-				} else {
-					addChild(node);
-					itr.remove();
+	public NodeChildren(final List<T> unsortedList) throws IllegalArgumentException {
+		final List<T> nodes = new ArrayList<>(unsortedList);
+		final Map<Long, Integer> indexById = new HashMap<>(nodes.size() * 2);
+		for (int i = 0; i < nodes.size(); i++) {
+			final T node = nodes.get(i);
+			final Integer previous = indexById.put(node.getId(), i);
+			if (previous != null && nodes.get(previous) != node) {
+				throw new IllegalArgumentException("Duplicate node id: " + node.getId());
+			}
+		}
+
+		// resolve each node's parent to its position in the list, or -1 for a root
+		final int[] parentIndex = new int[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			final T parent = nodes.get(i).getParent();
+			if (parent == null) {
+				parentIndex[i] = -1;
+			} else {
+				final Integer index = indexById.get(parent.getId());
+				if (index == null) {
+					throw new IllegalArgumentException(
+							"Parent " + parent.getId() + " of node " + nodes.get(i).getId() + " is not in the list.");
 				}
+				parentIndex[i] = index;
+			}
+		}
+		assertAcyclic(nodes, parentIndex);
+
+		for (int i = 0; i < nodes.size(); i++) {
+			final T node = nodes.get(i);
+			if (parentIndex[i] < 0) {
+				addChild(node);
+			} else {
+				nodes.get(parentIndex[i]).getChildren().addChild(node);
+			}
+		}
+	}
+
+	/**
+	 * Checks that following the parents of every node leads to a root. Each node's chain of parents is walked until it
+	 * reaches a root or a node that is already known to lead to one, and every node on the way is marked, so each node
+	 * is only walked through once.
+	 * @param nodes Nodes in the hierarchy.
+	 * @param parentIndex Position of each node's parent, or -1 for a root.
+	 * @throws IllegalArgumentException if there is a cycle
+	 */
+	private static void assertAcyclic(final List<? extends Node<?>> nodes, final int[] parentIndex)
+	throws IllegalArgumentException {
+		final byte[] state = new byte[parentIndex.length];
+		for (int i = 0; i < parentIndex.length; i++) {
+			int j = i;
+			while (j >= 0 && state[j] == UNVISITED) {
+				state[j] = VISITING;
+				j = parentIndex[j];
+			}
+			if (j >= 0 && state[j] == VISITING) {
+				throw new IllegalArgumentException("Node " + nodes.get(j).getId() + " is its own ancestor.");
+			}
+			for (j = i; j >= 0 && state[j] == VISITING; j = parentIndex[j]) {
+				state[j] = LEADS_TO_ROOT;
 			}
 		}
 	}
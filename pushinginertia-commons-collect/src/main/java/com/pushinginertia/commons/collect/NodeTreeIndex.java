@@ -0,0 +1,335 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable index of a hierarchy assembled with {@link NodeChildren}, which answers questions about descendants and
+ * ancestors from primitive arrays instead of walking the children of each node.
+ * <p>
+ * Nodes are numbered in depth-first pre-order, so the descendants of a node are the nodes numbered from just after it
+ * up to the end of its subtree. Checking if a node is a descendant of another compares two numbers, and the
+ * descendants of a node are returned as a view of a contiguous range of an array. Each node also stores its parent,
+ * its depth and a jump pointer to one of its ancestors, chosen (as in a skew-binary number system) so that any
+ * ancestor, and the lowest common ancestor of two nodes, is reached in O(log n) jumps with O(n) memory.
+ * <p>
+ * The index is a snapshot: changes made to the hierarchy after it's built aren't reflected.
+ * @param <T> Type of the node.
+ */
+public final class NodeTreeIndex<T extends NodeChildren.Node<T>> {
+	private static final int NONE = -1;
+
+	/**
+	 * Nodes by position, in depth-first pre-order.
+	 */
+	private final Object[] nodes;
+	private final Map<Long, Integer> positionById;
+	private final int[] parent;
+	private final int[] depth;
+	/**
+	 * Position just after the last descendant of each node.
+	 */
+	private final int[] subtreeEnd;
+	private final int[] jump;
+
+	/**
+	 * Indexes a hierarchy.
+	 * @param root Root of the hierarchy, whose children are the top level nodes.
+	 * @throws IllegalArgumentException if a node occurs more than once in the hierarchy
+	 */
+	public NodeTreeIndex(final NodeChildren<T> root) throws IllegalArgumentException {
+		ValidateAs.notNull(root, "root");
+		final List<T> ordered = new ArrayList<>();
+		final List<Integer> parents = new ArrayList<>();
+		positionById = new HashMap<>();
+
+		// depth-first traversal with an explicit stack so that deep hierarchies don't overflow the call stack
+		final List<T> stack = new ArrayList<>();
+		final List<Integer> stackParents = new ArrayList<>();
+		push(root, NONE, stack, stackParents);
+		while (!stack.isEmpty()) {
+			final int last = stack.size() - 1;
+			final T node = stack.remove(last);
+			final int parentPosition = stackParents.remove(last);
+			final int position = ordered.size();
+			if (positionById.put(node.getId(), position) != null) {
+				throw new IllegalArgumentException("Node " + node.getId() + " occurs more than once in the hierarchy.");
+			}
+			ordered.add(node);
+			parents.add(parentPosition);
+			push(node.getChildren(), position, stack, stackParents);
+		}
+
+		final int size = ordered.size();
+		nodes = ordered.toArray();
+		parent = new int[size];
+		depth = new int[size];
+		jump = new int[size];
+		for (int i = 0; i < size; i++) {
+			final int p = parents.get(i);
+			parent[i] = p;
+			if (p == NONE) {
+				depth[i] = 0;
+				jump[i] = NONE;
+			} else {
+				depth[i] = depth[p] + 1;
+				// jump twice as far as the parent does when the parent's jump and its jump's jump are the same length
+				final int q = jump[p];
+				if (q != NONE && jump[q] != NONE && depth[p] - depth[q] == depth[q] - depth[jump[q]]) {
+					jump[i] = jump[q];
+				} else {
+					jump[i] = p;
+				}
+			}
+		}
+
+		// in pre-order every node comes before its descendants, so subtree sizes can be summed in reverse
+		subtreeEnd = new int[size];
+		for (int i = size - 1; i >= 0; i--) {
+			subtreeEnd[i] += i + 1;
+			if (parent[i] != NONE) {
+				subtreeEnd[parent[i]] += subtreeEnd[i] - i;
+			}
+		}
+	}
+
+	private static <T extends NodeChildren.Node<T>> void push(
+			final NodeChildren<T> children,
+			final int parentPosition,
+			final List<T> stack,
+			final List<Integer> stackParents) {
+		final Set<T> set = children == null ? null : children.getChildren();
+		if (set != null) {
+			for (final T child: set) {
+				stack.add(child);
+				stackParents.add(parentPosition);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of nodes in the hierarchy.
+	 * @return Number of nodes.
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * Returns the position of a node in the index, which can be passed to the methods that work with positions to
+	 * avoid looking the node up each time.
+	 * @param node Node to look up (by id).
+	 * @return Position, or -1 if the node isn't in the hierarchy.
+	 */
+	public int positionOf(final T node) {
+		final Integer position = positionById.get(node.getId());
+		return position == null ? NONE : position;
+	}
+
+	private int requirePosition(final T node) throws IllegalArgumentException {
+		final int position = positionOf(node);
+		if (position == NONE) {
+			throw new IllegalArgumentException("Node " + node.getId() + " is not in the hierarchy.");
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the node at a given position.
+	 * @param position Position in the index.
+	 * @return Node.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getNode(final int position) {
+		return (T) nodes[position];
+	}
+
+	/**
+	 * Returns the position of the parent of a node.
+	 * @param position Position of the node.
+	 * @return Position of its parent, or -1 for a top level node.
+	 */
+	public int getParent(final int position) {
+		return parent[position];
+	}
+
+	/**
+	 * Returns the depth of a node.
+	 * @param position Position of the node.
+	 * @return Number of ancestors (0 for a top level node).
+	 */
+	public int getDepth(final int position) {
+		return depth[position];
+	}
+
+	/**
+	 * Returns the depth of a node.
+	 * @param node Node in the hierarchy.
+	 * @return Number of ancestors (0 for a top level node).
+	 * @throws IllegalArgumentException if the node isn't in the hierarchy
+	 */
+	public int getDepth(final T node) throws IllegalArgumentException {
+		return depth[requirePosition(node)];
+	}
+
+	/**
+	 * Returns the position just after the last descendant of a node, so its descendants are at the positions from
+	 * position + 1 up to (but excluding) the returned position.
+	 * @param position Position of the node.
+	 * @return End of its subtree.
+	 */
+	public int getSubtreeEnd(final int position) {
+		return subtreeEnd[position];
+	}
+
+	/**
+	 * Indicates if a node is a descendant of another, in constant time.
+	 * @param ancestor Position of the potential ancestor.
+	 * @param position Position of the node.
+	 * @return true if the node is a descendant of the ancestor (a node isn't its own descendant)
+	 */
+	public boolean isDescendant(final int ancestor, final int position) {
+		return ancestor < position && position < subtreeEnd[ancestor];
+	}
+
+	/**
+	 * Indicates if a node is a descendant of another.
+	 * @param ancestor Potential ancestor.
+	 * @param node Node in the hierarchy.
+	 * @return true if the node is a descendant of the ancestor (a node isn't its own descendant)
+	 * @throws IllegalArgumentException if either node isn't in the hierarchy
+	 */
+	public boolean isDescendant(final T ancestor, final T node) throws IllegalArgumentException {
+		return isDescendant(requirePosition(ancestor), requirePosition(node));
+	}
+
+	/**
+	 * Returns the descendants of a node in depth-first pre-order, as a view of the index that takes constant time to
+	 * create.
+	 * @param node Node in the hierarchy.
+	 * @return Unmodifiable list of descendants.
+	 * @throws IllegalArgumentException if the node isn't in the hierarchy
+	 */
+	public List<T> getDescendants(final T node) throws IllegalArgumentException {
+		final int position = requirePosition(node);
+		return new NodeRange(position + 1, subtreeEnd[position]);
+	}
+
+	/**
+	 * Returns the ancestors of a node, starting with its parent.
+	 * @param node Node in the hierarchy.
+	 * @return List of ancestors (empty for a top level node).
+	 * @throws IllegalArgumentException if the node isn't in the hierarchy
+	 */
+	public List<T> getAncestors(final T node) throws IllegalArgumentException {
+		int position = requirePosition(node);
+		final List<T> ancestors = new ArrayList<>(depth[position]);
+		for (position = parent[position]; position != NONE; position = parent[position]) {
+			ancestors.add(getNode(position));
+		}
+		return ancestors;
+	}
+
+	/**
+	 * Finds the ancestor of a node at a given depth in O(log n) jumps.
+	 * @param position Position of the node.
+	 * @param ancestorDepth Depth of the ancestor, between 0 and the depth of the node.
+	 * @return Position of the ancestor (the node itself if the depths are the same).
+	 */
+	public int getAncestorAtDepth(int position, final int ancestorDepth) {
+		if (ancestorDepth < 0 || ancestorDepth > depth[position]) {
+			throw new IllegalArgumentException("Invalid ancestor depth: " + ancestorDepth);
+		}
+		while (depth[position] > ancestorDepth) {
+			final int j = jump[position];
+			position = j != NONE && depth[j] >= ancestorDepth ? j : parent[position];
+		}
+		return position;
+	}
+
+	/**
+	 * Finds the lowest common ancestor of two nodes in O(log n) jumps: the deepest node that is either of the nodes or
+	 * an ancestor of both.
+	 * @param a Position of the first node.
+	 * @param b Position of the second node.
+	 * @return Position of the lowest common ancestor, or -1 if the nodes are under different top level nodes.
+	 */
+	public int getLowestCommonAncestor(int a, int b) {
+		if (depth[a] > depth[b]) {
+			a = getAncestorAtDepth(a, depth[b]);
+		} else {
+			b = getAncestorAtDepth(b, depth[a]);
+		}
+		// a and b are now at the same depth, and so are their jumps
+		while (a != b) {
+			if (jump[a] != jump[b]) {
+				a = jump[a];
+				b = jump[b];
+			} else {
+				a = parent[a];
+				b = parent[b];
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Finds the lowest common ancestor of two nodes.
+	 * @param a First node.
+	 * @param b Second node.
+	 * @return Lowest common ancestor, which is one of the nodes if one is an ancestor of the other, or null if the nodes
+	 * are under different top level nodes.
+	 * @throws IllegalArgumentException if either node isn't in the hierarchy
+	 */
+	public T getLowestCommonAncestor(final T a, final T b) throws IllegalArgumentException {
+		final int position = getLowestCommonAncestor(requirePosition(a), requirePosition(b));
+		return position == NONE ? null : getNode(position);
+	}
+
+	/**
+	 * Read only view of the nodes in a range of positions.
+	 */
+	private final class NodeRange extends AbstractList<T> {
+		private final int from;
+		private final int to;
+
+		private NodeRange(final int from, final int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public T get(final int index) {
+			if (index < 0 || index >= to - from) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (to - from));
+			}
+			return getNode(from + index);
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+}
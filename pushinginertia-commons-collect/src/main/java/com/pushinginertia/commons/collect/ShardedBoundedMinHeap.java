@@ -0,0 +1,143 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
+
+/**
+ * Keeps the highest ranked items added by any number of threads. Items are spread over a fixed number of
+ * {@link IntBoundedMinHeap} shards, about two per processor, chosen by the adding thread's id so that threads rarely
+ * contend with each other. The shards are merged into the overall highest ranked items when the results are
+ * requested. Since each shard rejects items that can't make its own top K, the merge only has to consider K items per
+ * shard.
+ * <p>
+ * No state is kept per thread, so heaps used from a long-lived thread pool leave nothing behind on its threads once
+ * they are no longer referenced.
+ * <p>
+ * Results can be requested while items are still being added, in which case they reflect some subset of the items
+ * added so far. For pipelines built on {@link java.util.stream.Stream}, {@link #collector(int, ToIntFunction)} does
+ * the same thing without any shared state.
+ * @param <T> Type of the items stored in the heap.
+ */
+public class ShardedBoundedMinHeap<T> {
+	/**
+	 * Number of shards, a power of two of at least twice the number of processors.
+	 */
+	private static final int SHARD_COUNT =
+			Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1);
+
+	private final int maxSize;
+	/**
+	 * Shards, each created when a thread first adds to it.
+	 */
+	private final AtomicReferenceArray<IntBoundedMinHeap<T>> shards =
+			new AtomicReferenceArray<IntBoundedMinHeap<T>>(SHARD_COUNT);
+
+	/**
+	 * Creates an empty heap.
+	 * @param maxSize Maximum number of items to keep.
+	 */
+	public ShardedBoundedMinHeap(final int maxSize) {
+		this.maxSize = ValidateAs.nonNegative(maxSize, "maxSize");
+	}
+
+	/**
+	 * Returns the calling thread's shard, creating it if no thread has added to it yet.
+	 */
+	private IntBoundedMinHeap<T> shard() {
+		// spread the ids of threads created in sequence, such as those of a pool, over the shards
+		final int i = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32) & (SHARD_COUNT - 1);
+		final IntBoundedMinHeap<T> heap = shards.get(i);
+		if (heap != null) {
+			return heap;
+		}
+		shards.compareAndSet(i, null, new IntBoundedMinHeap<T>(maxSize));
+		return shards.get(i);
+	}
+
+	/**
+	 * Adds an item with a given rank to the shard of the calling thread.
+	 * @param item Item to add.
+	 * @param rank Rank associated with the item.
+	 * @see IntBoundedMinHeap#add(Object, int)
+	 */
+	public void add(final T item, final int rank) {
+		final IntBoundedMinHeap<T> heap = shard();
+		// only contended by threads that share the shard or while the shards are being merged
+		synchronized (heap) {
+			heap.add(item, rank);
+		}
+	}
+
+	/**
+	 * Merges the shards that items have been added to into a single heap.
+	 * @return New heap containing the highest ranked items.
+	 */
+	public IntBoundedMinHeap<T> merge() {
+		final IntBoundedMinHeap<T> merged = new IntBoundedMinHeap<T>(maxSize);
+		for (int i = 0; i < SHARD_COUNT; i++) {
+			final IntBoundedMinHeap<T> heap = shards.get(i);
+			if (heap != null) {
+				synchronized (heap) {
+					merged.addAll(heap);
+				}
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Merges the shards and converts the highest ranked items into a list ordered by descending rank.
+	 * @return List of items sorted by descending rank.
+	 */
+	public List<T> toListDescendingRank() {
+		return merge().toListDescendingRank();
+	}
+
+	/**
+	 * Merges the shards and converts the highest ranked items into a list ordered by ascending rank.
+	 * @return List of items sorted by ascending rank.
+	 */
+	public List<T> toListAscendingRank() {
+		return merge().toListAscendingRank();
+	}
+
+	/**
+	 * Creates a collector that reduces a stream to its highest ranked items, ordered by descending rank. A parallel
+	 * stream gives each of its tasks a separate heap and merges them as the tasks complete.
+	 * @param maxSize Maximum number of items to collect.
+	 * @param ranker Function that ranks each item.
+	 * @param <T> Type of the items in the stream.
+	 * @return New collector.
+	 */
+	public static <T> Collector<T, ?, List<T>> collector(final int maxSize, final ToIntFunction<? super T> ranker) {
+		ValidateAs.nonNegative(maxSize, "maxSize");
+		ValidateAs.notNull(ranker, "ranker");
+		return Collector.of(
+				() -> new IntBoundedMinHeap<T>(maxSize),
+				(heap, item) -> heap.add(item, ranker.applyAsInt(item)),
+				(left, right) -> {
+					left.addAll(right);
+					return left;
+				},
+				IntBoundedMinHeap::toListDescendingRank);
+	}
+}
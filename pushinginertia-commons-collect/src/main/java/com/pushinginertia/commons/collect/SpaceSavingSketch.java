@@ -0,0 +1,235 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how often items occur in a stream using a fixed amount of memory and keeps track of the most frequent ones,
+ * such as the trending searches of the last few minutes. This is the Space-Saving algorithm: at most a given number
+ * of items are counted, and when an item that isn't counted yet arrives while every counter is in use, it takes over
+ * the counter of the least frequent item and inherits its count. The count of an item is therefore overestimated by at
+ * most the count it inherited, which is reported by {@link #getError(Object, long)}, and any item that makes up more
+ * than 1/capacity of the stream is guaranteed to be counted.
+ * <p>
+ * Counts can decay exponentially with time so that old occurrences age out: an occurrence counts for 1 when it
+ * happens, 1/2 one half-life later, and so on. Rather than decaying every count as time passes, each occurrence is
+ * weighted by how far it is past a fixed landmark time, which grows exponentially, and counts are divided by the same
+ * factor when they are read. Since every count is scaled alike, the counters never have to be rescanned to keep them
+ * ordered. The landmark is only moved forward, rescaling every count once, before the weights would overflow.
+ * <p>
+ * Counters are kept in a min-heap ordered by count, so the least frequent item is found in O(1) and an occurrence is
+ * counted in O(log capacity). This class is not thread safe.
+ * @param <T> Type of the items being counted.
+ */
+public class SpaceSavingSketch<T> {
+	/**
+	 * Largest exponent that a weight is allowed to reach before the landmark is moved, well short of where a double
+	 * overflows (about e^709) so that counts summed from many weights don't overflow either.
+	 */
+	private static final double MAX_EXPONENT = 256;
+
+	private final Object[] items;
+	private final double[] counts;
+	private final double[] errors;
+	private final Map<T, Integer> positions;
+	private int size = 0;
+	/**
+	 * Decay rate per millisecond (ln 2 / half-life), or 0 when counts don't decay.
+	 */
+	private final double decayRate;
+	private long landmarkMillis = 0;
+
+	/**
+	 * Creates a sketch whose counts don't decay.
+	 * @param capacity Maximum number of items to count.
+	 */
+	public SpaceSavingSketch(final int capacity) {
+		this(capacity, 0);
+	}
+
+	/**
+	 * Creates a sketch whose counts decay exponentially.
+	 * @param capacity Maximum number of items to count.
+	 * @param halfLifeMillis Time it takes for an occurrence to count half as much, or 0 for counts that don't decay.
+	 */
+	public SpaceSavingSketch(final int capacity, final long halfLifeMillis) {
+		ValidateAs.positive(capacity, "capacity");
+		if (halfLifeMillis < 0) {
+			throw new IllegalArgumentException("halfLifeMillis cannot be negative: " + halfLifeMillis);
+		}
+		this.items = new Object[capacity];
+		this.counts = new double[capacity];
+		this.errors = new double[capacity];
+		this.positions = new HashMap<T, Integer>(capacity * 2);
+		this.decayRate = halfLifeMillis == 0 ? 0 : Math.log(2) / halfLifeMillis;
+	}
+
+	/**
+	 * Counts one occurrence of an item.
+	 * @param item Item that occurred.
+	 * @param timeMillis Time of the occurrence (ignored if counts don't decay).
+	 */
+	public void increment(final T item, final long timeMillis) {
+		increment(item, 1, timeMillis);
+	}
+
+	/**
+	 * Counts a weighted occurrence of an item.
+	 * @param item Item that occurred.
+	 * @param weight Amount to add to the item's count.
+	 * @param timeMillis Time of the occurrence (ignored if counts don't decay).
+	 * @throws IllegalArgumentException if the weight isn't positive
+	 */
+	public void increment(final T item, final double weight, final long timeMillis) throws IllegalArgumentException {
+		ValidateAs.notNull(item, "item");
+		if (!(weight > 0) || Double.isInfinite(weight)) {
+			throw new IllegalArgumentException("weight must be positive: " + weight);
+		}
+		final double scaledWeight = weight * scale(timeMillis);
+		final Integer position = positions.get(item);
+		if (position != null) {
+			counts[position] += scaledWeight;
+			siftDown(position, item, counts[position], errors[position]);
+		} else if (size < items.length) {
+			siftUp(size++, item, scaledWeight, 0);
+		} else {
+			// take over the counter of the least frequent item
+			positions.remove(item(0));
+			final double inherited = counts[0];
+			siftDown(0, item, inherited + scaledWeight, inherited);
+		}
+	}
+
+	/**
+	 * Returns the factor that an occurrence at a given time is weighted by, moving the landmark forward first if the
+	 * factor would get too large.
+	 */
+	private double scale(final long timeMillis) {
+		if (decayRate == 0) {
+			return 1;
+		}
+		final double exponent = decayRate * (timeMillis - landmarkMillis);
+		if (exponent <= MAX_EXPONENT) {
+			return Math.exp(exponent);
+		}
+		final double factor = Math.exp(-exponent);
+		for (int i = 0; i < size; i++) {
+			counts[i] *= factor;
+			errors[i] *= factor;
+		}
+		landmarkMillis = timeMillis;
+		return 1;
+	}
+
+	/**
+	 * Returns the estimated count of an item, which can overestimate its true count by {@link #getError(Object, long)}.
+	 * @param item Item to look up.
+	 * @param timeMillis Time to decay the count to (ignored if counts don't decay).
+	 * @return Estimated count, or 0 if the item isn't counted.
+	 */
+	public double getCount(final T item, final long timeMillis) {
+		final Integer position = positions.get(item);
+		return position == null ? 0 : unscale(counts[position], timeMillis);
+	}
+
+	/**
+	 * Returns the largest amount by which the count of an item can be overestimated, which is the count that it
+	 * inherited when it took over another item's counter.
+	 * @param item Item to look up.
+	 * @param timeMillis Time to decay the error to (ignored if counts don't decay).
+	 * @return Maximum error, or 0 if the item isn't counted.
+	 */
+	public double getError(final T item, final long timeMillis) {
+		final Integer position = positions.get(item);
+		return position == null ? 0 : unscale(errors[position], timeMillis);
+	}
+
+	private double unscale(final double value, final long timeMillis) {
+		return decayRate == 0 ? value : value * Math.exp(-decayRate * (timeMillis - landmarkMillis));
+	}
+
+	/**
+	 * Returns the number of items currently being counted.
+	 * @return Number of items.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the most frequent items, ordered by descending estimated count. Decay doesn't change how items are
+	 * ordered, so no time is needed.
+	 * @param maxSize Maximum number of items to return.
+	 * @return List of items.
+	 */
+	public List<T> toListDescendingRank(final int maxSize) {
+		final DoubleBoundedMinHeap<T> top = new DoubleBoundedMinHeap<T>(Math.min(maxSize, size));
+		for (int i = 0; i < size; i++) {
+			top.add(item(i), counts[i]);
+		}
+		return top.toListDescendingRank();
+	}
+
+	@SuppressWarnings("unchecked")
+	private T item(final int index) {
+		return (T) items[index];
+	}
+
+	private void set(final int index, final T item, final double count, final double error) {
+		items[index] = item;
+		counts[index] = count;
+		errors[index] = error;
+		positions.put(item, index);
+	}
+
+	private void move(final int from, final int to) {
+		set(to, item(from), counts[from], errors[from]);
+	}
+
+	private void siftUp(int index, final T item, final double count, final double error) {
+		while (index > 0) {
+			final int parent = (index - 1) >>> 1;
+			if (count >= counts[parent]) {
+				break;
+			}
+			move(parent, index);
+			index = parent;
+		}
+		set(index, item, count, error);
+	}
+
+	private void siftDown(int index, final T item, final double count, final double error) {
+		final int half = size >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			final int right = child + 1;
+			if (right < size && counts[right] < counts[child]) {
+				child = right;
+			}
+			if (counts[child] >= count) {
+				break;
+			}
+			move(child, index);
+			index = child;
+		}
+		set(index, item, count, error);
+	}
+}
@@ -0,0 +1,349 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A thread-safe dictionary that can be searched while searchables are being added and removed.
+ * <p>
+ * Searches run without locking against an immutable snapshot made up of one or more read only {@link TstDictionary}
+ * segments. Searchables passed to {@link #addSearchable(StringSearchable)} are buffered and only become visible when
+ * {@link #publish()} is called, which builds a segment from the buffered searchables alone and atomically replaces
+ * the snapshot. To keep the number of segments small, a new segment is merged with the previous one whenever it is at
+ * least half its size. Segment sizes therefore roughly double from newest to oldest, there are O(log n) segments, and
+ * each searchable is rebuilt O(log n) times over its lifetime, so the cost of a publish scales with the size of the
+ * batch rather than the size of the dictionary.
+ * <p>
+ * Removals are also applied on {@link #publish()}. A removed searchable is marked as deleted in the segments that
+ * contain it and skipped by searches. It is physically dropped when its segment is next merged, or when more than half
+ * of a segment's searchables are deleted and the segment is rebuilt.
+ * @param <S> Type of the searchable object that this dictionary stores.
+ */
+public class ConcurrentTstDictionary<S extends StringSearchable> extends DefaultDictionary<S> {
+	/**
+	 * Searchables added and removed since the last publish. Guarded by {@link #writeLock}.
+	 */
+	private final List<S> pending = new ArrayList<S>();
+	private final List<S> pendingRemovals = new ArrayList<S>();
+	private final Object writeLock = new Object();
+	private volatile Snapshot<S> snapshot = new Snapshot<S>(Collections.<Segment<S>>emptyList());
+
+	/**
+	 * A read only dictionary along with the searchables it was built from, which are needed to merge it, and the
+	 * searchables that have since been removed from it.
+	 */
+	private static final class Segment<S extends StringSearchable> {
+		private final List<S> searchables;
+		private final TstDictionary<S> dictionary;
+		private final Set<S> deleted;
+
+		private Segment(
+				final List<S> searchables,
+				final StringPreprocessor preprocessor,
+				final StringTokenizer tokenizer) {
+			this.searchables = searchables;
+			this.dictionary = tokenizer == null ?
+					new TstDictionary<S>(preprocessor) :
+					new TstDictionary<S>(preprocessor, tokenizer);
+			this.dictionary.addSearchables(searchables);
+			this.dictionary.setReadOnly();
+			this.deleted = Collections.emptySet();
+		}
+
+		private Segment(final Segment<S> segment, final Set<S> deleted) {
+			this.searchables = segment.searchables;
+			this.dictionary = segment.dictionary;
+			this.deleted = deleted;
+		}
+
+		private int liveSize() {
+			return searchables.size() - deleted.size();
+		}
+
+		private List<S> liveSearchables() {
+			if (deleted.isEmpty()) {
+				return searchables;
+			}
+			final List<S> live = new ArrayList<S>(liveSize());
+			for (final S searchable: searchables) {
+				if (!deleted.contains(searchable)) {
+					live.add(searchable);
+				}
+			}
+			return live;
+		}
+
+		private TstNode.BoundedNodeVisitor<S> skipDeleted(final TstNode.BoundedNodeVisitor<S> visitor) {
+			if (deleted.isEmpty()) {
+				return visitor;
+			}
+			return new TstNode.BoundedNodeVisitor<S>() {
+				public void visit(final S searchable, final String searchString) {
+					if (!deleted.contains(searchable)) {
+						visitor.visit(searchable, searchString);
+					}
+				}
+
+				public boolean isComplete(final int maxRank) {
+					return visitor.isComplete(maxRank);
+				}
+			};
+		}
+
+		private TstNode.NodeVisitor<S> skipDeleted(final TstNode.NodeVisitor<S> visitor) {
+			if (deleted.isEmpty()) {
+				return visitor;
+			}
+			return new TstNode.NodeVisitor<S>() {
+				public void visit(final S searchable, final String searchString) {
+					if (!deleted.contains(searchable)) {
+						visitor.visit(searchable, searchString);
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * An immutable list of segments ordered from oldest (largest) to newest.
+	 */
+	private static final class Snapshot<S extends StringSearchable> {
+		private final List<Segment<S>> segments;
+
+		private Snapshot(final List<Segment<S>> segments) {
+			this.segments = segments;
+		}
+	}
+
+	public ConcurrentTstDictionary(final StringPreprocessor preprocessor) {
+		super(preprocessor);
+	}
+
+	/**
+	 * Creates a dictionary whose segments also index every word of each search string.
+	 * @param preprocessor Preprocessor to apply to search strings and to each word.
+	 * @param tokenizer Tokenizer that splits search strings into words.
+	 * @see TstDictionary#TstDictionary(StringPreprocessor, StringTokenizer)
+	 */
+	public ConcurrentTstDictionary(final StringPreprocessor preprocessor, final StringTokenizer tokenizer) {
+		super(preprocessor, ValidateAs.notNull(tokenizer, "tokenizer"));
+	}
+
+	public void addSearchables(final Collection<S> searchables) {
+		ValidateAs.notNull(searchables, "searchables");
+		synchronized (writeLock) {
+			pending.addAll(searchables);
+		}
+	}
+
+	/**
+	 * Buffers a {@link StringSearchable} instance to be added to the dictionary on the next {@link #publish()}.
+	 * @param searchable Instance to add.
+	 */
+	public void addSearchable(final S searchable) {
+		ValidateAs.notNull(searchable, "searchable");
+		synchronized (writeLock) {
+			pending.add(searchable);
+		}
+	}
+
+	/**
+	 * Buffers the removal of a {@link StringSearchable} instance, which takes effect on the next {@link #publish()}.
+	 * This also cancels any unpublished additions of equal instances.
+	 * @param searchable Instance to remove, with the search strings it was added with.
+	 */
+	public void removeSearchable(final S searchable) {
+		ValidateAs.notNull(searchable, "searchable");
+		synchronized (writeLock) {
+			for (final Iterator<S> itr = pending.iterator(); itr.hasNext();) {
+				if (itr.next().equals(searchable)) {
+					itr.remove();
+				}
+			}
+			pendingRemovals.add(searchable);
+		}
+	}
+
+	/**
+	 * Buffers the replacement of a {@link StringSearchable} instance. Both changes become visible together on the next
+	 * {@link #publish()}.
+	 * @param oldSearchable Instance to remove, with the search strings it was added with.
+	 * @param newSearchable Instance to add in its place.
+	 */
+	public void updateSearchable(final S oldSearchable, final S newSearchable) {
+		ValidateAs.notNull(newSearchable, "newSearchable");
+		synchronized (writeLock) {
+			removeSearchable(oldSearchable);
+			pending.add(newSearchable);
+		}
+	}
+
+	/**
+	 * Makes all searchables added and removed since the last call visible to searches. Searches that are already
+	 * running continue against the previous snapshot.
+	 */
+	public void publish() {
+		synchronized (writeLock) {
+			if (pending.isEmpty() && pendingRemovals.isEmpty()) {
+				return;
+			}
+			final List<Segment<S>> segments = applyRemovals(snapshot.segments);
+			pendingRemovals.clear();
+
+			if (!pending.isEmpty()) {
+				List<S> batch = new ArrayList<S>(pending);
+				pending.clear();
+
+				// merge with the newest segments while they're not much larger than the batch
+				while (!segments.isEmpty()) {
+					final Segment<S> newest = segments.get(segments.size() - 1);
+					if (batch.size() * 2 < newest.liveSize()) {
+						break;
+					}
+					final List<S> live = newest.liveSearchables();
+					final List<S> merged = new ArrayList<S>(live.size() + batch.size());
+					merged.addAll(live);
+					merged.addAll(batch);
+					batch = merged;
+					segments.remove(segments.size() - 1);
+				}
+				segments.add(new Segment<S>(batch, preprocessor, tokenizer));
+			}
+			snapshot = new Snapshot<S>(Collections.unmodifiableList(segments));
+		}
+	}
+
+	/**
+	 * Marks pending removals as deleted in the segments that contain them. Segments where more than half of the
+	 * searchables are deleted are rebuilt without them.
+	 * @param current Segments in the current snapshot.
+	 * @return New list of segments.
+	 */
+	private List<Segment<S>> applyRemovals(final List<Segment<S>> current) {
+		final List<Segment<S>> segments = new ArrayList<Segment<S>>(current.size());
+		for (final Segment<S> segment: current) {
+			Set<S> deleted = null;
+			for (final S searchable: pendingRemovals) {
+				if (!segment.deleted.contains(searchable) && segment.dictionary.contains(searchable)) {
+					if (deleted == null) {
+						deleted = new HashSet<S>(segment.deleted);
+					}
+					deleted.add(searchable);
+				}
+			}
+			if (deleted == null) {
+				segments.add(segment);
+				continue;
+			}
+			final Segment<S> updated = new Segment<S>(segment, Collections.unmodifiableSet(deleted));
+			if (updated.liveSize() * 2 >= updated.searchables.size()) {
+				segments.add(updated);
+			} else if (updated.liveSize() > 0) {
+				segments.add(new Segment<S>(updated.liveSearchables(), preprocessor, tokenizer));
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Returns the number of segments in the current snapshot.
+	 * @return Segment count.
+	 */
+	public int getSegmentCount() {
+		return snapshot.segments.size();
+	}
+
+	public List<S> searchExactMatch(
+			final String searchString,
+			final DictionarySearchResultFilter<S> filter,
+			final int limit) {
+		final Snapshot<S> current = snapshot;
+		final TstDictionary.DefaultVisitor<S> visitor = new TstDictionary.DefaultVisitor<S>(filter, limit);
+		final String processedSearchString = preprocessor.preprocess(searchString);
+		for (final Segment<S> segment: current.segments) {
+			segment.dictionary.visitExactMatch(processedSearchString, segment.skipDeleted(visitor));
+		}
+		return visitor.resultList();
+	}
+
+	public List<S> searchPrefix(
+			final String searchPrefix,
+			final DictionarySearchResultFilter<S> filter,
+			final int limit) {
+		final Snapshot<S> current = snapshot;
+		final TstDictionary.DefaultVisitor<S> visitor = new TstDictionary.DefaultVisitor<S>(filter, limit);
+		final String processedSearchPrefix = preprocessor.preprocess(searchPrefix);
+		for (final Segment<S> segment: current.segments) {
+			segment.dictionary.visitPrefix(processedSearchPrefix, segment.skipDeleted(visitor));
+		}
+		return visitor.resultList();
+	}
+
+	public List<S> searchFuzzyPrefix(
+			final String searchPrefix,
+			final int maxEdits,
+			final DictionarySearchResultFilter<S> filter,
+			final int limit) {
+		ValidateAs.nonNegative(maxEdits, "maxEdits");
+		final Snapshot<S> current = snapshot;
+		final TstDictionary.DefaultVisitor<S> visitor = new TstDictionary.DefaultVisitor<S>(filter, limit);
+		final String processedSearchPrefix = preprocessor.preprocess(searchPrefix);
+		for (final Segment<S> segment: current.segments) {
+			segment.dictionary.visitFuzzyPrefix(processedSearchPrefix, maxEdits, segment.skipDeleted(visitor));
+		}
+		return visitor.resultList();
+	}
+
+	public List<S> searchTokens(
+			final String searchString,
+			final DictionarySearchResultFilter<S> filter,
+			final int limit) {
+		final Snapshot<S> current = snapshot;
+		final TstDictionary.DefaultVisitor<S> visitor = new TstDictionary.DefaultVisitor<S>(filter, limit);
+		final List<String> tokens = searchTokens(searchString);
+		if (tokens.isEmpty()) {
+			return visitor.resultList();
+		}
+		final int last = tokens.size() - 1;
+		Set<S> candidates = null;
+		for (int i = 0; i < last; i++) {
+			final TstDictionary.IntersectingVisitor<S> intersection =
+					new TstDictionary.IntersectingVisitor<S>(candidates);
+			for (final Segment<S> segment: current.segments) {
+				segment.dictionary.visitAllPrefix(tokens.get(i), segment.skipDeleted(intersection));
+			}
+			candidates = intersection.matches();
+			if (candidates.isEmpty()) {
+				return visitor.resultList();
+			}
+		}
+		final TstNode.BoundedNodeVisitor<S> lastVisitor =
+				candidates == null ? visitor : new TstDictionary.CandidateVisitor<S>(candidates, visitor);
+		for (final Segment<S> segment: current.segments) {
+			segment.dictionary.visitPrefix(tokens.get(last), segment.skipDeleted(lastVisitor));
+		}
+		return visitor.resultList();
+	}
+}
@@ -15,14 +15,88 @@
  */
 package com.pushinginertia.commons.collect.typeahead;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
- * Default abstract implementation of {@link Dictionary} that stores a {@link StringPreprocessor}.
+ * Default abstract implementation of {@link Dictionary} that stores a {@link StringPreprocessor} and an optional
+ * {@link StringTokenizer}.
  * @param <S> Type of the searchable object that this dictionary stores.
  */
 public abstract class DefaultDictionary<S extends StringSearchable> implements Dictionary<S> {
 	protected final StringPreprocessor preprocessor;
+	/**
+	 * Splits search strings into words that are indexed on their own, or null to only index whole search strings.
+	 */
+	protected final StringTokenizer tokenizer;
 
 	public DefaultDictionary(final StringPreprocessor preprocessor) {
+		this(preprocessor, null);
+	}
+
+	public DefaultDictionary(final StringPreprocessor preprocessor, final StringTokenizer tokenizer) {
 		this.preprocessor = preprocessor;
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * Preprocesses a search string into the strings that it is indexed under: the whole string and, if the dictionary
+	 * has a tokenizer, each of its words. Empty and duplicate strings are left out.
+	 * @param searchString Search string of a searchable.
+	 * @return Preprocessed strings.
+	 */
+	protected Collection<String> indexStrings(final String searchString) {
+		final String processed = preprocessor.preprocess(searchString);
+		if (tokenizer == null) {
+			return processed.isEmpty() ? Collections.<String>emptyList() : Collections.singletonList(processed);
+		}
+		final Set<String> strings = new LinkedHashSet<String>();
+		if (!processed.isEmpty()) {
+			strings.add(processed);
+		}
+		addTokens(searchString, strings);
+		return strings;
 	}
+
+	/**
+	 * Preprocesses the words of a string passed to {@link #searchTokens(String, DictionarySearchResultFilter, int)},
+	 * or the whole string if the dictionary has no tokenizer. Empty and duplicate words are left out. The last word
+	 * stays last since it's usually the one being typed, and the others are ordered longest first since a longer
+	 * prefix usually matches fewer strings, which keeps the intersection of the matches small.
+	 * @param searchString String containing one or more words.
+	 * @return Preprocessed words.
+	 */
+	protected List<String> searchTokens(final String searchString) {
+		if (tokenizer == null) {
+			final String processed = preprocessor.preprocess(searchString);
+			return processed.isEmpty() ? Collections.<String>emptyList() : Collections.singletonList(processed);
+		}
+		final Set<String> distinct = new LinkedHashSet<String>();
+		addTokens(searchString, distinct);
+		final List<String> tokens = new ArrayList<String>(distinct);
+		if (tokens.size() > 2) {
+			Collections.sort(tokens.subList(0, tokens.size() - 1), LONGEST_FIRST);
+		}
+		return tokens;
+	}
+
+	private void addTokens(final String s, final Set<String> tokens) {
+		for (final String token: tokenizer.tokenize(s)) {
+			final String processed = preprocessor.preprocess(token);
+			if (!processed.isEmpty()) {
+				tokens.add(processed);
+			}
+		}
+	}
+
+	private static final Comparator<String> LONGEST_FIRST = new Comparator<String>() {
+		public int compare(final String a, final String b) {
+			return b.length() - a.length();
+		}
+	};
 }
@@ -24,11 +24,24 @@ import java.util.List;
  * @param <S> Type of the searchable object that this dictionary stores.
  */
 public interface Dictionary<S extends StringSearchable> {
+	/**
+	 * Normalizes strings before they are added to or searched for in a dictionary. Implementations must be thread safe
+	 * since searches can run concurrently and bulk loading preprocesses strings in parallel.
+	 */
 	public interface StringPreprocessor {
 		public String preprocess(String s);
 	}
 
+	/**
+	 * Splits strings into words so that a dictionary can match words anywhere in a string. Each word is preprocessed
+	 * separately, so implementations only have to find the word boundaries. Implementations must be thread safe.
+	 */
+	public interface StringTokenizer {
+		public List<String> tokenize(String s);
+	}
+
 	public static final StringPreprocessor DEFAULT_PREPROCESSOR = new DictionaryDefaultStringPreprocessor();
+	public static final StringTokenizer DEFAULT_TOKENIZER = new DictionaryDefaultStringTokenizer();
 
 	/**
 	 * Adds a collection of {@link StringSearchable} instances to the dictionary.
@@ -42,6 +55,21 @@ public interface Dictionary<S extends StringSearchable> {
 	 */
 	public void addSearchable(S searchable);
 
+	/**
+	 * Removes a {@link StringSearchable} instance from the dictionary. The instance is located through the strings
+	 * returned by {@link StringSearchable#getSearchStrings()}, so they must be the same as when it was added.
+	 * @param searchable Instance to remove (all instances equal to it are removed).
+	 */
+	public void removeSearchable(S searchable);
+
+	/**
+	 * Replaces a {@link StringSearchable} instance in the dictionary, such as when its search strings change. This is
+	 * equivalent to removing the old instance and adding the new one.
+	 * @param oldSearchable Instance to remove, with the search strings it was added with.
+	 * @param newSearchable Instance to add in its place (can be equal to the old instance).
+	 */
+	public void updateSearchable(S oldSearchable, S newSearchable);
+
 	/**
 	 * Performs a search in the dictionary for a given string, returning only exact matches.
 	 * @param searchString Full search string.
@@ -62,4 +90,36 @@ public interface Dictionary<S extends StringSearchable> {
 	 * @return List of matches in sorted order.
 	 */
 	public List<S> searchPrefix(String searchPrefix, DictionarySearchResultFilter<S> filter, int limit);
+
+	/**
+	 * Performs a search in the dictionary for a given string, returning strings that start with a string within a
+	 * given edit distance of the search string. This tolerates typing errors, such as "torotno" for "toronto".
+	 * @param searchPrefix Search string prefix.
+	 * @param maxEdits Maximum number of characters that can be inserted, deleted, substituted or transposed with an
+	 * adjacent character (0 is the same as {@link #searchPrefix(String, DictionarySearchResultFilter, int)}).
+	 * @param filter Filter to apply to matching results.
+	 * @param limit Maximum results to return (ordered by
+	 * {@link DictionarySearchResultFilter#rank(StringSearchable, String)}.
+	 * @return List of matches in sorted order.
+	 */
+	public List<S> searchFuzzyPrefix(
+			String searchPrefix,
+			int maxEdits,
+			DictionarySearchResultFilter<S> filter,
+			int limit);
+
+	/**
+	 * Performs a search in the dictionary for the words of a given string, returning searchables for which every word
+	 * is a prefix of a word in their search strings, in any order. For example, "york" and "yo new" both find
+	 * "New York". Each word is looked up in the tree separately and the matches are intersected before they are
+	 * ranked, which requires the dictionary to have been created with a {@link StringTokenizer} so that every word of
+	 * every search string is indexed. Without one, this is the same as
+	 * {@link #searchPrefix(String, DictionarySearchResultFilter, int)}.
+	 * @param searchString String containing one or more words.
+	 * @param filter Filter to apply to matching results.
+	 * @param limit Maximum results to return (ordered by
+	 * {@link DictionarySearchResultFilter#rank(StringSearchable, String)}.
+	 * @return List of matches in sorted order.
+	 */
+	public List<S> searchTokens(String searchString, DictionarySearchResultFilter<S> filter, int limit);
 }
@@ -0,0 +1,44 @@
+/* Copyright (c) 2011-2014 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A string tokenizer that splits a string into words at every character that isn't a letter or a digit, so that
+ * whitespace, punctuation and hyphens all separate words.
+ */
+public class DictionaryDefaultStringTokenizer implements Dictionary.StringTokenizer {
+	public List<String> tokenize(final String s) {
+		final List<String> tokens = new ArrayList<String>();
+		int start = -1;
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.isLetterOrDigit(s.charAt(i))) {
+				if (start < 0) {
+					start = i;
+				}
+			} else if (start >= 0) {
+				tokens.add(s.substring(start, i));
+				start = -1;
+			}
+		}
+		if (start >= 0) {
+			tokens.add(s.substring(start));
+		}
+		return tokens;
+	}
+}
@@ -0,0 +1,159 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+import java.util.Arrays;
+
+/**
+ * Computes the edit distance between a query and a path through a tree one character at a time, so that a depth
+ * first walk can share the work done for common prefixes and abandon a branch once it can no longer match.
+ * <p>
+ * Row d holds the distances between the first d characters of the path and every prefix of the query. Rows are
+ * indexed by depth, so descending into a child overwrites the rows of any sibling path that was walked before it.
+ * Distances count insertions, deletions, substitutions and transpositions of adjacent characters (optimal string
+ * alignment), since transposed characters are one of the most common typing errors.
+ * <p>
+ * Once every distance in a row has used up the edit budget, the path can only be extended by a character that
+ * continues the query without an edit. {@link #nextCandidate(int, int)} lists those characters so that a walk can look
+ * them up among a node's siblings instead of visiting every sibling.
+ */
+final class EditDistanceRows {
+	private final char[] query;
+	private final int maxEdits;
+	/**
+	 * Value stored for any distance beyond the edit budget. Since the exact value no longer matters, only the cells
+	 * within maxEdits of the diagonal of each row are computed and the rest are treated as over budget.
+	 */
+	private final int overBudget;
+	private int[][] rows;
+	private int[] mins;
+	/**
+	 * Path character that produced each row, needed to detect transpositions.
+	 */
+	private char[] pathChars;
+
+	EditDistanceRows(final String query, final int maxEdits) {
+		this.query = query.toCharArray();
+		this.maxEdits = maxEdits;
+		this.overBudget = maxEdits + 1;
+		this.rows = new int[query.length() + maxEdits + 1][];
+		this.pathChars = new char[rows.length];
+		this.mins = new int[rows.length];
+		final int[] first = row(0);
+		for (int j = 0; j < first.length; j++) {
+			first[j] = Math.min(j, overBudget);
+		}
+		mins[0] = 0;
+	}
+
+	private int[] row(final int depth) {
+		if (depth == rows.length) {
+			rows = Arrays.copyOf(rows, depth * 2);
+			pathChars = Arrays.copyOf(pathChars, depth * 2);
+			mins = Arrays.copyOf(mins, depth * 2);
+		}
+		if (rows[depth] == null) {
+			rows[depth] = new int[query.length + 1];
+		}
+		return rows[depth];
+	}
+
+	/**
+	 * Computes the row for a path that extends the path at depth - 1 by one character.
+	 * @param depth Length of the extended path (at least 1).
+	 * @param ch Last character of the extended path.
+	 * @return true if some string starting with the extended path can still be within the edit budget
+	 */
+	boolean push(final int depth, final char ch) {
+		final int[] previous = rows[depth - 1];
+		final int[] current = row(depth);
+		pathChars[depth] = ch;
+
+		// the next row reads one cell either side of this row's band, so those are set to over budget
+		final int from = Math.max(1, depth - maxEdits);
+		final int to = Math.min(query.length, depth + maxEdits);
+		current[from - 1] = from == 1 ? Math.min(depth, overBudget) : overBudget;
+		if (to < query.length) {
+			current[to + 1] = overBudget;
+		}
+		int min = current[from - 1];
+		for (int j = from; j <= to; j++) {
+			final char queryChar = query[j - 1];
+			int distance = Math.min(previous[j], current[j - 1]) + 1;
+			distance = Math.min(distance, previous[j - 1] + (queryChar == ch ? 0 : 1));
+			if (depth > 1 && j > 1 && queryChar == pathChars[depth - 1] && query[j - 2] == ch) {
+				distance = Math.min(distance, rows[depth - 2][j - 2] + 1);
+			}
+			distance = Math.min(distance, overBudget);
+			current[j] = distance;
+			min = Math.min(min, distance);
+		}
+		mins[depth] = min;
+		return min <= maxEdits;
+	}
+
+	/**
+	 * Indicates if the path at a given depth is within the edit budget of the whole query, in which case the path and
+	 * every string that starts with it match.
+	 * @param depth Length of the path.
+	 * @return Indicator.
+	 */
+	boolean isMatch(final int depth) {
+		return depth + maxEdits >= query.length && rows[depth][query.length] <= maxEdits;
+	}
+
+	/**
+	 * Indicates if the path at a given depth can only be extended by the characters returned by
+	 * {@link #nextCandidate(int, int)}, because any other character costs an edit that exceeds the budget.
+	 * @param depth Length of the path.
+	 * @return Indicator.
+	 */
+	boolean isRestricted(final int depth) {
+		return mins[depth] >= maxEdits;
+	}
+
+	/**
+	 * Finds the next query character that can extend a restricted path without an edit. Characters are only returned
+	 * once even if they occur several times in the query.
+	 * @param depth Length of the path.
+	 * @param from Index in the query to start looking from (0 to find the first candidate).
+	 * @return Index of the candidate character in the query, or -1 if there are no more candidates.
+	 */
+	int nextCandidate(final int depth, final int from) {
+		final int[] row = rows[depth];
+		final int first = Math.max(0, depth - maxEdits);
+		final int last = Math.min(query.length - 1, depth + maxEdits);
+		for (int j = Math.max(from, first); j <= last; j++) {
+			if (row[j] <= maxEdits && !isEarlierCandidate(row, first, j)) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isEarlierCandidate(final int[] row, final int first, final int j) {
+		for (int k = first; k < j; k++) {
+			if (row[k] <= maxEdits && query[k] == query[j]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	char queryCharAt(final int index) {
+		return query[index];
+	}
+}
@@ -0,0 +1,32 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+/**
+ * A {@link StringSearchable} with a static score that is known when it is added to a dictionary. A read only
+ * {@link TstDictionary} uses the scores to visit the most promising parts of the tree first and stop a prefix search
+ * as soon as no remaining match can be ranked into the results.
+ * <p>
+ * The score must be an upper bound on the rank that any {@link DictionarySearchResultFilter} used with the dictionary
+ * assigns to this object. A filter that returns the score itself (or -1 to exclude the object) is the typical case.
+ * Searchables that don't implement this interface can be mixed in and are never pruned.
+ */
+public interface ScoredStringSearchable extends StringSearchable {
+	/**
+	 * Returns the static score of this object, which must be >= any rank assigned to it by a result filter.
+	 */
+	public int getScore();
+}
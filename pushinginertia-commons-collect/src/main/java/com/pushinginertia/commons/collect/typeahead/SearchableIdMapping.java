@@ -0,0 +1,38 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+/**
+ * Maps searchables to stable ids and back. A dictionary snapshot stores only the ids of the searchables it contains,
+ * so the searchables themselves are owned by the caller (typically loaded from a database) and resolved when the
+ * snapshot is loaded.
+ * @param <S> Type of the searchable object that the dictionary stores.
+ */
+public interface SearchableIdMapping<S extends StringSearchable> {
+	/**
+	 * Returns the id of a searchable, which must stay the same between writing and loading a snapshot.
+	 * @param searchable Searchable stored in the dictionary.
+	 * @return Stable id.
+	 */
+	public long getId(S searchable);
+
+	/**
+	 * Resolves an id written to a snapshot.
+	 * @param id Stable id.
+	 * @return Searchable with the id, or null if it no longer exists.
+	 */
+	public S getSearchable(long id);
+}
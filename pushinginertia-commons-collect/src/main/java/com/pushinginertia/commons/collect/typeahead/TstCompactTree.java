@@ -0,0 +1,606 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable ternary search tree that stores its nodes in parallel primitive arrays instead of one object per node,
+ * either on the heap or in a memory-mapped file. It is constructed from a fully built {@link TstNode} tree and
+ * supports the same searches.
+ * <p>
+ * Nodes are laid out in pre-order, visiting a node's middle child before its left and right children. This means
+ * the middle child of node i is always node i + 1 and that a node followed by its entire middle subtree occupies a
+ * contiguous range of indexes. Since matches are stored in node order, every string for which a node is a prefix
+ * maps to a contiguous range of the match array, so a prefix search never has to traverse the subtree.
+ * <pre>
+ * fragmentChars:   all node fragments concatenated in node order
+ * fragmentOffsets: node i's fragment is fragmentChars[fragmentOffsets[i], fragmentOffsets[i + 1])
+ * left/right:      index of the left/right child, or -1
+ * middleEnd:       one past the last node in node i's middle subtree (== i + 1 when there is no middle child)
+ * matchOffsets:    node i's matches are matches[matchOffsets[i], matchOffsets[i + 1])
+ * </pre>
+ * When the tree contains {@link ScoredStringSearchable}s, each node also stores the highest score among its own
+ * matches and the highest score in its whole subtree (left, middle and right). These bounds let
+ * {@link #searchPrefixBestFirst(String, TstNode.BoundedNodeVisitor)} visit nodes in order of their best possible score
+ * and stop once the visitor can't accept anything better.
+ * <p>
+ * The arrays can be written to a versioned binary snapshot with {@link #writeTo(DataOutputStream, SearchableIdMapping)}.
+ * A snapshot can either be copied back onto the heap with {@link #readFrom(ByteBuffer, SearchableIdMapping)}, which is
+ * far faster than inserting and preprocessing every string again, or searched in place with
+ * {@link #map(File, SearchableIdMapping)}. Matches are written as ids. All values are big-endian:
+ * <pre>
+ * header:          magic, version, node count, char count, match count, flags (6 ints)
+ * match ids:       one long per match, in node order
+ * int arrays:      fragmentOffsets, left, right, middleEnd, matchOffsets, then ownMaxScore and subtreeMaxScore if the
+ *                  scored flag is set
+ * fragmentChars:   one char per fragment character
+ * </pre>
+ * This class implements the searches in terms of the values above. Subclasses decide where they are stored.
+ * @param <S> Type of the searchable object that this tree stores.
+ */
+public abstract class TstCompactTree<S extends StringSearchable> {
+	static final int NONE = -1;
+	/**
+	 * Score bound used for searchables that don't have a score, which can never be pruned.
+	 */
+	static final int UNBOUNDED = Integer.MAX_VALUE;
+	static final int NO_MATCHES = Integer.MIN_VALUE;
+
+	static final int SNAPSHOT_MAGIC = 0x54535444; // "TSTD"
+	static final int SNAPSHOT_VERSION = 1;
+	static final int SNAPSHOT_SCORED = 1;
+
+	/**
+	 * The counts stored at the start of a snapshot, which determine where each section starts.
+	 */
+	static final class SnapshotHeader {
+		static final int LENGTH = 24;
+
+		final int nodes;
+		final int chars;
+		final int matches;
+		final boolean scored;
+
+		private SnapshotHeader(final int nodes, final int chars, final int matches, final boolean scored) {
+			this.nodes = nodes;
+			this.chars = chars;
+			this.matches = matches;
+			this.scored = scored;
+		}
+
+		/**
+		 * Reads and validates the header at the buffer's position, advancing past it.
+		 * @param buffer Buffer positioned at the start of a snapshot.
+		 * @param length Length of the whole snapshot in bytes.
+		 * @return Header.
+		 * @throws IOException if the buffer doesn't start with a valid header or is too short for the counts in it
+		 */
+		static SnapshotHeader read(final ByteBuffer buffer, final long length) throws IOException {
+			if (length < LENGTH) {
+				throw new IOException("Dictionary snapshot is truncated.");
+			}
+			final int magic = buffer.getInt();
+			if (magic != SNAPSHOT_MAGIC) {
+				throw new IOException("Not a dictionary snapshot.");
+			}
+			final int version = buffer.getInt();
+			if (version != SNAPSHOT_VERSION) {
+				throw new IOException("Unsupported dictionary snapshot version: " + version);
+			}
+			final SnapshotHeader header = new SnapshotHeader(
+					buffer.getInt(),
+					buffer.getInt(),
+					buffer.getInt(),
+					(buffer.getInt() & SNAPSHOT_SCORED) != 0);
+			if (header.nodes < 0 || header.chars < 0 || header.matches < 0 || length < header.snapshotLength()) {
+				throw new IOException("Dictionary snapshot is truncated.");
+			}
+			return header;
+		}
+
+		long matchIdsStart() {
+			return LENGTH;
+		}
+
+		/**
+		 * Returns the position of one of the int arrays.
+		 * @param index Index of the array in the order they are written (0 = fragmentOffsets, 1 = left, ...).
+		 * @return Position in bytes.
+		 */
+		long intArrayStart(final int index) {
+			// only the first and fifth arrays (fragmentOffsets and matchOffsets) have nodes + 1 elements
+			final long elements = (long) index * nodes + Math.min(index, 1) + (index > 4 ? 1 : 0);
+			return matchIdsStart() + 8L * matches + 4L * elements;
+		}
+
+		long charsStart() {
+			return intArrayStart(scored ? 7 : 5);
+		}
+
+		long snapshotLength() {
+			return charsStart() + 2L * chars;
+		}
+	}
+
+	/**
+	 * Constructs a compact copy of a tree. The given tree is not modified and can be discarded afterwards.
+	 * @param root Root of the tree to copy (can be null for an empty tree).
+	 * @param <S> Type of the searchable object that the tree stores.
+	 * @return New instance.
+	 */
+	public static <S extends StringSearchable> TstCompactTree<S> fromTree(final TstNode<S> root) {
+		return TstCompactTreeArray.copyOf(root);
+	}
+
+	/**
+	 * Reads a tree from a binary snapshot written by {@link #writeTo(DataOutputStream, SearchableIdMapping)} onto the
+	 * heap. All ids are resolved up front.
+	 * @param buffer Buffer positioned at the start of the snapshot, such as a memory-mapped file.
+	 * @param ids Mapping that resolves the id of each match.
+	 * @param <S> Type of the searchable object that the tree stores.
+	 * @return New instance.
+	 * @throws IOException if the buffer doesn't contain a valid snapshot or an id cannot be resolved
+	 */
+	public static <S extends StringSearchable> TstCompactTree<S> readFrom(
+			final ByteBuffer buffer,
+			final SearchableIdMapping<S> ids) throws IOException {
+		return TstCompactTreeArray.read(buffer, ids);
+	}
+
+	/**
+	 * Memory-maps a binary snapshot written by {@link #writeTo(DataOutputStream, SearchableIdMapping)} and searches it
+	 * in place. Nothing is copied onto the heap: the operating system pages the file in as it is searched, and the same
+	 * pages are shared by every process that maps the file. Ids are resolved as matches are visited, and matches whose
+	 * id no longer resolves are skipped.
+	 * @param file Snapshot file.
+	 * @param ids Mapping that resolves the id of each match.
+	 * @param <S> Type of the searchable object that the tree stores.
+	 * @return New instance.
+	 * @throws IOException if the file cannot be mapped or isn't a valid snapshot
+	 */
+	public static <S extends StringSearchable> TstCompactTree<S> map(
+			final File file,
+			final SearchableIdMapping<S> ids) throws IOException {
+		return TstCompactTreeMapped.map(file, ids, TstCompactTreeMapped.DEFAULT_REGION_BITS);
+	}
+
+	/**
+	 * Returns the number of nodes in the tree.
+	 * @return Node count.
+	 */
+	public abstract int size();
+
+	/**
+	 * Returns a character of the concatenated node fragments.
+	 * @param index Index into all fragment characters.
+	 * @return Character.
+	 */
+	abstract char fragmentChar(int index);
+
+	/**
+	 * Returns the index of the first character of a node's fragment, or the total number of fragment characters when
+	 * given the node count.
+	 */
+	abstract int fragmentOffset(int node);
+	abstract int left(int node);
+	abstract int right(int node);
+	abstract int middleEnd(int node);
+
+	/**
+	 * Returns the index of a node's first match, or the total number of matches when given the node count.
+	 */
+	abstract int matchOffset(int node);
+
+	/**
+	 * Returns a match.
+	 * @param index Index into all matches.
+	 * @return Match, or null if it no longer exists.
+	 */
+	abstract S match(int index);
+
+	/**
+	 * Returns the id of a match, which is used when writing a snapshot.
+	 * @param index Index into all matches.
+	 * @param ids Mapping that provides ids for searchables.
+	 * @return Id.
+	 */
+	long matchId(final int index, final SearchableIdMapping<S> ids) {
+		return ids.getId(match(index));
+	}
+
+	/**
+	 * Indicates if the tree stores score bounds, which is the case when it contains {@link ScoredStringSearchable}s.
+	 */
+	abstract boolean isScored();
+	abstract int ownMaxScore(int node);
+	abstract int subtreeMaxScore(int node);
+
+	/**
+	 * Writes the tree to a binary snapshot, replacing each match with its id.
+	 * @param out Stream to write to.
+	 * @param ids Mapping that provides the id of each match.
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void writeTo(final DataOutputStream out, final SearchableIdMapping<S> ids) throws IOException {
+		final int nodes = size();
+		final int chars = fragmentOffset(nodes);
+		final int matchTotal = matchOffset(nodes);
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(SNAPSHOT_VERSION);
+		out.writeInt(nodes);
+		out.writeInt(chars);
+		out.writeInt(matchTotal);
+		out.writeInt(isScored() ? SNAPSHOT_SCORED : 0);
+		for (int k = 0; k < matchTotal; k++) {
+			out.writeLong(matchId(k, ids));
+		}
+		for (int i = 0; i <= nodes; i++) {
+			out.writeInt(fragmentOffset(i));
+		}
+		for (int i = 0; i < nodes; i++) {
+			out.writeInt(left(i));
+		}
+		for (int i = 0; i < nodes; i++) {
+			out.writeInt(right(i));
+		}
+		for (int i = 0; i < nodes; i++) {
+			out.writeInt(middleEnd(i));
+		}
+		for (int i = 0; i <= nodes; i++) {
+			out.writeInt(matchOffset(i));
+		}
+		if (isScored()) {
+			for (int i = 0; i < nodes; i++) {
+				out.writeInt(ownMaxScore(i));
+			}
+			for (int i = 0; i < nodes; i++) {
+				out.writeInt(subtreeMaxScore(i));
+			}
+		}
+		for (int k = 0; k < chars; k++) {
+			out.writeChar(fragmentChar(k));
+		}
+	}
+
+	/**
+	 * Finds all strings that match a given prefix.
+	 * @param prefix Prefix to match against.
+	 * @param visitor Visitor instance that will be called for each {@link StringSearchable} matching the given prefix.
+	 */
+	public void searchPrefix(final String prefix, final TstNode.NodeVisitor<S> visitor) {
+		final int node = findPrefixNode(prefix);
+		if (node == NONE) {
+			return;
+		}
+		// the node and its middle subtree are contiguous, and so are their matches
+		visitMatches(matchOffset(node), matchOffset(middleEnd(node)), prefix, visitor);
+	}
+
+	/**
+	 * Finds all strings that start with a string within a given edit distance of a prefix.
+	 * @param prefix Prefix to match against.
+	 * @param maxEdits Maximum number of inserted, deleted, substituted or transposed characters.
+	 * @param visitor Visitor instance that will be called for each {@link StringSearchable} that matches.
+	 * @see TstNode#searchFuzzyPrefix(String, int, TstNode.NodeVisitor)
+	 */
+	public void searchFuzzyPrefix(final String prefix, final int maxEdits, final TstNode.NodeVisitor<S> visitor) {
+		if (prefix.isEmpty() || size() == 0) {
+			return;
+		}
+		final EditDistanceRows rows = new EditDistanceRows(prefix, maxEdits);
+		if (rows.isMatch(0)) {
+			visitMatches(0, matchOffset(size()), prefix, visitor);
+		} else {
+			searchFuzzySiblings(0, rows, 0, prefix, visitor);
+		}
+	}
+
+	/**
+	 * Searches a node and its left and right siblings, which all extend the path of the given depth.
+	 */
+	private void searchFuzzySiblings(
+			final int first,
+			final EditDistanceRows rows,
+			final int depth,
+			final String prefix,
+			final TstNode.NodeVisitor<S> visitor) {
+		if (rows.isRestricted(depth)) {
+			// look up the few characters that can still match instead of visiting every sibling
+			for (int j = rows.nextCandidate(depth, 0); j >= 0; j = rows.nextCandidate(depth, j + 1)) {
+				final int node = findSibling(first, rows.queryCharAt(j));
+				if (node != NONE) {
+					searchFuzzyPrefix(node, rows, depth, prefix, visitor);
+				}
+			}
+			return;
+		}
+		if (left(first) != NONE) {
+			searchFuzzySiblings(left(first), rows, depth, prefix, visitor);
+		}
+		if (right(first) != NONE) {
+			searchFuzzySiblings(right(first), rows, depth, prefix, visitor);
+		}
+		searchFuzzyPrefix(first, rows, depth, prefix, visitor);
+	}
+
+	/**
+	 * Searches a node's fragment and middle subtree, ignoring its left and right siblings.
+	 */
+	private void searchFuzzyPrefix(
+			final int node,
+			final EditDistanceRows rows,
+			final int depth,
+			final String prefix,
+			final TstNode.NodeVisitor<S> visitor) {
+		int d = depth;
+		for (int k = fragmentOffset(node), end = fragmentOffset(node + 1); k < end; k++) {
+			final boolean viable = rows.push(++d, fragmentChar(k));
+			if (rows.isMatch(d)) {
+				// the node and its middle subtree are contiguous, and so are their matches
+				visitMatches(matchOffset(node), matchOffset(middleEnd(node)), prefix, visitor);
+				return;
+			}
+			if (!viable) {
+				return;
+			}
+		}
+		if (hasMiddle(node)) {
+			searchFuzzySiblings(node + 1, rows, d, prefix, visitor);
+		}
+	}
+
+	/**
+	 * Finds the node among a node and its left and right siblings whose fragment starts with a given character.
+	 * @param first Node to start from.
+	 * @param ch Character to look for.
+	 * @return Index of the matching node or {@link #NONE} if there isn't one.
+	 */
+	private int findSibling(final int first, final char ch) {
+		int node = first;
+		while (node != NONE) {
+			final char nodeChar = fragmentChar(fragmentOffset(node));
+			if (ch < nodeChar) {
+				node = left(node);
+			} else if (ch > nodeChar) {
+				node = right(node);
+			} else {
+				return node;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Finds strings that match a given prefix in descending order of their score bounds, stopping as soon as the
+	 * visitor indicates that the remaining matches can't change its results. When the tree has no scores, this is the
+	 * same as {@link #searchPrefix(String, TstNode.NodeVisitor)}.
+	 * <p>
+	 * Candidates are kept in a max-heap of packed longs: the upper 32 bits hold the score bound and the lower 32 bits
+	 * hold a node index shifted left by one, with the low bit set when the entry stands for the node's own matches
+	 * rather than its whole subtree.
+	 * @param prefix Prefix to match against.
+	 * @param visitor Visitor instance that will be called for matches until it is complete.
+	 */
+	public void searchPrefixBestFirst(final String prefix, final TstNode.BoundedNodeVisitor<S> visitor) {
+		if (!isScored()) {
+			searchPrefix(prefix, visitor);
+			return;
+		}
+		final int start = findPrefixNode(prefix);
+		if (start == NONE) {
+			return;
+		}
+
+		final LongMaxHeap candidates = new LongMaxHeap();
+		candidates.add(ownEntry(start));
+		if (hasMiddle(start)) {
+			candidates.add(subtreeEntry(start + 1));
+		}
+		while (!candidates.isEmpty()) {
+			final long entry = candidates.poll();
+			final int bound = (int) (entry >> 32);
+			if (bound == NO_MATCHES || visitor.isComplete(bound)) {
+				return;
+			}
+			final int node = (int) (entry & 0xffffffffL) >>> 1;
+			if ((entry & 1L) != 0) {
+				visitMatches(matchOffset(node), matchOffset(node + 1), prefix, visitor);
+			} else {
+				candidates.add(ownEntry(node));
+				if (hasMiddle(node)) {
+					candidates.add(subtreeEntry(node + 1));
+				}
+				if (left(node) != NONE) {
+					candidates.add(subtreeEntry(left(node)));
+				}
+				if (right(node) != NONE) {
+					candidates.add(subtreeEntry(right(node)));
+				}
+			}
+		}
+	}
+
+	private long ownEntry(final int node) {
+		return ((long) ownMaxScore(node) << 32) | ((long) node << 1) | 1L;
+	}
+
+	private long subtreeEntry(final int node) {
+		return ((long) subtreeMaxScore(node) << 32) | ((long) node << 1);
+	}
+
+	/**
+	 * A minimal binary max-heap of primitive longs.
+	 */
+	private static final class LongMaxHeap {
+		private long[] heap = new long[32];
+		private int size = 0;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		void add(final long value) {
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, size * 2);
+			}
+			int k = size++;
+			while (k > 0) {
+				final int parent = (k - 1) >>> 1;
+				if (heap[parent] >= value) {
+					break;
+				}
+				heap[k] = heap[parent];
+				k = parent;
+			}
+			heap[k] = value;
+		}
+
+		long poll() {
+			final long top = heap[0];
+			final long last = heap[--size];
+			int k = 0;
+			final int half = size >>> 1;
+			while (k < half) {
+				int child = 2 * k + 1;
+				if (child + 1 < size && heap[child + 1] > heap[child]) {
+					child++;
+				}
+				if (last >= heap[child]) {
+					break;
+				}
+				heap[k] = heap[child];
+				k = child;
+			}
+			heap[k] = last;
+			return top;
+		}
+	}
+
+	/**
+	 * Finds all strings that exactly match a given string.
+	 * @param searchString String to match against.
+	 * @param visitor Visitor instance that will be called for each {@link StringSearchable} matching the given string.
+	 */
+	public void searchExactMatch(final String searchString, final TstNode.NodeVisitor<S> visitor) {
+		final int length = searchString.length();
+		if (length == 0 || size() == 0) {
+			return;
+		}
+		int node = 0;
+		int i = 0;
+		while (node != NONE) {
+			final char searchChar = searchString.charAt(i);
+			final char nodeChar = fragmentChar(fragmentOffset(node));
+			if (searchChar < nodeChar) {
+				node = left(node);
+			} else if (searchChar > nodeChar) {
+				node = right(node);
+			} else {
+				final int start = fragmentOffset(node);
+				final int fragmentLength = fragmentOffset(node + 1) - start;
+				if (commonLength(start, fragmentLength, searchString, i) != fragmentLength) {
+					return;
+				}
+				i += fragmentLength;
+				if (i == length) {
+					visitMatches(matchOffset(node), matchOffset(node + 1), searchString, visitor);
+					return;
+				}
+				node = hasMiddle(node) ? node + 1 : NONE;
+			}
+		}
+	}
+
+	/**
+	 * Finds the first node in the tree whose path matches the given prefix.
+	 * @param prefix Prefix to match against.
+	 * @return Index of the node or {@link #NONE} if no string in the tree starts with the prefix.
+	 */
+	private int findPrefixNode(final String prefix) {
+		final int length = prefix.length();
+		if (length == 0 || size() == 0) {
+			return NONE;
+		}
+		int node = 0;
+		int i = 0;
+		while (node != NONE) {
+			final char searchChar = prefix.charAt(i);
+			final char nodeChar = fragmentChar(fragmentOffset(node));
+			if (searchChar < nodeChar) {
+				node = left(node);
+			} else if (searchChar > nodeChar) {
+				node = right(node);
+			} else {
+				final int start = fragmentOffset(node);
+				final int fragmentLength = fragmentOffset(node + 1) - start;
+				final int common = commonLength(start, fragmentLength, prefix, i);
+				if (common == fragmentLength) {
+					// the fragment is consumed entirely: continue traversing
+					i += fragmentLength;
+					if (i == length) {
+						return node;
+					}
+					node = hasMiddle(node) ? node + 1 : NONE;
+				} else if (i + common == length) {
+					// the remainder of the prefix is a prefix of the fragment
+					return node;
+				} else {
+					return NONE;
+				}
+			}
+		}
+		return NONE;
+	}
+
+	boolean hasMiddle(final int node) {
+		return middleEnd(node) > node + 1;
+	}
+
+	/**
+	 * Counts the number of characters in common between a fragment and a string starting at a given offset.
+	 * @param start Index of the fragment's first character.
+	 * @param fragmentLength Length of the fragment.
+	 * @param s String to compare against.
+	 * @param offset Index in the string to start comparing at.
+	 * @return Number of leading characters in common.
+	 */
+	private int commonLength(final int start, final int fragmentLength, final String s, final int offset) {
+		final int max = Math.min(fragmentLength, s.length() - offset);
+		int k = 0;
+		while (k < max && fragmentChar(start + k) == s.charAt(offset + k)) {
+			k++;
+		}
+		return k;
+	}
+
+	private void visitMatches(
+			final int from,
+			final int to,
+			final String searchString,
+			final TstNode.NodeVisitor<S> visitor) {
+		for (int k = from; k < to; k++) {
+			final S match = match(k);
+			if (match != null) {
+				visitor.visit(match, searchString);
+			}
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link TstCompactTree} whose values are stored in arrays on the heap.
+ * @param <S> Type of the searchable object that this tree stores.
+ */
+class TstCompactTreeArray<S extends StringSearchable> extends TstCompactTree<S> {
+	private final char[] fragmentChars;
+	private final int[] fragmentOffsets;
+	private final int[] left;
+	private final int[] right;
+	private final int[] middleEnd;
+	private final int[] matchOffsets;
+	private final Object[] matches;
+	/**
+	 * Highest score of the matches at each node and of each node's subtree, or null when nothing in the tree is scored.
+	 */
+	private final int[] ownMaxScore;
+	private final int[] subtreeMaxScore;
+
+	/**
+	 * Tracks the next free position in each array while the tree is being laid out.
+	 */
+	private int nodeCount;
+	private int charCount;
+	private int matchCount;
+
+	private TstCompactTreeArray(final int nodes, final int chars, final int matchTotal, final boolean scored) {
+		this.fragmentChars = new char[chars];
+		this.fragmentOffsets = new int[nodes + 1];
+		this.left = new int[nodes];
+		this.right = new int[nodes];
+		this.middleEnd = new int[nodes];
+		this.matchOffsets = new int[nodes + 1];
+		this.matches = new Object[matchTotal];
+		this.ownMaxScore = scored ? new int[nodes] : null;
+		this.subtreeMaxScore = scored ? new int[nodes] : null;
+	}
+
+	/**
+	 * @see TstCompactTree#fromTree(TstNode)
+	 */
+	static <S extends StringSearchable> TstCompactTreeArray<S> copyOf(final TstNode<S> root) {
+		final int[] counts = new int[4];
+		if (root != null) {
+			count(root, counts);
+		}
+		final TstCompactTreeArray<S> tree =
+				new TstCompactTreeArray<S>(counts[0], counts[1], counts[2], counts[3] > 0);
+		if (root != null) {
+			tree.layout(root);
+		}
+		tree.fragmentOffsets[tree.nodeCount] = tree.charCount;
+		tree.matchOffsets[tree.nodeCount] = tree.matchCount;
+		return tree;
+	}
+
+	/**
+	 * Counts the number of nodes, fragment characters, matches and scored matches in a tree.
+	 * @param node Root of the tree.
+	 * @param counts Array to accumulate the node, character, match and scored match counts into.
+	 */
+	private static void count(final TstNode<?> node, final int[] counts) {
+		counts[0]++;
+		counts[1] += node.fragmentLength();
+		if (node.matches != null) {
+			counts[2] += node.matches.size();
+			for (final StringSearchable searchable: node.matches) {
+				if (searchable instanceof ScoredStringSearchable) {
+					counts[3]++;
+				}
+			}
+		}
+		if (node.middle != null) {
+			count(node.middle, counts);
+		}
+		if (node.left != null) {
+			count(node.left, counts);
+		}
+		if (node.right != null) {
+			count(node.right, counts);
+		}
+	}
+
+	/**
+	 * Copies a node and its children into the arrays in pre-order (middle, left, right).
+	 * @param node Node to copy.
+	 * @return Index assigned to the node.
+	 */
+	private int layout(final TstNode<S> node) {
+		final int i = nodeCount++;
+
+		fragmentOffsets[i] = charCount;
+		final int length = node.fragmentLength();
+		for (int k = 0; k < length; k++) {
+			fragmentChars[charCount++] = node.fragmentCharAt(k);
+		}
+
+		matchOffsets[i] = matchCount;
+		int ownMax = NO_MATCHES;
+		if (node.matches != null) {
+			for (final S searchable: node.matches) {
+				matches[matchCount++] = searchable;
+				ownMax = Math.max(ownMax, scoreOf(searchable));
+			}
+		}
+
+		if (node.middle != null) {
+			layout(node.middle);
+		}
+		middleEnd[i] = nodeCount;
+		left[i] = node.left == null ? NONE : layout(node.left);
+		right[i] = node.right == null ? NONE : layout(node.right);
+
+		if (ownMaxScore != null) {
+			int subtreeMax = ownMax;
+			if (hasMiddle(i)) {
+				subtreeMax = Math.max(subtreeMax, subtreeMaxScore[i + 1]);
+			}
+			if (left[i] != NONE) {
+				subtreeMax = Math.max(subtreeMax, subtreeMaxScore[left[i]]);
+			}
+			if (right[i] != NONE) {
+				subtreeMax = Math.max(subtreeMax, subtreeMaxScore[right[i]]);
+			}
+			ownMaxScore[i] = ownMax;
+			subtreeMaxScore[i] = subtreeMax;
+		}
+		return i;
+	}
+
+	private static int scoreOf(final StringSearchable searchable) {
+		if (searchable instanceof ScoredStringSearchable) {
+			return ((ScoredStringSearchable) searchable).getScore();
+		}
+		return UNBOUNDED;
+	}
+
+	/**
+	 * @see TstCompactTree#readFrom(ByteBuffer, SearchableIdMapping)
+	 */
+	static <S extends StringSearchable> TstCompactTreeArray<S> read(
+			final ByteBuffer buffer,
+			final SearchableIdMapping<S> ids) throws IOException {
+		final SnapshotHeader header = SnapshotHeader.read(buffer, buffer.remaining());
+		final TstCompactTreeArray<S> tree =
+				new TstCompactTreeArray<S>(header.nodes, header.chars, header.matches, header.scored);
+		for (int k = 0; k < header.matches; k++) {
+			final long id = buffer.getLong();
+			final S searchable = ids.getSearchable(id);
+			if (searchable == null) {
+				throw new IOException("Unknown searchable id in dictionary snapshot: " + id);
+			}
+			tree.matches[k] = searchable;
+		}
+		readInts(buffer, tree.fragmentOffsets);
+		readInts(buffer, tree.left);
+		readInts(buffer, tree.right);
+		readInts(buffer, tree.middleEnd);
+		readInts(buffer, tree.matchOffsets);
+		if (header.scored) {
+			readInts(buffer, tree.ownMaxScore);
+			readInts(buffer, tree.subtreeMaxScore);
+		}
+		buffer.asCharBuffer().get(tree.fragmentChars);
+		buffer.position(buffer.position() + header.chars * 2);
+		return tree;
+	}
+
+	private static void readInts(final ByteBuffer buffer, final int[] values) {
+		// bulk copy through a view of the buffer, then skip past what was read
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + values.length * 4);
+	}
+
+	@Override
+	public int size() {
+		return left.length;
+	}
+
+	@Override
+	char fragmentChar(final int index) {
+		return fragmentChars[index];
+	}
+
+	@Override
+	int fragmentOffset(final int node) {
+		return fragmentOffsets[node];
+	}
+
+	@Override
+	int left(final int node) {
+		return left[node];
+	}
+
+	@Override
+	int right(final int node) {
+		return right[node];
+	}
+
+	@Override
+	int middleEnd(final int node) {
+		return middleEnd[node];
+	}
+
+	@Override
+	int matchOffset(final int node) {
+		return matchOffsets[node];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	S match(final int index) {
+		return (S) matches[index];
+	}
+
+	@Override
+	boolean isScored() {
+		return ownMaxScore != null;
+	}
+
+	@Override
+	int ownMaxScore(final int node) {
+		return ownMaxScore[node];
+	}
+
+	@Override
+	int subtreeMaxScore(final int node) {
+		return subtreeMaxScore[node];
+	}
+}
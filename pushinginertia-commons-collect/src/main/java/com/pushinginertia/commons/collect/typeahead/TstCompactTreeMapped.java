@@ -0,0 +1,189 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link TstCompactTree} that reads its values directly from a memory-mapped snapshot file, so the tree takes no
+ * heap space beyond a few offsets and its size is only limited by the address space.
+ * <p>
+ * A single {@link MappedByteBuffer} can't exceed 2GB, so the file is mapped as a series of regions. Each region
+ * overlaps the next by the size of a long, which means that any value starting in a region can be read from that
+ * region alone. Only absolute reads are used, so the tree can be searched by any number of threads.
+ * @param <S> Type of the searchable object that this tree stores.
+ */
+class TstCompactTreeMapped<S extends StringSearchable> extends TstCompactTree<S> {
+	/**
+	 * Maps the file in 1GB regions.
+	 */
+	static final int DEFAULT_REGION_BITS = 30;
+	private static final int REGION_OVERLAP = 8;
+
+	private final SearchableIdMapping<S> ids;
+	private final MappedByteBuffer[] regions;
+	private final int regionBits;
+	private final long regionMask;
+	private final SnapshotHeader header;
+
+	/**
+	 * Position of each section in the file.
+	 */
+	private final long matchIdsStart;
+	private final long fragmentOffsetsStart;
+	private final long leftStart;
+	private final long rightStart;
+	private final long middleEndStart;
+	private final long matchOffsetsStart;
+	private final long ownMaxScoreStart;
+	private final long subtreeMaxScoreStart;
+	private final long charsStart;
+
+	private TstCompactTreeMapped(
+			final FileChannel channel,
+			final SearchableIdMapping<S> ids,
+			final int regionBits) throws IOException {
+		this.ids = ids;
+		this.regionBits = regionBits;
+		this.regionMask = (1L << regionBits) - 1;
+
+		final long length = channel.size();
+		final long regionSize = 1L << regionBits;
+		final int regionCount = (int) Math.max(1, (length + regionSize - 1) >>> regionBits);
+		regions = new MappedByteBuffer[regionCount];
+		for (int r = 0; r < regionCount; r++) {
+			final long start = (long) r << regionBits;
+			final long size = Math.min(regionSize + REGION_OVERLAP, length - start);
+			regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		}
+
+		final ByteBuffer headerBuffer = ByteBuffer.allocate(SnapshotHeader.LENGTH);
+		for (long pos = 0; pos + 4 <= Math.min(length, SnapshotHeader.LENGTH); pos += 4) {
+			headerBuffer.putInt(getInt(pos));
+		}
+		headerBuffer.flip();
+		header = SnapshotHeader.read(headerBuffer, length);
+
+		matchIdsStart = header.matchIdsStart();
+		fragmentOffsetsStart = header.intArrayStart(0);
+		leftStart = header.intArrayStart(1);
+		rightStart = header.intArrayStart(2);
+		middleEndStart = header.intArrayStart(3);
+		matchOffsetsStart = header.intArrayStart(4);
+		ownMaxScoreStart = header.intArrayStart(5);
+		subtreeMaxScoreStart = header.intArrayStart(6);
+		charsStart = header.charsStart();
+	}
+
+	/**
+	 * Maps a snapshot file. The channel is closed once the file is mapped since the mapping stays valid without it.
+	 * @param file Snapshot file.
+	 * @param ids Mapping that resolves the id of each match.
+	 * @param regionBits Base 2 logarithm of the size of each mapped region.
+	 * @param <S> Type of the searchable object that the tree stores.
+	 * @return New instance.
+	 * @throws IOException if the file cannot be mapped or isn't a valid snapshot
+	 */
+	static <S extends StringSearchable> TstCompactTreeMapped<S> map(
+			final File file,
+			final SearchableIdMapping<S> ids,
+			final int regionBits) throws IOException {
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new TstCompactTreeMapped<S>(channel, ids, regionBits);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private int getInt(final long pos) {
+		return regions[(int) (pos >>> regionBits)].getInt((int) (pos & regionMask));
+	}
+
+	private long getLong(final long pos) {
+		return regions[(int) (pos >>> regionBits)].getLong((int) (pos & regionMask));
+	}
+
+	private char getChar(final long pos) {
+		return regions[(int) (pos >>> regionBits)].getChar((int) (pos & regionMask));
+	}
+
+	@Override
+	public int size() {
+		return header.nodes;
+	}
+
+	@Override
+	char fragmentChar(final int index) {
+		return getChar(charsStart + 2L * index);
+	}
+
+	@Override
+	int fragmentOffset(final int node) {
+		return getInt(fragmentOffsetsStart + 4L * node);
+	}
+
+	@Override
+	int left(final int node) {
+		return getInt(leftStart + 4L * node);
+	}
+
+	@Override
+	int right(final int node) {
+		return getInt(rightStart + 4L * node);
+	}
+
+	@Override
+	int middleEnd(final int node) {
+		return getInt(middleEndStart + 4L * node);
+	}
+
+	@Override
+	int matchOffset(final int node) {
+		return getInt(matchOffsetsStart + 4L * node);
+	}
+
+	@Override
+	S match(final int index) {
+		return ids.getSearchable(getLong(matchIdsStart + 8L * index));
+	}
+
+	@Override
+	long matchId(final int index, final SearchableIdMapping<S> mapping) {
+		// copy the stored id so that matches which no longer resolve are preserved
+		return getLong(matchIdsStart + 8L * index);
+	}
+
+	@Override
+	boolean isScored() {
+		return header.scored;
+	}
+
+	@Override
+	int ownMaxScore(final int node) {
+		return getInt(ownMaxScoreStart + 4L * node);
+	}
+
+	@Override
+	int subtreeMaxScore(final int node) {
+		return getInt(subtreeMaxScoreStart + 4L * node);
+	}
+}
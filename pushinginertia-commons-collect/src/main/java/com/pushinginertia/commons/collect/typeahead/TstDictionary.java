@@ -15,31 +15,53 @@
  */
 package com.pushinginertia.commons.collect.typeahead;
 
-import com.pushinginertia.commons.collect.BoundedMinHeap;
+import com.pushinginertia.commons.collect.IntBoundedMinHeap;
 import com.pushinginertia.commons.core.validation.ValidateAs;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Dictionary that uses a ternary search tree as its data structure.
  * @param <S> Type of the searchable object that this dictionary stores.
  */
 public class TstDictionary<S extends StringSearchable> extends DefaultDictionary<S> {
-	private TstNode root;
-	private boolean readOnly = false;
+	private TstNode<S> root;
+	/**
+	 * Compact copy of the tree that replaces {@link #root} once the dictionary is made read only.
+	 */
+	private TstCompactTree<S> compactTree = null;
+	/**
+	 * Number of strings that {@link #addSearchables(Collection)} preprocesses on one thread before splitting the work.
+	 */
+	private static final int PARALLEL_THRESHOLD = 2048;
 
-	private static class DefaultVisitor<S extends StringSearchable> implements TstNode.NodeVisitor<S> {
+	/**
+	 * Visitor that ranks each distinct match with a filter and keeps the highest ranked matches. A single instance can
+	 * be passed to several searches to combine their results.
+	 */
+	static class DefaultVisitor<S extends StringSearchable> implements TstNode.BoundedNodeVisitor<S> {
 		private final DictionarySearchResultFilter<S> filter;
 		private final Set<StringSearchable> seenResults;
-		private final BoundedMinHeap<S> results;
+		private final IntBoundedMinHeap<S> results;
 
-		private DefaultVisitor(final DictionarySearchResultFilter<S> filter, final int limit) {
+		DefaultVisitor(final DictionarySearchResultFilter<S> filter, final int limit) {
 			this.filter = ValidateAs.notNull(filter, "filter");
 			this.seenResults = new HashSet<StringSearchable>();
-			this.results = new BoundedMinHeap<S>(limit);
+			this.results = new IntBoundedMinHeap<S>(limit);
 		}
 
 		public void visit(final S searchable, final String searchString) {
@@ -56,38 +78,383 @@ public class TstDictionary<S extends StringSearchable> extends DefaultDictionary
 			}
 		}
 
+		public boolean isComplete(final int maxRank) {
+			// a match ranked equal to the lowest result can't displace it
+			return !results.accepts(maxRank);
+		}
+
 		public List<S> resultList() {
 			// order by the highest ranked result first
 			return results.toListDescendingRank();
 		}
 	}
 
+	/**
+	 * Collects the matches of a search that are also in a set of candidates, or every match when there are no
+	 * candidates yet. Used to intersect the matches of each word passed to
+	 * {@link #searchTokens(String, DictionarySearchResultFilter, int)}.
+	 */
+	static final class IntersectingVisitor<S extends StringSearchable> implements TstNode.NodeVisitor<S> {
+		private final Set<S> candidates;
+		private final Set<S> matches = new HashSet<S>();
+
+		IntersectingVisitor(final Set<S> candidates) {
+			this.candidates = candidates;
+		}
+
+		public void visit(final S searchable, final String searchString) {
+			if (candidates == null || candidates.contains(searchable)) {
+				matches.add(searchable);
+			}
+		}
+
+		Set<S> matches() {
+			return matches;
+		}
+	}
+
+	/**
+	 * Passes only the matches that are in a set of candidates on to another visitor.
+	 */
+	static final class CandidateVisitor<S extends StringSearchable> implements TstNode.BoundedNodeVisitor<S> {
+		private final Set<S> candidates;
+		private final TstNode.BoundedNodeVisitor<S> visitor;
+
+		CandidateVisitor(final Set<S> candidates, final TstNode.BoundedNodeVisitor<S> visitor) {
+			this.candidates = candidates;
+			this.visitor = visitor;
+		}
+
+		public void visit(final S searchable, final String searchString) {
+			if (candidates.contains(searchable)) {
+				visitor.visit(searchable, searchString);
+			}
+		}
+
+		public boolean isComplete(final int maxRank) {
+			return visitor.isComplete(maxRank);
+		}
+	}
+
 	public TstDictionary(final StringPreprocessor preprocessor) {
 		super(preprocessor);
 	}
 
+	/**
+	 * Creates a dictionary that also indexes every word of each search string, so that
+	 * {@link #searchTokens(String, DictionarySearchResultFilter, int)} can match words anywhere in a string. Prefix
+	 * and exact match searches also find a string from any of its words. The tree is larger by roughly the length of
+	 * the words that don't start a search string.
+	 * @param preprocessor Preprocessor to apply to search strings and to each word.
+	 * @param tokenizer Tokenizer that splits search strings into words.
+	 */
+	public TstDictionary(final StringPreprocessor preprocessor, final StringTokenizer tokenizer) {
+		super(preprocessor, ValidateAs.notNull(tokenizer, "tokenizer"));
+	}
+
+	private TstDictionary(
+			final StringPreprocessor preprocessor,
+			final StringTokenizer tokenizer,
+			final TstCompactTree<S> compactTree) {
+		super(preprocessor, tokenizer);
+		this.compactTree = compactTree;
+	}
+
+	/**
+	 * Adds a collection of {@link StringSearchable} instances to the dictionary in bulk, which is much faster than
+	 * adding them one at a time and results in a better balanced tree:
+	 * <ol>
+	 * <li>every search string is preprocessed (and split into words if the dictionary has a tokenizer), in parallel on
+	 * the common fork-join pool for large collections</li>
+	 * <li>the preprocessed strings are sorted (also in parallel)</li>
+	 * <li>the strings are inserted median first, recursing into the lower and upper halves, so that the left and right
+	 * children at each level of the tree form balanced binary search trees instead of depending on the order of the
+	 * collection</li>
+	 * </ol>
+	 * @param searchables Collection of instances to add.
+	 */
 	public void addSearchables(final Collection<S> searchables) {
+		assertWritable();
+		int count = 0;
+		for (final S searchable: searchables) {
+			count += searchable.getSearchStrings().size();
+		}
+		final String[] searchStrings = new String[count];
+		int i = 0;
+		for (final S searchable: searchables) {
+			for (final String searchString: searchable.getSearchStrings()) {
+				searchStrings[i++] = searchString;
+			}
+		}
+
+		final Collection<?>[] indexStrings = new Collection<?>[count];
+		final PreprocessTask task = new PreprocessTask(this, searchStrings, indexStrings, 0, count);
+		if (count < PARALLEL_THRESHOLD) {
+			task.compute();
+		} else {
+			ForkJoinPool.commonPool().invoke(task);
+		}
+
+		int entryCount = 0;
+		for (final Collection<?> strings: indexStrings) {
+			entryCount += strings.size();
+		}
+		final BulkEntry<?>[] entries = new BulkEntry<?>[entryCount];
+		i = 0;
+		int e = 0;
 		for (final S searchable: searchables) {
-			addSearchable(searchable);
+			for (int k = searchable.getSearchStrings().size(); k > 0; k--) {
+				for (final Object string: indexStrings[i++]) {
+					entries[e++] = new BulkEntry<S>((String) string, searchable);
+				}
+			}
+		}
+		Arrays.parallelSort(entries);
+		insertMedianFirst(entries, 0, entryCount);
+	}
+
+	/**
+	 * Inserts the median of a sorted range, then the medians of its lower and upper halves, and so on.
+	 * @param entries Sorted entries.
+	 * @param from Start of the range (inclusive).
+	 * @param to End of the range (exclusive).
+	 */
+	@SuppressWarnings("unchecked")
+	private void insertMedianFirst(final BulkEntry<?>[] entries, final int from, final int to) {
+		if (from >= to) {
+			return;
+		}
+		final int median = (from + to) >>> 1;
+		final BulkEntry<S> entry = (BulkEntry<S>) entries[median];
+		insert(entry.string, entry.searchable);
+		insertMedianFirst(entries, from, median);
+		insertMedianFirst(entries, median + 1, to);
+	}
+
+	/**
+	 * A search string paired with the searchable it belongs to, ordered by the string.
+	 */
+	private static final class BulkEntry<S extends StringSearchable> implements Comparable<BulkEntry<?>> {
+		private final String string;
+		private final S searchable;
+
+		private BulkEntry(final String string, final S searchable) {
+			this.string = string;
+			this.searchable = searchable;
+		}
+
+		public int compareTo(final BulkEntry<?> o) {
+			return string.compareTo(o.string);
 		}
 	}
 
+	/**
+	 * Finds the strings that a range of search strings are indexed under, splitting the range in two until it's small
+	 * enough.
+	 */
+	private static final class PreprocessTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final TstDictionary<?> dictionary;
+		private final String[] searchStrings;
+		private final Collection<?>[] indexStrings;
+		private final int from;
+		private final int to;
+
+		private PreprocessTask(
+				final TstDictionary<?> dictionary,
+				final String[] searchStrings,
+				final Collection<?>[] indexStrings,
+				final int from,
+				final int to) {
+			this.dictionary = dictionary;
+			this.searchStrings = searchStrings;
+			this.indexStrings = indexStrings;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					indexStrings[i] = dictionary.indexStrings(searchStrings[i]);
+				}
+			} else {
+				final int middle = (from + to) >>> 1;
+				invokeAll(
+						new PreprocessTask(dictionary, searchStrings, indexStrings, from, middle),
+						new PreprocessTask(dictionary, searchStrings, indexStrings, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * @return Root of the tree, or null if the dictionary is empty or read only.
+	 */
+	TstNode<S> getRoot() {
+		return root;
+	}
+
 	public void addSearchable(final S searchable) {
-		if (readOnly) {
-			throw new IllegalStateException("Dictionary is readonly.");
+		assertWritable();
+		for (final String searchString: searchable.getSearchStrings()) {
+			for (final String processedSearchString: indexStrings(searchString)) {
+				insert(processedSearchString, searchable);
+			}
 		}
+	}
+
+	private void insert(final String processedSearchString, final S searchable) {
+		if (root == null) {
+			root = TstNode.newRoot(processedSearchString, searchable);
+		} else {
+			root.insert(processedSearchString, searchable);
+		}
+	}
+
+	public void removeSearchable(final S searchable) {
+		assertWritable();
 		for (final String searchString: searchable.getSearchStrings()) {
-			final String processedSearchString = preprocessor.preprocess(searchString);
-			if (root == null) {
-				root = TstNode.newRoot(processedSearchString, searchable);
-			} else {
-				root.insert(processedSearchString, searchable);
+			for (final String processedSearchString: indexStrings(searchString)) {
+				if (root == null) {
+					return;
+				}
+				root = root.remove(processedSearchString, searchable);
 			}
 		}
 	}
 
+	public void updateSearchable(final S oldSearchable, final S newSearchable) {
+		removeSearchable(oldSearchable);
+		addSearchable(newSearchable);
+	}
+
+	private void assertWritable() throws IllegalStateException {
+		if (compactTree != null) {
+			throw new IllegalStateException("Dictionary is readonly.");
+		}
+	}
+
+	/**
+	 * Makes the dictionary read only. The tree is converted into a compact array-based form that takes far less memory
+	 * than the tree of node objects used while strings are being added, which is released. If the dictionary contains
+	 * {@link ScoredStringSearchable}s, prefix searches on the read only dictionary stop early once no remaining match
+	 * can be ranked into the results.
+	 */
 	public void setReadOnly() {
-		readOnly = true;
+		if (compactTree == null) {
+			compactTree = TstCompactTree.fromTree(root);
+			root = null;
+		}
+	}
+
+	/**
+	 * Writes a binary snapshot of this dictionary to a file, which can later be loaded with
+	 * {@link #loadSnapshot(File, StringPreprocessor, SearchableIdMapping)} instead of adding every searchable again.
+	 * Searchables are written as ids, so they must be stored elsewhere.
+	 * @param file File to create or overwrite.
+	 * @param ids Mapping that provides the id of each searchable.
+	 * @throws IllegalStateException if the dictionary hasn't been made read only
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeSnapshot(final File file, final SearchableIdMapping<S> ids)
+	throws IllegalStateException, IOException {
+		ValidateAs.notNull(ids, "ids");
+		if (compactTree == null) {
+			throw new IllegalStateException("Dictionary must be readonly to write a snapshot.");
+		}
+		final DataOutputStream out =
+				new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			compactTree.writeTo(out, ids);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Loads a read only dictionary from a snapshot written by {@link #writeSnapshot(File, SearchableIdMapping)}. The
+	 * file is memory-mapped and its arrays are copied in bulk, so loading is bounded by I/O rather than by inserting
+	 * and preprocessing strings.
+	 * @param file Snapshot file.
+	 * @param preprocessor Preprocessor to apply to search strings, which must be the one the snapshot was built with.
+	 * @param ids Mapping that resolves the id of each searchable.
+	 * @param <S> Type of the searchable object that the dictionary stores.
+	 * @return New read only instance.
+	 * @throws IOException if the file cannot be read, isn't a valid snapshot or contains an id that cannot be resolved
+	 */
+	public static <S extends StringSearchable> TstDictionary<S> loadSnapshot(
+			final File file,
+			final StringPreprocessor preprocessor,
+			final SearchableIdMapping<S> ids) throws IOException {
+		return loadSnapshot(file, preprocessor, null, ids);
+	}
+
+	/**
+	 * Loads a read only dictionary from a snapshot of a dictionary that was created with a tokenizer.
+	 * @param file Snapshot file.
+	 * @param preprocessor Preprocessor to apply to search strings, which must be the one the snapshot was built with.
+	 * @param tokenizer Tokenizer to split search strings with, which must be the one the snapshot was built with.
+	 * @param ids Mapping that resolves the id of each searchable.
+	 * @param <S> Type of the searchable object that the dictionary stores.
+	 * @return New read only instance.
+	 * @throws IOException if the file cannot be read, isn't a valid snapshot or contains an id that cannot be resolved
+	 * @see #loadSnapshot(File, StringPreprocessor, SearchableIdMapping)
+	 */
+	public static <S extends StringSearchable> TstDictionary<S> loadSnapshot(
+			final File file,
+			final StringPreprocessor preprocessor,
+			final StringTokenizer tokenizer,
+			final SearchableIdMapping<S> ids) throws IOException {
+		ValidateAs.notNull(ids, "ids");
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new TstDictionary<S>(preprocessor, tokenizer, TstCompactTree.readFrom(buffer, ids));
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Opens a read only dictionary that searches a snapshot written by
+	 * {@link #writeSnapshot(File, SearchableIdMapping)} in place. The tree is never copied onto the heap: the file is
+	 * memory-mapped and paged in by the operating system as it is searched, so the dictionary can be far larger than
+	 * the heap and the same pages are shared by every JVM on the host that maps the file. Ids are resolved as matches
+	 * are found, and matches whose id no longer resolves are skipped.
+	 * @param file Snapshot file.
+	 * @param preprocessor Preprocessor to apply to search strings, which must be the one the snapshot was built with.
+	 * @param ids Mapping that resolves the id of each searchable.
+	 * @param <S> Type of the searchable object that the dictionary stores.
+	 * @return New read only instance.
+	 * @throws IOException if the file cannot be mapped or isn't a valid snapshot
+	 */
+	public static <S extends StringSearchable> TstDictionary<S> mapSnapshot(
+			final File file,
+			final StringPreprocessor preprocessor,
+			final SearchableIdMapping<S> ids) throws IOException {
+		return mapSnapshot(file, preprocessor, null, ids);
+	}
+
+	/**
+	 * Opens a read only dictionary that searches a snapshot of a dictionary that was created with a tokenizer in place.
+	 * @param file Snapshot file.
+	 * @param preprocessor Preprocessor to apply to search strings, which must be the one the snapshot was built with.
+	 * @param tokenizer Tokenizer to split search strings with, which must be the one the snapshot was built with.
+	 * @param ids Mapping that resolves the id of each searchable.
+	 * @param <S> Type of the searchable object that the dictionary stores.
+	 * @return New read only instance.
+	 * @throws IOException if the file cannot be mapped or isn't a valid snapshot
+	 * @see #mapSnapshot(File, StringPreprocessor, SearchableIdMapping)
+	 */
+	public static <S extends StringSearchable> TstDictionary<S> mapSnapshot(
+			final File file,
+			final StringPreprocessor preprocessor,
+			final StringTokenizer tokenizer,
+			final SearchableIdMapping<S> ids) throws IOException {
+		ValidateAs.notNull(ids, "ids");
+		return new TstDictionary<S>(preprocessor, tokenizer, TstCompactTree.map(file, ids));
 	}
 
 	public List<S> searchExactMatch(
@@ -95,13 +462,128 @@ public class TstDictionary<S extends StringSearchable> extends DefaultDictionary
 			final DictionarySearchResultFilter<S> filter,
 			final int limit) {
 		final DefaultVisitor<S> visitor = new DefaultVisitor<S>(filter, limit);
-		root.searchExactMatch(preprocessor.preprocess(searchString), visitor);
+		visitExactMatch(preprocessor.preprocess(searchString), visitor);
 		return visitor.resultList();
 	}
 
 	public List<S> searchPrefix(String searchPrefix, DictionarySearchResultFilter<S> filter, int limit) {
 		final DefaultVisitor<S> visitor = new DefaultVisitor<S>(filter, limit);
-		root.searchPrefix(preprocessor.preprocess(searchPrefix), visitor);
+		visitPrefix(preprocessor.preprocess(searchPrefix), visitor);
 		return visitor.resultList();
 	}
+
+	public List<S> searchFuzzyPrefix(
+			final String searchPrefix,
+			final int maxEdits,
+			final DictionarySearchResultFilter<S> filter,
+			final int limit) {
+		ValidateAs.nonNegative(maxEdits, "maxEdits");
+		final DefaultVisitor<S> visitor = new DefaultVisitor<S>(filter, limit);
+		visitFuzzyPrefix(preprocessor.preprocess(searchPrefix), maxEdits, visitor);
+		return visitor.resultList();
+	}
+
+	public List<S> searchTokens(
+			final String searchString,
+			final DictionarySearchResultFilter<S> filter,
+			final int limit) {
+		final DefaultVisitor<S> visitor = new DefaultVisitor<S>(filter, limit);
+		final List<String> tokens = searchTokens(searchString);
+		if (tokens.isEmpty()) {
+			return visitor.resultList();
+		}
+		final int last = tokens.size() - 1;
+		Set<S> candidates = null;
+		for (int i = 0; i < last; i++) {
+			final IntersectingVisitor<S> intersection = new IntersectingVisitor<S>(candidates);
+			visitAllPrefix(tokens.get(i), intersection);
+			candidates = intersection.matches();
+			if (candidates.isEmpty()) {
+				return visitor.resultList();
+			}
+		}
+		// only the last word is ranked, so that a read only dictionary can stop early
+		visitPrefix(tokens.get(last), candidates == null ? visitor : new CandidateVisitor<S>(candidates, visitor));
+		return visitor.resultList();
+	}
+
+	/**
+	 * Indicates if a searchable is stored in the dictionary under any of its search strings.
+	 * @param searchable Instance to look for.
+	 * @return true if found
+	 */
+	boolean contains(final S searchable) {
+		final boolean[] found = new boolean[1];
+		final TstNode.NodeVisitor<S> visitor = new TstNode.NodeVisitor<S>() {
+			public void visit(final S match, final String searchString) {
+				if (match.equals(searchable)) {
+					found[0] = true;
+				}
+			}
+		};
+		for (final String searchString: searchable.getSearchStrings()) {
+			visitExactMatch(preprocessor.preprocess(searchString), visitor);
+			if (found[0]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Calls a visitor for all exact matches of a string that has already been preprocessed.
+	 * @param processedSearchString Preprocessed search string.
+	 * @param visitor Visitor to call for each match.
+	 */
+	void visitExactMatch(final String processedSearchString, final TstNode.NodeVisitor<S> visitor) {
+		if (compactTree != null) {
+			compactTree.searchExactMatch(processedSearchString, visitor);
+		} else if (root != null) {
+			root.searchExactMatch(processedSearchString, visitor);
+		}
+	}
+
+	/**
+	 * Calls a visitor for matches of a prefix that has already been preprocessed. A read only dictionary stops once
+	 * the visitor is complete.
+	 * @param processedSearchPrefix Preprocessed search prefix.
+	 * @param visitor Visitor to call for each match.
+	 */
+	void visitPrefix(final String processedSearchPrefix, final TstNode.BoundedNodeVisitor<S> visitor) {
+		if (compactTree != null) {
+			compactTree.searchPrefixBestFirst(processedSearchPrefix, visitor);
+		} else if (root != null) {
+			root.searchPrefix(processedSearchPrefix, visitor);
+		}
+	}
+
+	/**
+	 * Calls a visitor for every match of a prefix that has already been preprocessed.
+	 * @param processedSearchPrefix Preprocessed search prefix.
+	 * @param visitor Visitor to call for each match.
+	 */
+	void visitAllPrefix(final String processedSearchPrefix, final TstNode.NodeVisitor<S> visitor) {
+		if (compactTree != null) {
+			compactTree.searchPrefix(processedSearchPrefix, visitor);
+		} else if (root != null) {
+			root.searchPrefix(processedSearchPrefix, visitor);
+		}
+	}
+
+	/**
+	 * Calls a visitor for fuzzy matches of a prefix that has already been preprocessed.
+	 * @param processedSearchPrefix Preprocessed search prefix.
+	 * @param maxEdits Maximum edit distance.
+	 * @param visitor Visitor to call for each match.
+	 */
+	void visitFuzzyPrefix(
+			final String processedSearchPrefix,
+			final int maxEdits,
+			final TstNode.NodeVisitor<S> visitor) {
+		if (compactTree != null) {
+			compactTree.searchFuzzyPrefix(processedSearchPrefix, maxEdits, visitor);
+		} else if (root != null) {
+			root.searchFuzzyPrefix(processedSearchPrefix, maxEdits, visitor);
+		}
+	}
 }
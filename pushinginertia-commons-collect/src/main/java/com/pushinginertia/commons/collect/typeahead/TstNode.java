@@ -16,9 +16,9 @@
 package com.pushinginertia.commons.collect.typeahead;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
 
 /**
  * Ternary Search Tree.
@@ -41,6 +41,53 @@ public abstract class TstNode<S extends StringSearchable> {
 		public void visit(S searchable, String searchString);
 	}
 
+	/**
+	 * A visitor that collects a bounded number of ranked results and can tell when further matches are pointless.
+	 */
+	public interface BoundedNodeVisitor<S extends StringSearchable> extends NodeVisitor<S> {
+		/**
+		 * Indicates if the visitor's results are final for all matches that can be ranked no higher than the given
+		 * bound, meaning that they can be skipped.
+		 * @param maxRank Highest rank that any remaining match can be assigned.
+		 * @return true if no remaining match can change the results
+		 */
+		public boolean isComplete(int maxRank);
+	}
+
+
+	/**
+	 * A growable array-backed stack of nodes used to traverse the tree without allocating on every search. Popped
+	 * slots are cleared so that the stack doesn't keep nodes reachable after a search completes.
+	 */
+	static final class NodeStack {
+		private TstNode<?>[] nodes = new TstNode<?>[64];
+		private int size = 0;
+
+		int size() {
+			return size;
+		}
+
+		void push(final TstNode<?> node) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+			}
+			nodes[size++] = node;
+		}
+
+		@SuppressWarnings("unchecked")
+		<S extends StringSearchable> TstNode<S> pop() {
+			final TstNode<S> node = (TstNode<S>) nodes[--size];
+			nodes[size] = null;
+			return node;
+		}
+	}
+
+	private static final ThreadLocal<NodeStack> NODE_STACK = new ThreadLocal<NodeStack>() {
+		@Override
+		protected NodeStack initialValue() {
+			return new NodeStack();
+		}
+	};
 
 	/**
 	 * Left neighbour of the current node. This is considered to be the same index of the
@@ -56,7 +103,7 @@ public abstract class TstNode<S extends StringSearchable> {
 	protected TstNode() {
 	}
 
-	public static <S extends StringSearchable> TstNode newRoot(final String word, final S searchable) {
+	public static <S extends StringSearchable> TstNode<S> newRoot(final String word, final S searchable) {
 		final TstNode<S> root = new TstNodeString<S>(word);
 		root.addMatch(searchable);
 		return root;
@@ -79,16 +126,43 @@ public abstract class TstNode<S extends StringSearchable> {
 	 * @return Substring that was removed.
 	 */
 	protected abstract String shortenFragment(final int length);
+
+	/**
+	 * Appends characters to the end of the fragment.
+	 * @param suffix Characters to append.
+	 */
+	protected abstract void appendFragment(final String suffix);
+
+	/**
+	 * Returns the fragment contained in this node.
+	 * @return Fragment.
+	 */
+	protected abstract String getFragment();
 	protected abstract int fragmentLength();
 
 	/**
-	 * Indicates if the text contained in this node matches the first characters in the given string. That is, the
-	 * text contained in this node is a substring of the given string at its first index.
+	 * Returns the character at a given index in the fragment contained in this node.
+	 * @param index Index into the fragment, between 0 and {@link #fragmentLength()} exclusive.
+	 * @return Character at the index.
+	 */
+	protected abstract char fragmentCharAt(int index);
+
+	/**
+	 * Indicates if the text contained in this node matches the characters in the given string starting at an offset.
+	 * That is, the text contained in this node is a substring of the given string at the offset.
 	 * @param superString Superstring to compare.
+	 * @param offset Index in the superstring to start comparing at.
 	 * @return Indicator.
 	 */
-	protected abstract boolean isPrefixOf(String superString);
-	protected abstract boolean startsWith(String prefix);
+	protected abstract boolean isPrefixOf(String superString, int offset);
+
+	/**
+	 * Indicates if the text contained in this node starts with the remainder of the given string from an offset.
+	 * @param prefix String containing the prefix to compare.
+	 * @param offset Index in the string where the prefix starts.
+	 * @return Indicator.
+	 */
+	protected abstract boolean startsWith(String prefix, int offset);
 
 	/**
 	 * Finds all strings that match a given prefix.
@@ -102,33 +176,152 @@ public abstract class TstNode<S extends StringSearchable> {
 			return;
 		}
 
-		// we want to omit the left/right children on the first match so add the middle child to the queue
-		if (root.matches != null) {
-			for (final S searchable: root.matches) {
-				visitor.visit(searchable, prefix);
+		// we want to omit the left/right children on the first match so only visit the middle child's subtree
+		root.visitMatches(prefix, visitor);
+		if (root.middle != null) {
+			visitSubtree(root.middle, prefix, visitor);
+		}
+	}
+
+	/**
+	 * Calls the visitor for every searchable in a subtree, including the left and right children of its root.
+	 * @param start Root of the subtree.
+	 * @param searchString Search string that the matches are for.
+	 * @param visitor Visitor to call.
+	 */
+	private static <S extends StringSearchable> void visitSubtree(
+			final TstNode<S> start,
+			final String searchString,
+			final NodeVisitor<S> visitor) {
+		// the stack is shared by all searches on this thread, so only pop what this search pushed in case the visitor
+		// performs a nested search
+		final NodeStack stack = NODE_STACK.get();
+		final int base = stack.size();
+		stack.push(start);
+		while (stack.size() > base) {
+			final TstNode<S> node = stack.pop();
+			if (node.right != null) {
+				stack.push(node.right);
 			}
+			if (node.middle != null) {
+				stack.push(node.middle);
+			}
+			if (node.left != null) {
+				stack.push(node.left);
+			}
+			node.visitMatches(searchString, visitor);
 		}
-		if (root.middle == null) {
+	}
+
+	/**
+	 * Finds all strings that start with a string within a given edit distance of a prefix, such as "toronto" for the
+	 * prefix "torotno". The tree is walked depth first while tracking the edit distance of the path so far, and a
+	 * branch is abandoned as soon as no string below it can be within the edit budget, so only the part of the tree
+	 * near the prefix is visited.
+	 * @param prefix Prefix to match against.
+	 * @param maxEdits Maximum number of inserted, deleted, substituted or transposed characters.
+	 * @param visitor Visitor instance that will be called for each {@link StringSearchable} that matches.
+	 * @see EditDistanceRows
+	 */
+	public void searchFuzzyPrefix(final String prefix, final int maxEdits, final NodeVisitor<S> visitor) {
+		if (prefix.isEmpty()) {
 			return;
 		}
+		final EditDistanceRows rows = new EditDistanceRows(prefix, maxEdits);
+		if (rows.isMatch(0)) {
+			// every character of the prefix can be edited away
+			visitSubtree(this, prefix, visitor);
+		} else {
+			searchFuzzySiblings(this, rows, 0, prefix, visitor);
+		}
+	}
 
-		final Queue<TstNode<S>> q = new LinkedList<TstNode<S>>();
-		q.add(root.middle);
-		while (!q.isEmpty()) {
-			final TstNode<S> node = q.poll();
-			if (node.left != null) {
-				q.add(node.left);
+	/**
+	 * Searches a node and its left and right siblings, which all extend the path of the given depth.
+	 */
+	private static <S extends StringSearchable> void searchFuzzySiblings(
+			final TstNode<S> first,
+			final EditDistanceRows rows,
+			final int depth,
+			final String prefix,
+			final NodeVisitor<S> visitor) {
+		if (rows.isRestricted(depth)) {
+			// look up the few characters that can still match instead of visiting every sibling
+			for (int j = rows.nextCandidate(depth, 0); j >= 0; j = rows.nextCandidate(depth, j + 1)) {
+				final TstNode<S> node = first.findSibling(rows.queryCharAt(j));
+				if (node != null) {
+					node.searchFuzzyPrefix(rows, depth, prefix, visitor);
+				}
 			}
-			if (node.middle != null) {
-				q.add(node.middle);
+			return;
+		}
+		if (first.left != null) {
+			searchFuzzySiblings(first.left, rows, depth, prefix, visitor);
+		}
+		if (first.right != null) {
+			searchFuzzySiblings(first.right, rows, depth, prefix, visitor);
+		}
+		first.searchFuzzyPrefix(rows, depth, prefix, visitor);
+	}
+
+	/**
+	 * Searches this node's fragment and middle subtree, ignoring its left and right siblings.
+	 */
+	private void searchFuzzyPrefix(
+			final EditDistanceRows rows,
+			final int depth,
+			final String prefix,
+			final NodeVisitor<S> visitor) {
+		int d = depth;
+		for (int k = 0, length = fragmentLength(); k < length; k++) {
+			final boolean viable = rows.push(++d, fragmentCharAt(k));
+			if (rows.isMatch(d)) {
+				// everything that ends at or below this node starts with a matching string
+				visitMatches(prefix, visitor);
+				if (middle != null) {
+					visitSubtree(middle, prefix, visitor);
+				}
+				return;
 			}
-			if (node.right != null) {
-				q.add(node.right);
+			if (!viable) {
+				return;
 			}
-			if (node.matches != null) {
-				for (final S searchable: node.matches) {
-					visitor.visit(searchable, prefix);
-				}
+		}
+		if (middle != null) {
+			searchFuzzySiblings(middle, rows, d, prefix, visitor);
+		}
+	}
+
+	/**
+	 * Finds the node among this node and its left and right siblings whose fragment starts with a given character.
+	 * @param ch Character to look for.
+	 * @return Matching node or null if there isn't one.
+	 */
+	private TstNode<S> findSibling(final char ch) {
+		TstNode<S> node = this;
+		while (node != null) {
+			final char nodeChar = node.getFirstChar();
+			if (ch < nodeChar) {
+				node = node.left;
+			} else if (ch > nodeChar) {
+				node = node.right;
+			} else {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Calls the visitor for each searchable that terminates at this node. The list is indexed directly to avoid
+	 * allocating an iterator.
+	 * @param searchString Search string that the matches are for.
+	 * @param visitor Visitor to call.
+	 */
+	private void visitMatches(final String searchString, final NodeVisitor<S> visitor) {
+		if (matches != null) {
+			for (int k = 0, size = matches.size(); k < size; k++) {
+				visitor.visit(matches.get(k), searchString);
 			}
 		}
 	}
@@ -147,22 +340,21 @@ public abstract class TstNode<S extends StringSearchable> {
 			if (searchChar < nodeChar) {
 				node = node.left;
 			} else if (searchChar == nodeChar) {
-				final String remainingWord = prefix.substring(i);
 				// node = "abc"
-				// remainingWord:
+				// remainingWord (the prefix from index i):
 				// "a"    matches
 				// "ab"   matches
 				// "abc"  matches
 				// "abcd" continue to traverse further (node is prefix of remainingWord)
 				// "ax"   fail no match
-				if (node.isPrefixOf(remainingWord)) {
+				if (node.isPrefixOf(prefix, i)) {
 					// consume the length of this node and continue traversing
 					i += node.fragmentLength();
 					if (prefix.length() == i) {
 						return node;
 					}
 					node = node.middle;
-				} else if (node.startsWith(remainingWord)) {
+				} else if (node.startsWith(prefix, i)) {
 					// partial match
 					return node;
 				} else {
@@ -187,17 +379,12 @@ public abstract class TstNode<S extends StringSearchable> {
 			if (searchChar < nodeChar) {
 				node = node.left;
 			} else if (searchChar == nodeChar) {
-				final String remainingWord = searchString.substring(i);
-				if (!node.isPrefixOf(remainingWord)) {
+				if (!node.isPrefixOf(searchString, i)) {
 					return;
 				}
 				i += node.fragmentLength();
 				if (searchString.length() == i) {
-					if (node.matches != null) {
-						for (final S searchable: node.matches) {
-							visitor.visit(searchable, searchString);
-						}
-					}
+					node.visitMatches(searchString, visitor);
 					return;
 				}
 				node = node.middle;
@@ -222,19 +409,22 @@ public abstract class TstNode<S extends StringSearchable> {
 				node = node.insertRight(remainingFragment);
 			} else {
 				// does this node represent a char or string fragment?
-				if (isStringFragment()) {
+				if (node.isStringFragment()) {
 					// we know the first character matches this node, but how many more characters match?
 					// identify fragment that hasn't yet been consumed
 					final String remainingFragment = word.substring(i);
 					// replace the fragment to only what's common
 					final int commonCharCount = node.getCommonCharCount(remainingFragment);
 					i += commonCharCount;
+					// split before adding a match so that a word ending inside this fragment terminates here
+					final TstNode<S> removed =
+							node.fragmentLength() > commonCharCount ? node.split(commonCharCount) : null;
 					if (i == word.length()) {
 						node.addMatch(searchable);
 						break;
 					}
-					if (node.fragmentLength() > commonCharCount) {
-						node = node.split(commonCharCount);
+					if (removed != null) {
+						node = removed;
 					} else {
 						node = node.insertMiddle(remainingFragment.substring(commonCharCount));
 						// TODO: add count as parameter and do substring in method
@@ -245,6 +435,110 @@ public abstract class TstNode<S extends StringSearchable> {
 		return node;
 	}
 
+	/**
+	 * Removes a searchable from the node where a given word terminates. Nodes left without matches or children are
+	 * pruned, and a node without matches whose middle child has no siblings is merged with that child, so that the
+	 * tree stays as compact as if the word had never been inserted.
+	 * @param word Word that the searchable was inserted with.
+	 * @param searchable Searchable to remove (all instances equal to it are removed from the word's node).
+	 * @return The node that replaces this node in its parent, which is null if this node was pruned and has no left
+	 * or right children.
+	 */
+	public TstNode<S> remove(final String word, final S searchable) {
+		if (word.isEmpty()) {
+			return this;
+		}
+		return remove(word, 0, searchable);
+	}
+
+	private TstNode<S> remove(final String word, final int i, final S searchable) {
+		final char ch = word.charAt(i);
+		final char nodeChar = getFirstChar();
+		if (ch < nodeChar) {
+			if (left != null) {
+				left = left.remove(word, i, searchable);
+			}
+		} else if (ch > nodeChar) {
+			if (right != null) {
+				right = right.remove(word, i, searchable);
+			}
+		} else {
+			if (!isPrefixOf(word, i)) {
+				// word isn't in the tree
+				return this;
+			}
+			final int next = i + fragmentLength();
+			if (next == word.length()) {
+				removeMatch(searchable);
+			} else if (middle != null) {
+				middle = middle.remove(word, next, searchable);
+			}
+		}
+		return compact();
+	}
+
+	private void removeMatch(final S searchable) {
+		if (matches != null) {
+			for (final Iterator<S> itr = matches.iterator(); itr.hasNext();) {
+				if (itr.next().equals(searchable)) {
+					itr.remove();
+				}
+			}
+			if (matches.isEmpty()) {
+				matches = null;
+			}
+		}
+	}
+
+	/**
+	 * Prunes this node if it no longer terminates any word, or merges it with its middle child if possible.
+	 * @return The node that replaces this node in its parent.
+	 */
+	private TstNode<S> compact() {
+		if (matches == null && middle == null) {
+			return joinSiblings(left, right);
+		}
+		if (matches == null && middle.left == null && middle.right == null &&
+				isStringFragment() && middle.isStringFragment()) {
+			// FROM: this node "f" -> middle "raser" (no siblings)
+			// TO:   this node "fraser"
+			final TstNode<S> absorbed = middle;
+			appendFragment(absorbed.getFragment());
+			matches = absorbed.matches;
+			middle = absorbed.middle;
+		}
+		return this;
+	}
+
+	/**
+	 * Joins the left and right children of a pruned node into a single subtree using the standard binary search tree
+	 * deletion: the leftmost node of the right subtree takes the pruned node's place.
+	 * @param left Left child of the pruned node.
+	 * @param right Right child of the pruned node.
+	 * @return Root of the joined subtree.
+	 */
+	private static <S extends StringSearchable> TstNode<S> joinSiblings(final TstNode<S> left, final TstNode<S> right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (right.left == null) {
+			right.left = left;
+			return right;
+		}
+		TstNode<S> parent = right;
+		while (parent.left.left != null) {
+			parent = parent.left;
+		}
+		final TstNode<S> successor = parent.left;
+		parent.left = successor.right;
+		successor.left = left;
+		successor.right = right;
+		return successor;
+	}
+
 	private TstNode<S> insertMiddle(final String fragment) {
 		if (middle == null) {
 			middle = new TstNodeString<S>(fragment);
@@ -48,18 +48,37 @@ public class TstNodeChar extends TstNode {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	protected void appendFragment(final String suffix) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected String getFragment() {
+		return String.valueOf(nodeChar);
+	}
+
 	@Override
 	protected int fragmentLength() {
 		return 1;
 	}
 
 	@Override
-	protected boolean isPrefixOf(String superString) {
-		return superString.length() > 0 && superString.charAt(0) == nodeChar;
+	protected char fragmentCharAt(final int index) {
+		if (index != 0) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+		return nodeChar;
+	}
+
+	@Override
+	protected boolean isPrefixOf(final String superString, final int offset) {
+		return superString.length() > offset && superString.charAt(offset) == nodeChar;
 	}
 
 	@Override
-	protected boolean startsWith(String prefix) {
-		return prefix.length() == 0 || prefix.charAt(0) == nodeChar;
+	protected boolean startsWith(final String prefix, final int offset) {
+		final int remaining = prefix.length() - offset;
+		return remaining == 0 || (remaining == 1 && prefix.charAt(offset) == nodeChar);
 	}
 }
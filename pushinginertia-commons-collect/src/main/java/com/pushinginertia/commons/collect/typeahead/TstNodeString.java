@@ -22,14 +22,20 @@ import com.pushinginertia.commons.lang.StringUtils;
  */
 public class TstNodeString<S extends StringSearchable> extends TstNode<S> {
 	private String fragment;
+	/**
+	 * Copy of the fragment's first character, which never changes, so that descending through left and right children
+	 * doesn't have to dereference the fragment.
+	 */
+	private final char firstChar;
 
 	protected TstNodeString(final String fragment) {
 		this.fragment = fragment;
+		this.firstChar = fragment.charAt(0);
 	}
 
 	@Override
 	protected char getFirstChar() {
-		return fragment.charAt(0);
+		return firstChar;
 	}
 
 	@Override
@@ -49,19 +55,34 @@ public class TstNodeString<S extends StringSearchable> extends TstNode<S> {
 		return removedSubstring;
 	}
 
+	@Override
+	protected void appendFragment(final String suffix) {
+		fragment = fragment + suffix;
+	}
+
+	@Override
+	protected String getFragment() {
+		return fragment;
+	}
+
 	@Override
 	protected int fragmentLength() {
 		return fragment.length();
 	}
 
 	@Override
-	protected boolean isPrefixOf(String superString) {
-		return superString.startsWith(fragment);
+	protected char fragmentCharAt(final int index) {
+		return fragment.charAt(index);
+	}
+
+	@Override
+	protected boolean isPrefixOf(final String superString, final int offset) {
+		return superString.startsWith(fragment, offset);
 	}
 
 	@Override
-	protected boolean startsWith(final String prefix) {
-		return fragment.startsWith(prefix);
+	protected boolean startsWith(final String prefix, final int offset) {
+		return fragment.regionMatches(0, prefix, offset, prefix.length() - offset);
 	}
 
 	@Override
@@ -19,6 +19,7 @@ import com.pushinginertia.commons.lang.logging.Timer;
 import junit.framework.TestCase;
 
 import java.security.SecureRandom;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
@@ -83,6 +84,20 @@ public class BoundedMinHeapTest extends TestCase {
 		System.out.println("heapSize=" + heapSize + ", numberRange=" + numberRange + ", time=" + timer.elapsedMs());
 	}
 
+	public void testIterators() {
+		final BoundedMinHeap<Integer> q = buildRandomQueue(200, 5000);
+		final Iterator<Integer> descending = q.iteratorDescendingRank();
+		for (final Integer expected: q.toListDescendingRank()) {
+			assertEquals(expected, descending.next());
+		}
+		assertFalse(descending.hasNext());
+		final Iterator<Integer> ascending = q.iteratorAscendingRank();
+		for (final Integer expected: q.toListAscendingRank()) {
+			assertEquals(expected, ascending.next());
+		}
+		assertFalse(ascending.hasNext());
+	}
+
 	private BoundedMinHeap<Integer> buildRandomQueue(int heapSize, int numberRange) {
 		final BoundedMinHeap<Integer> q = new BoundedMinHeap<Integer>(heapSize);
 		final Random rand = new SecureRandom();
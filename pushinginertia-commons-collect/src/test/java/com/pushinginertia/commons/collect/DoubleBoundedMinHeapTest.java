@@ -0,0 +1,45 @@
+/* Copyright (c) 2011-2014 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class DoubleBoundedMinHeapTest extends TestCase {
+	public void testKeepsHighestRanked() {
+		final Random rand = new Random(1);
+		for (final int heapSize: new int[] {1, 2, 7, 100}) {
+			final DoubleBoundedMinHeap<Double> q = new DoubleBoundedMinHeap<Double>(heapSize);
+			final List<Double> all = new ArrayList<Double>();
+			for (int i = 0; i < 1000; i++) {
+				final double rank = rand.nextDouble();
+				all.add(rank);
+				assertEquals(q.accepts(rank), q.add(rank, rank));
+			}
+			Collections.sort(all, Collections.reverseOrder());
+			final List<Double> expected = all.subList(0, heapSize);
+			assertEquals(expected, q.toListDescendingRank());
+			final List<Double> ascending = new ArrayList<Double>(expected);
+			Collections.reverse(ascending);
+			assertEquals(ascending, q.toListAscendingRank());
+			assertEquals(expected.get(heapSize - 1), q.getMinRank(), 0.0);
+		}
+	}
+}
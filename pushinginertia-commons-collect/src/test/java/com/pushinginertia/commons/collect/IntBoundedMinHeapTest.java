@@ -0,0 +1,208 @@
+/* Copyright (c) 2011-2014 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class IntBoundedMinHeapTest extends TestCase {
+	public void testKeepsHighestRanked() {
+		final Random rand = new Random(1);
+		for (final int heapSize: new int[] {1, 2, 7, 100}) {
+			final IntBoundedMinHeap<Integer> q = new IntBoundedMinHeap<Integer>(heapSize);
+			final List<Integer> all = new ArrayList<Integer>();
+			for (int i = 0; i < 1000; i++) {
+				final int rank = rand.nextInt(500);
+				all.add(rank);
+				assertEquals(q.accepts(rank), q.add(rank, rank));
+			}
+			Collections.sort(all, Collections.reverseOrder());
+			final List<Integer> expected = all.subList(0, heapSize);
+			assertEquals(expected, q.toListDescendingRank());
+			final List<Integer> ascending = new ArrayList<Integer>(expected);
+			Collections.reverse(ascending);
+			assertEquals(ascending, q.toListAscendingRank());
+			assertEquals(expected.get(heapSize - 1).intValue(), q.getMinRank());
+			assertTrue(q.isFull());
+			assertEquals(heapSize, q.size());
+			// converting to a list leaves the heap unchanged
+			assertEquals(expected, q.toListDescendingRank());
+		}
+	}
+
+	public void testIterators() {
+		final Random rand = new Random(3);
+		for (final int heapSize: new int[] {0, 1, 2, 7, 1000}) {
+			final IntBoundedMinHeap<Integer> q = new IntBoundedMinHeap<Integer>(heapSize);
+			for (int i = 0; i < 5000; i++) {
+				final int rank = rand.nextInt(2000);
+				q.add(rank, rank);
+			}
+			assertEquals(q.toListDescendingRank(), drain(q.iteratorDescendingRank()));
+			assertEquals(q.toListAscendingRank(), drain(q.iteratorAscendingRank()));
+		}
+
+		// the iterator reads from a copy
+		final IntBoundedMinHeap<String> q = new IntBoundedMinHeap<String>(3);
+		q.add("a", 1);
+		q.add("b", 2);
+		final Iterator<String> iterator = q.iteratorDescendingRank();
+		q.add("c", 3);
+		assertEquals("b", iterator.next());
+		assertEquals("a", iterator.next());
+		assertFalse(iterator.hasNext());
+		try {
+			iterator.next();
+			fail();
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Compares reading the first page of results with sorting all of them.
+	 */
+	public void testFirstPageLatency() {
+		final int heapSize = 10000;
+		final IntBoundedMinHeap<Integer> q = new IntBoundedMinHeap<Integer>(heapSize);
+		final Random rand = new Random(4);
+		for (int i = 0; i < heapSize * 10; i++) {
+			final int rank = rand.nextInt();
+			q.add(rank, rank);
+		}
+		final int rounds = 200;
+		long sortedNanos = 0;
+		long pageNanos = 0;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			final List<Integer> sorted = q.toListDescendingRank();
+			sortedNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			final Iterator<Integer> iterator = q.iteratorDescendingRank();
+			final List<Integer> page = new ArrayList<Integer>(20);
+			for (int i = 0; i < 20; i++) {
+				page.add(iterator.next());
+			}
+			pageNanos += System.nanoTime() - start;
+			assertEquals(sorted.subList(0, 20), page);
+		}
+		System.out.println("K=" + heapSize + ": toListDescendingRank=" + sortedNanos / rounds / 1000 +
+				" us, first 20 of iteratorDescendingRank=" + pageNanos / rounds / 1000 + " us");
+	}
+
+	private static <T> List<T> drain(final Iterator<T> iterator) {
+		final List<T> l = new ArrayList<T>();
+		while (iterator.hasNext()) {
+			l.add(iterator.next());
+		}
+		return l;
+	}
+
+	public void testTiesKeepEarliest() {
+		final IntBoundedMinHeap<String> q = new IntBoundedMinHeap<String>(2);
+		assertTrue(q.add("a", 5));
+		assertTrue(q.add("b", 5));
+		assertFalse(q.accepts(5));
+		assertFalse(q.add("c", 5));
+		assertTrue(q.add("d", 6));
+		assertEquals(5, q.getMinRank());
+		assertEquals(Collections.singletonList("d"), q.toListDescendingRank().subList(0, 1));
+	}
+
+	public void testEmpty() {
+		final IntBoundedMinHeap<String> q = new IntBoundedMinHeap<String>(0);
+		assertTrue(q.isFull());
+		assertFalse(q.accepts(Integer.MAX_VALUE));
+		assertFalse(q.add("a", 1));
+		assertTrue(q.toListAscendingRank().isEmpty());
+		try {
+			q.getMinRank();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Compares the cost of adding a stream of randomly ranked items with {@link BoundedMinHeap}, which mostly consists
+	 * of rejecting them once the heap is full.
+	 */
+	public void testAddLatency() {
+		final int ops = 1 << 20;
+		final int[] ranks = new int[ops];
+		final Random rand = new Random(2);
+		for (int i = 0; i < ops; i++) {
+			ranks[i] = rand.nextInt();
+		}
+		final String item = "item";
+		final com.sun.management.ThreadMXBean bean = threadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		for (final int heapSize: new int[] {10, 100, 1000}) {
+			for (int round = 0; round < 3; round++) {
+				long before = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId);
+				long start = System.nanoTime();
+				final BoundedMinHeap<String> boxed = new BoundedMinHeap<String>(heapSize);
+				for (int i = 0; i < ops; i++) {
+					boxed.add(item, ranks[i]);
+				}
+				final double boxedNanos = (double) (System.nanoTime() - start) / ops;
+				final double boxedBytes =
+						bean == null ? Double.NaN : (double) (bean.getThreadAllocatedBytes(threadId) - before) / ops;
+
+				before = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId);
+				start = System.nanoTime();
+				final IntBoundedMinHeap<String> primitive = new IntBoundedMinHeap<String>(heapSize);
+				for (int i = 0; i < ops; i++) {
+					primitive.add(item, ranks[i]);
+				}
+				final double primitiveNanos = (double) (System.nanoTime() - start) / ops;
+				final double primitiveBytes =
+						bean == null ? Double.NaN : (double) (bean.getThreadAllocatedBytes(threadId) - before) / ops;
+
+				assertEquals(boxed.getMinRank(), primitive.getMinRank());
+				if (round == 2) {
+					System.out.println("K=" + heapSize + ": BoundedMinHeap.add=" + boxedNanos + " ns/op (" +
+							boxedBytes + " bytes/op), IntBoundedMinHeap.add=" + primitiveNanos + " ns/op (" +
+							primitiveBytes + " bytes/op)");
+				}
+			}
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean threadMXBean() {
+		try {
+			final com.sun.management.ThreadMXBean bean =
+					(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (!bean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			bean.setThreadAllocatedMemoryEnabled(true);
+			return bean;
+		} catch (ClassCastException e) {
+			return null;
+		} catch (NoClassDefFoundError e) {
+			return null;
+		}
+	}
+}
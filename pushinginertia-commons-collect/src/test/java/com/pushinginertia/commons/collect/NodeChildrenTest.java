@@ -73,6 +73,80 @@ public class NodeChildrenTest {
 		}
 	}
 
+	@Test
+	public void listIsNotModified() {
+		final List<NodeTest> list = new ArrayList<>();
+		list.add(new NodeTest(2, new NodeTest(1, null)));
+		list.add(new NodeTest(1, null));
+		new NodeChildren<>(list);
+		Assert.assertEquals(2, list.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void orphanIsRejected() {
+		final List<NodeTest> list = new ArrayList<>();
+		list.add(new NodeTest(1, null));
+		list.add(new NodeTest(2, new NodeTest(3, null)));
+		new NodeChildren<>(list);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void duplicateIdIsRejected() {
+		final List<NodeTest> list = new ArrayList<>();
+		list.add(new NodeTest(1, null));
+		list.add(new NodeTest(1, null));
+		new NodeChildren<>(list);
+	}
+
+	@Test
+	public void cycleIsRejected() {
+		// parents are looked up by id, so 2 -> 3 -> 4 -> 2 is a cycle hanging off of a valid root
+		final NodeTest root = new NodeTest(1, null);
+		final List<NodeTest> list = new ArrayList<>();
+		list.add(root);
+		list.add(new NodeTest(5, root));
+		list.add(new NodeTest(2, new NodeTest(3, null)));
+		list.add(new NodeTest(3, new NodeTest(4, null)));
+		list.add(new NodeTest(4, new NodeTest(2, null)));
+		try {
+			new NodeChildren<>(list);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected, and nothing was attached
+			Assert.assertEquals(0, root.getChildren().size());
+		}
+
+		final List<NodeTest> self = new ArrayList<>();
+		self.add(new NodeTest(7, new NodeTest(7, null)));
+		try {
+			new NodeChildren<>(self);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void deepHierarchyInReverseOrder() {
+		// a chain where every child comes before its parent, which used to take a pass over the list per level
+		final int count = 200000;
+		final NodeTest[] chain = new NodeTest[count];
+		chain[0] = new NodeTest(0, null);
+		for (int i = 1; i < count; i++) {
+			chain[i] = new NodeTest(i, chain[i - 1]);
+		}
+		final List<NodeTest> list = new ArrayList<>(count);
+		for (int i = count - 1; i >= 0; i--) {
+			list.add(chain[i]);
+		}
+		final NodeChildren<NodeTest> root = new NodeChildren<>(list);
+		assertContains(root, chain[0]);
+		for (int i = 1; i < count; i++) {
+			Assert.assertTrue(chain[i - 1].getChildren().contains(chain[i]));
+		}
+		assertContains(chain[count - 1].getChildren());
+	}
+
 	public void assertBlogCategoriesAreMappedToCorrectChildren(final List<NodeTest> list) {
 		final NodeChildren<NodeTest> root = new NodeChildren<>(list);
 		assertContains(root, N_0, N_1);
@@ -0,0 +1,124 @@
+/* Copyright (c) 2011-2015 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import com.pushinginertia.commons.collect.NodeChildrenTest.NodeTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class NodeTreeIndexTest {
+	@Test
+	public void matchesHierarchy() {
+		// a forest of random trees
+		final Random rand = new Random(1);
+		final List<NodeTest> list = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			final NodeTest parent = i < 3 ? null : list.get(rand.nextInt(i));
+			list.add(new NodeTest(i, parent));
+		}
+		Collections.shuffle(list, rand);
+		final NodeTreeIndex<NodeTest> index = new NodeTreeIndex<>(new NodeChildren<>(list));
+		Assert.assertEquals(list.size(), index.size());
+
+		for (final NodeTest node: list) {
+			final List<NodeTest> ancestors = ancestors(node);
+			Assert.assertEquals(ancestors, index.getAncestors(node));
+			Assert.assertEquals(ancestors.size(), index.getDepth(node));
+			Assert.assertEquals(descendants(node), new HashSet<>(index.getDescendants(node)));
+			final int position = index.positionOf(node);
+			Assert.assertSame(node, index.getNode(position));
+			Assert.assertEquals(
+					node.getParent() == null ? -1 : index.positionOf(node.getParent()),
+					index.getParent(position));
+		}
+		for (int i = 0; i < 20000; i++) {
+			final NodeTest a = list.get(rand.nextInt(list.size()));
+			final NodeTest b = list.get(rand.nextInt(list.size()));
+			Assert.assertEquals(ancestors(b).contains(a), index.isDescendant(a, b));
+			Assert.assertSame(lowestCommonAncestor(a, b), index.getLowestCommonAncestor(a, b));
+		}
+	}
+
+	@Test
+	public void deepChain() {
+		final int count = 200000;
+		final List<NodeTest> list = new ArrayList<>(count);
+		list.add(new NodeTest(0, null));
+		for (int i = 1; i < count; i++) {
+			list.add(new NodeTest(i, list.get(i - 1)));
+		}
+		final NodeTest other = new NodeTest(count, null);
+		list.add(other);
+		final NodeTreeIndex<NodeTest> index = new NodeTreeIndex<>(new NodeChildren<>(list));
+
+		final NodeTest deepest = list.get(count - 1);
+		Assert.assertEquals(count - 1, index.getDepth(deepest));
+		Assert.assertEquals(count - 1, index.getDescendants(list.get(0)).size());
+		Assert.assertSame(deepest, index.getDescendants(list.get(count - 2)).get(0));
+		Assert.assertTrue(index.isDescendant(list.get(0), deepest));
+		Assert.assertFalse(index.isDescendant(deepest, deepest));
+		Assert.assertSame(list.get(12345), index.getLowestCommonAncestor(deepest, list.get(12345)));
+		Assert.assertNull(index.getLowestCommonAncestor(deepest, other));
+		final int position = index.positionOf(deepest);
+		for (int d = 0; d < count; d += 997) {
+			Assert.assertSame(list.get(d), index.getNode(index.getAncestorAtDepth(position, d)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownNodeIsRejected() {
+		final List<NodeTest> list = new ArrayList<>();
+		list.add(new NodeTest(1, null));
+		new NodeTreeIndex<>(new NodeChildren<>(list)).getDepth(new NodeTest(2, null));
+	}
+
+	private static List<NodeTest> ancestors(final NodeTest node) {
+		final List<NodeTest> ancestors = new ArrayList<>();
+		for (NodeTest parent = node.getParent(); parent != null; parent = parent.getParent()) {
+			ancestors.add(parent);
+		}
+		return ancestors;
+	}
+
+	private static Set<NodeTest> descendants(final NodeTest node) {
+		final Set<NodeTest> descendants = new HashSet<>();
+		if (node.getChildren().getChildren() != null) {
+			for (final NodeTest child: node.getChildren().getChildren()) {
+				descendants.add(child);
+				descendants.addAll(descendants(child));
+			}
+		}
+		return descendants;
+	}
+
+	private static NodeTest lowestCommonAncestor(final NodeTest a, final NodeTest b) {
+		final List<NodeTest> pathA = ancestors(a);
+		pathA.add(0, a);
+		for (NodeTest node = b; node != null; node = node.getParent()) {
+			if (pathA.contains(node)) {
+				return node;
+			}
+		}
+		return null;
+	}
+}
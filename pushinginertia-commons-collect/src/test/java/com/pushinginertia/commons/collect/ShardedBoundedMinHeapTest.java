@@ -0,0 +1,129 @@
+/* Copyright (c) 2011-2014 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class ShardedBoundedMinHeapTest extends TestCase {
+	private static final int COUNT = 200000;
+
+	/**
+	 * Distinct ranks in a random order, so the highest ranked items don't depend on the order they are added in.
+	 */
+	private static List<Integer> shuffledRanks() {
+		final List<Integer> ranks = new ArrayList<Integer>(COUNT);
+		for (int i = 0; i < COUNT; i++) {
+			ranks.add(i);
+		}
+		Collections.shuffle(ranks, new Random(1));
+		return ranks;
+	}
+
+	private static List<Integer> expectedTop(final int maxSize) {
+		final List<Integer> expected = new ArrayList<Integer>(maxSize);
+		for (int i = 0; i < maxSize; i++) {
+			expected.add(COUNT - 1 - i);
+		}
+		return expected;
+	}
+
+	public void testConcurrentAdd() throws InterruptedException {
+		final List<Integer> ranks = shuffledRanks();
+		final ShardedBoundedMinHeap<Integer> heap = new ShardedBoundedMinHeap<Integer>(100);
+		final int threads = 4;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			final int from = t * COUNT / threads;
+			final int to = (t + 1) * COUNT / threads;
+			executor.execute(new Runnable() {
+				public void run() {
+					for (int i = from; i < to; i++) {
+						heap.add(ranks.get(i), ranks.get(i));
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+		final List<Integer> expected = expectedTop(100);
+		assertEquals(expected, heap.toListDescendingRank());
+		Collections.reverse(expected);
+		assertEquals(expected, heap.toListAscendingRank());
+		assertEquals(COUNT - 100, heap.merge().getMinRank());
+	}
+
+	/**
+	 * Many short-lived heaps fed by the same pool each see only their own items.
+	 */
+	public void testReusedPool() throws Exception {
+		final int threads = 4;
+		final int items = 2000;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int h = 0; h < 300; h++) {
+				final int offset = h * items;
+				final ShardedBoundedMinHeap<Integer> heap = new ShardedBoundedMinHeap<Integer>(10);
+				final List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (int t = 0; t < threads; t++) {
+					final int from = t * items / threads;
+					final int to = (t + 1) * items / threads;
+					futures.add(executor.submit(new Runnable() {
+						public void run() {
+							for (int i = from; i < to; i++) {
+								heap.add(offset + i, i);
+							}
+						}
+					}));
+				}
+				for (final Future<?> future: futures) {
+					future.get();
+				}
+
+				final List<Integer> expected = new ArrayList<Integer>();
+				for (int i = 0; i < 10; i++) {
+					expected.add(offset + items - 1 - i);
+				}
+				assertEquals(expected, heap.toListDescendingRank());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testCollector() {
+		final List<Integer> ranks = shuffledRanks();
+		assertEquals(
+				expectedTop(1000),
+				ranks.parallelStream().collect(ShardedBoundedMinHeap.<Integer>collector(1000, Integer::intValue)));
+		assertEquals(
+				expectedTop(10),
+				ranks.stream().collect(ShardedBoundedMinHeap.<Integer>collector(10, Integer::intValue)));
+		assertEquals(
+				ranks.stream().sorted(Collections.reverseOrder()).limit(10).collect(Collectors.toList()),
+				ranks.parallelStream().collect(ShardedBoundedMinHeap.<Integer>collector(10, Integer::intValue)));
+	}
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2011-2014 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class SpaceSavingSketchTest extends TestCase {
+	public void testHeavyHitters() {
+		// a skewed stream where item i occurs about 1/(i+1) as often as item 0, with a long tail of rare items
+		final SpaceSavingSketch<Integer> sketch = new SpaceSavingSketch<Integer>(100);
+		final Map<Integer, Integer> actual = new HashMap<Integer, Integer>();
+		final Random rand = new Random(1);
+		final int occurrences = 200000;
+		for (int i = 0; i < occurrences; i++) {
+			final int item = (int) (1 / (rand.nextDouble() + 0.0001)) - 1;
+			sketch.increment(item, 0);
+			final Integer count = actual.get(item);
+			actual.put(item, count == null ? 1 : count + 1);
+		}
+		assertTrue(actual.size() > 300);
+		assertEquals(100, sketch.size());
+
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), sketch.toListDescendingRank(5));
+		for (final Map.Entry<Integer, Integer> entry: actual.entrySet()) {
+			final int item = entry.getKey();
+			final double count = sketch.getCount(item, 0);
+			if (count > 0) {
+				// counts are overestimated by at most the error
+				assertTrue(count >= entry.getValue());
+				assertTrue(count - sketch.getError(item, 0) <= entry.getValue());
+			} else {
+				// anything that occurs more than occurrences/capacity times must be counted
+				assertTrue(entry.getValue() <= occurrences / 100);
+			}
+		}
+	}
+
+	public void testDecay() {
+		final long minute = 60000;
+		final SpaceSavingSketch<String> sketch = new SpaceSavingSketch<String>(10, 10 * minute);
+		for (int i = 0; i < 100; i++) {
+			sketch.increment("old", 0);
+		}
+		assertEquals(100, sketch.getCount("old", 0), 1e-9);
+		assertEquals(50, sketch.getCount("old", 10 * minute), 1e-9);
+
+		for (int i = 0; i < 30; i++) {
+			sketch.increment("new", 20 * minute);
+		}
+		assertEquals(25, sketch.getCount("old", 20 * minute), 1e-9);
+		assertEquals(Arrays.asList("new", "old"), sketch.toListDescendingRank(10));
+
+		// far enough in the future that the weights would overflow without moving the landmark
+		final long later = 100000 * minute;
+		sketch.increment("later", 2, later);
+		assertEquals(2, sketch.getCount("later", later), 1e-9);
+		assertEquals(1, sketch.getCount("later", later + 10 * minute), 1e-9);
+		assertEquals(0, sketch.getCount("old", later), 1e-9);
+		assertEquals("later", sketch.toListDescendingRank(1).get(0));
+	}
+
+	public void testReplacesLeastFrequent() {
+		final SpaceSavingSketch<String> sketch = new SpaceSavingSketch<String>(2);
+		sketch.increment("a", 3, 0);
+		sketch.increment("b", 1, 0);
+		sketch.increment("c", 0);
+		assertEquals(0, sketch.getCount("b", 0), 0);
+		assertEquals(2, sketch.getCount("c", 0), 0);
+		assertEquals(1, sketch.getError("c", 0), 0);
+		assertEquals(Arrays.asList("a", "c"), sketch.toListDescendingRank(5));
+		try {
+			sketch.increment("a", 0, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
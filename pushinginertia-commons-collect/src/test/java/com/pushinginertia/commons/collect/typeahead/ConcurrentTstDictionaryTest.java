@@ -0,0 +1,174 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+import com.pushinginertia.commons.collect.typeahead.TstDictionaryTest.TestStringSearchable;
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentTstDictionaryTest extends TestCase {
+	private static final DictionarySearchResultFilter<TestStringSearchable> FILTER =
+			new DictionarySearchResultFilter<TestStringSearchable>() {
+				public int rank(final TestStringSearchable match, final String searchString) {
+					return 0;
+				}
+			};
+
+	public void testPublish() {
+		final ConcurrentTstDictionary<TestStringSearchable> d =
+				new ConcurrentTstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		final TestStringSearchable sfu = new TestStringSearchable("sfu", "simon fraser university");
+		final TestStringSearchable ubc = new TestStringSearchable("ubc", "university of british columbia");
+
+		d.addSearchable(sfu);
+		assertTrue(d.searchPrefix("sf", FILTER, 10).isEmpty());
+		d.publish();
+		assertEquals(1, d.searchPrefix("sf", FILTER, 10).size());
+
+		d.addSearchable(ubc);
+		assertTrue(d.searchExactMatch("ubc", FILTER, 10).isEmpty());
+		d.publish();
+		assertEquals(1, d.searchExactMatch("ubc", FILTER, 10).size());
+		assertEquals(
+				new HashSet<TestStringSearchable>(d.searchPrefix("u", FILTER, 10)),
+				new HashSet<TestStringSearchable>(java.util.Arrays.asList(ubc)));
+		assertEquals(2, d.searchPrefix("s", FILTER, 10).size() + d.searchPrefix("u", FILTER, 10).size());
+	}
+
+	public void testRemoveAndUpdate() {
+		final ConcurrentTstDictionary<TestStringSearchable> d =
+				new ConcurrentTstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		for (int i = 0; i < 100; i++) {
+			d.addSearchable(new TestStringSearchable("item" + i));
+			d.publish();
+		}
+		for (int i = 0; i < 100; i += 2) {
+			d.removeSearchable(new TestStringSearchable("item" + i));
+		}
+		assertEquals(100, d.searchPrefix("item", FILTER, 1000).size());
+		d.publish();
+		assertEquals(50, d.searchPrefix("item", FILTER, 1000).size());
+		assertTrue(d.searchExactMatch("item0", FILTER, 10).isEmpty());
+		assertEquals(1, d.searchExactMatch("item1", FILTER, 10).size());
+
+		d.updateSearchable(new TestStringSearchable("item1"), new TestStringSearchable("renamed"));
+		d.publish();
+		assertTrue(d.searchExactMatch("item1", FILTER, 10).isEmpty());
+		assertEquals(1, d.searchExactMatch("renamed", FILTER, 10).size());
+
+		// removing an unpublished addition cancels it
+		d.addSearchable(new TestStringSearchable("transient"));
+		d.removeSearchable(new TestStringSearchable("transient"));
+		d.publish();
+		assertTrue(d.searchExactMatch("transient", FILTER, 10).isEmpty());
+
+		for (int i = 3; i < 100; i += 2) {
+			d.removeSearchable(new TestStringSearchable("item" + i));
+		}
+		d.publish();
+		assertTrue(d.searchPrefix("item", FILTER, 1000).isEmpty());
+		assertEquals(1, d.searchPrefix("r", FILTER, 1000).size());
+	}
+
+	public void testSearchFuzzyPrefix() {
+		final ConcurrentTstDictionary<TestStringSearchable> d =
+				new ConcurrentTstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		d.addSearchable(new TestStringSearchable("toronto"));
+		d.publish();
+		d.addSearchable(new TestStringSearchable("tornado"));
+		d.publish();
+		assertEquals(2, d.searchFuzzyPrefix("torn", 1, FILTER, 10).size());
+		assertEquals(1, d.searchFuzzyPrefix("torotno", 1, FILTER, 10).size());
+
+		d.removeSearchable(new TestStringSearchable("toronto"));
+		d.publish();
+		assertTrue(d.searchFuzzyPrefix("torotno", 1, FILTER, 10).isEmpty());
+	}
+
+	public void testSearchTokens() {
+		final ConcurrentTstDictionary<TestStringSearchable> d = new ConcurrentTstDictionary<TestStringSearchable>(
+				Dictionary.DEFAULT_PREPROCESSOR, Dictionary.DEFAULT_TOKENIZER);
+		final TestStringSearchable newYork = new TestStringSearchable("New York");
+		d.addSearchable(newYork);
+		d.publish();
+		d.addSearchable(new TestStringSearchable("York"));
+		d.addSearchable(new TestStringSearchable("New Orleans"));
+		d.publish();
+		assertEquals(2, d.searchTokens("york", FILTER, 10).size());
+		assertEquals(2, d.searchTokens("new", FILTER, 10).size());
+		assertEquals(1, d.searchTokens("york ne", FILTER, 10).size());
+
+		d.removeSearchable(newYork);
+		d.publish();
+		assertTrue(d.searchTokens("york ne", FILTER, 10).isEmpty());
+	}
+
+	public void testSegmentsStayLogarithmic() {
+		final ConcurrentTstDictionary<TestStringSearchable> d =
+				new ConcurrentTstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		for (int i = 0; i < 1024; i++) {
+			d.addSearchable(new TestStringSearchable("item" + i));
+			d.publish();
+			assertTrue(d.getSegmentCount() <= 11);
+		}
+		assertEquals(1024, d.searchPrefix("item", FILTER, 2000).size());
+		assertEquals(135, d.searchPrefix("item1", FILTER, 2000).size());
+	}
+
+	public void testConcurrentSearch() throws InterruptedException {
+		final ConcurrentTstDictionary<TestStringSearchable> d =
+				new ConcurrentTstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						int lastSize = 0;
+						while (!done.get()) {
+							// published snapshots only grow, so a reader can never see fewer results
+							final List<TestStringSearchable> results = d.searchPrefix("w", FILTER, 100000);
+							assertTrue(results.size() >= lastSize);
+							lastSize = results.size();
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+			readers[t].start();
+		}
+		for (int i = 0; i < 2000; i++) {
+			d.addSearchable(new TestStringSearchable("w" + i));
+			if (i % 10 == 0) {
+				d.publish();
+			}
+		}
+		d.publish();
+		done.set(true);
+		for (final Thread reader: readers) {
+			reader.join();
+		}
+		assertNull(failure.get());
+		assertEquals(2000, d.searchPrefix("w", FILTER, 100000).size());
+	}
+}
@@ -17,10 +17,21 @@ package com.pushinginertia.commons.collect.typeahead;
 
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -72,6 +83,30 @@ public class TstDictionaryTest extends TestCase {
 		}
 	}
 
+	public static class TestScoredStringSearchable extends TestStringSearchable implements ScoredStringSearchable {
+		private static final long serialVersionUID = 1L;
+
+		private final int score;
+
+		public TestScoredStringSearchable(final int score, final String... searchStrings) {
+			super(searchStrings);
+			this.score = score;
+		}
+
+		public int getScore() {
+			return score;
+		}
+	}
+
+	private static class ScoreFilter implements DictionarySearchResultFilter<TestStringSearchable> {
+		private int calls = 0;
+
+		public int rank(final TestStringSearchable match, final String searchString) {
+			calls++;
+			return match instanceof TestScoredStringSearchable ? ((TestScoredStringSearchable) match).getScore() : 0;
+		}
+	}
+
 	public void testSearch() {
 		final TestStringSearchable sfu =
 				new TestStringSearchable(
@@ -120,6 +155,514 @@ public class TstDictionaryTest extends TestCase {
 		assertMatches(d.searchExactMatch("no match", FILTER, 1));
 	}
 
+	public void testSearchReadOnly() {
+		final DictionarySearchResultFilter<TestStringSearchable> filter =
+				new DictionarySearchResultFilter<TestStringSearchable>() {
+					public int rank(final TestStringSearchable match, final String searchString) {
+						return match.hashCode() & 0xffff;
+					}
+				};
+		final List<TestStringSearchable> searchables = new ArrayList<TestStringSearchable>();
+		final Random rand = new Random(42);
+		for (int i = 0; i < 2000; i++) {
+			final int words = 1 + rand.nextInt(3);
+			final String[] strings = new String[words];
+			for (int j = 0; j < words; j++) {
+				strings[j] = randomWord(rand);
+			}
+			searchables.add(new TestStringSearchable(strings));
+		}
+
+		final TstDictionary<TestStringSearchable> mutable =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		mutable.addSearchables(searchables);
+		final TstDictionary<TestStringSearchable> readOnly =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		readOnly.addSearchables(searchables);
+		readOnly.setReadOnly();
+
+		for (int i = 0; i < 500; i++) {
+			final String word = randomWord(rand);
+			for (int length = 1; length <= word.length(); length++) {
+				final String prefix = word.substring(0, length);
+				// ties in rank can be returned in any order
+				assertEquals(
+						new HashSet<TestStringSearchable>(mutable.searchPrefix(prefix, filter, 10000)),
+						new HashSet<TestStringSearchable>(readOnly.searchPrefix(prefix, filter, 10000)));
+				assertEquals(
+						new HashSet<TestStringSearchable>(mutable.searchExactMatch(prefix, filter, 10000)),
+						new HashSet<TestStringSearchable>(readOnly.searchExactMatch(prefix, filter, 10000)));
+			}
+		}
+		for (final TestStringSearchable searchable: searchables) {
+			for (final String s: searchable.getSearchStrings()) {
+				assertTrue(s, mutable.searchExactMatch(s, filter, 10000).contains(searchable));
+				assertTrue(s, readOnly.searchExactMatch(s, filter, 10000).contains(searchable));
+			}
+		}
+
+		try {
+			readOnly.addSearchable(new TestStringSearchable("abc"));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testSearchPrefixScored() {
+		final List<TestStringSearchable> searchables = new ArrayList<TestStringSearchable>();
+		final Random rand = new Random(11);
+		for (int i = 0; i < 5000; i++) {
+			searchables.add(new TestScoredStringSearchable(i, randomWord(rand), randomWord(rand)));
+		}
+		final TstDictionary<TestStringSearchable> mutable =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		mutable.addSearchables(searchables);
+		final TstDictionary<TestStringSearchable> readOnly =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		readOnly.addSearchables(searchables);
+		readOnly.setReadOnly();
+
+		for (final String prefix: new String[]{"a", "b", "ab", "fc", "abc", "dddd"}) {
+			for (final int limit: new int[]{1, 10, 100}) {
+				final ScoreFilter fullScan = new ScoreFilter();
+				final ScoreFilter bestFirst = new ScoreFilter();
+				final List<TestStringSearchable> expected = mutable.searchPrefix(prefix, fullScan, limit);
+				assertEquals(expected, readOnly.searchPrefix(prefix, bestFirst, limit));
+				assertTrue(bestFirst.calls <= fullScan.calls);
+			}
+		}
+
+		// a one character prefix should only need to rank a small fraction of the matches
+		final ScoreFilter fullScan = new ScoreFilter();
+		final ScoreFilter bestFirst = new ScoreFilter();
+		mutable.searchPrefix("a", fullScan, 10);
+		readOnly.searchPrefix("a", bestFirst, 10);
+		assertTrue(bestFirst.calls * 4 < fullScan.calls);
+	}
+
+	public void testRemoveAndUpdate() {
+		final DictionarySearchResultFilter<TestStringSearchable> filter =
+				new DictionarySearchResultFilter<TestStringSearchable>() {
+					public int rank(final TestStringSearchable match, final String searchString) {
+						return 0;
+					}
+				};
+		// searchables are equal when their search strings are, so generate distinct ones
+		final Set<TestStringSearchable> distinct = new LinkedHashSet<TestStringSearchable>();
+		final Random rand = new Random(3);
+		while (distinct.size() < 3000) {
+			distinct.add(new TestStringSearchable(randomWord(rand), randomWord(rand)));
+		}
+		final List<TestStringSearchable> searchables = new ArrayList<TestStringSearchable>(distinct);
+		final TstDictionary<TestStringSearchable> d =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		d.addSearchables(searchables);
+
+		// remove every other searchable and compare against a dictionary that never had them
+		final List<TestStringSearchable> kept = new ArrayList<TestStringSearchable>();
+		for (int i = 0; i < searchables.size(); i++) {
+			if (i % 2 == 0) {
+				d.removeSearchable(searchables.get(i));
+			} else {
+				kept.add(searchables.get(i));
+			}
+		}
+		final TstDictionary<TestStringSearchable> expected =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		expected.addSearchables(kept);
+		for (int i = 0; i < 300; i++) {
+			final String word = randomWord(rand);
+			for (int length = 1; length <= word.length(); length++) {
+				final String prefix = word.substring(0, length);
+				assertEquals(
+						new HashSet<TestStringSearchable>(expected.searchPrefix(prefix, filter, 10000)),
+						new HashSet<TestStringSearchable>(d.searchPrefix(prefix, filter, 10000)));
+				assertEquals(
+						new HashSet<TestStringSearchable>(expected.searchExactMatch(prefix, filter, 10000)),
+						new HashSet<TestStringSearchable>(d.searchExactMatch(prefix, filter, 10000)));
+			}
+		}
+
+		// rename one and remove the rest, which should prune the tree down to a single node
+		final TestStringSearchable renamed = new TestStringSearchable("renamed");
+		d.updateSearchable(kept.get(0), renamed);
+		for (int i = 1; i < kept.size(); i++) {
+			d.removeSearchable(kept.get(i));
+		}
+		assertMatches(d.searchExactMatch("renamed", filter, 10), renamed);
+		assertMatches(d.searchPrefix("ren", filter, 10), renamed);
+		d.setReadOnly();
+		assertMatches(d.searchPrefix("r", filter, 10), renamed);
+		try {
+			d.removeSearchable(renamed);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testSearchFuzzyPrefix() {
+		final TestStringSearchable toronto = new TestStringSearchable("toronto");
+		final TestStringSearchable tokyo = new TestStringSearchable("tokyo");
+		final TestStringSearchable taranto = new TestStringSearchable("taranto");
+		final TstDictionary<TestStringSearchable> d =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		d.addSearchables(Arrays.asList(toronto, tokyo, taranto));
+
+		assertTrue(d.searchPrefix("torotno", FILTER, 10).isEmpty());
+		assertMatches(d.searchFuzzyPrefix("torotno", 1, FILTER, 10), toronto);
+		assertMatches(d.searchFuzzyPrefix("toro", 0, FILTER, 10), toronto);
+		assertMatches(d.searchFuzzyPrefix("tork", 1, FILTER, 10), toronto, tokyo);
+		assertMatches(d.searchFuzzyPrefix("toranto", 1, FILTER, 10), toronto, taranto);
+		d.setReadOnly();
+		assertMatches(d.searchFuzzyPrefix("torotno", 1, FILTER, 10), toronto);
+		assertMatches(d.searchFuzzyPrefix("tork", 1, FILTER, 10), toronto, tokyo);
+		assertEquals(3, d.searchFuzzyPrefix("xy", 2, FILTER, 10).size());
+	}
+
+	public void testSearchFuzzyPrefixRandom() {
+		final Random rand = new Random(5);
+		final Set<TestStringSearchable> distinct = new LinkedHashSet<TestStringSearchable>();
+		while (distinct.size() < 2000) {
+			distinct.add(new TestStringSearchable(randomWord(rand), randomWord(rand)));
+		}
+		final TstDictionary<TestStringSearchable> mutable =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		final TstDictionary<TestStringSearchable> readOnly =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		mutable.addSearchables(distinct);
+		readOnly.addSearchables(distinct);
+		readOnly.setReadOnly();
+
+		for (int i = 0; i < 200; i++) {
+			final String prefix = randomWord(rand);
+			final int maxEdits = rand.nextInt(3);
+			final Set<TestStringSearchable> expected = new HashSet<TestStringSearchable>();
+			for (final TestStringSearchable searchable: distinct) {
+				for (final String s: searchable.getSearchStrings()) {
+					if (prefixEditDistance(prefix, s) <= maxEdits) {
+						expected.add(searchable);
+					}
+				}
+			}
+			final ScoreFilter filter = new ScoreFilter();
+			assertEquals(
+					expected,
+					new HashSet<TestStringSearchable>(mutable.searchFuzzyPrefix(prefix, maxEdits, filter, 10000)));
+			assertEquals(
+					expected,
+					new HashSet<TestStringSearchable>(readOnly.searchFuzzyPrefix(prefix, maxEdits, filter, 10000)));
+		}
+
+		// a long prefix with a small budget should only reach a small part of the tree
+		final ScoreFilter filter = new ScoreFilter();
+		mutable.searchFuzzyPrefix("abcdef", 1, filter, 10000);
+		assertTrue(filter.calls < distinct.size() / 10);
+	}
+
+	private static ByteBuffer mappedFile(final File file) throws IOException {
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Computes the smallest optimal string alignment distance between a query and any prefix of a string.
+	 */
+	private static int prefixEditDistance(final String query, final String s) {
+		final int[][] d = new int[s.length() + 1][query.length() + 1];
+		for (int i = 0; i <= s.length(); i++) {
+			for (int j = 0; j <= query.length(); j++) {
+				if (i == 0 || j == 0) {
+					d[i][j] = i + j;
+					continue;
+				}
+				final int cost = s.charAt(i - 1) == query.charAt(j - 1) ? 0 : 1;
+				d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+				if (i > 1 && j > 1 && s.charAt(i - 1) == query.charAt(j - 2) && s.charAt(i - 2) == query.charAt(j - 1)) {
+					d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+				}
+			}
+		}
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i <= s.length(); i++) {
+			min = Math.min(min, d[i][query.length()]);
+		}
+		return min;
+	}
+
+	public void testSnapshot() throws IOException {
+		final Random rand = new Random(9);
+		final Set<TestStringSearchable> distinct = new LinkedHashSet<TestStringSearchable>();
+		while (distinct.size() < 2000) {
+			if (distinct.size() % 2 == 0) {
+				distinct.add(new TestScoredStringSearchable(rand.nextInt(1000), randomWord(rand), randomWord(rand)));
+			} else {
+				distinct.add(new TestStringSearchable(randomWord(rand), "Àccent " + randomWord(rand)));
+			}
+		}
+		final List<TestStringSearchable> searchables = new ArrayList<TestStringSearchable>(distinct);
+		final SearchableIdMapping<TestStringSearchable> ids = new SearchableIdMapping<TestStringSearchable>() {
+			private final Map<TestStringSearchable, Long> idsBySearchable = new HashMap<TestStringSearchable, Long>();
+			{
+				for (int i = 0; i < searchables.size(); i++) {
+					idsBySearchable.put(searchables.get(i), 1000L + i);
+				}
+			}
+
+			public long getId(final TestStringSearchable searchable) {
+				return idsBySearchable.get(searchable);
+			}
+
+			public TestStringSearchable getSearchable(final long id) {
+				return searchables.get((int) (id - 1000L));
+			}
+		};
+
+		final TstDictionary<TestStringSearchable> d =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		d.addSearchables(searchables);
+		final File file = File.createTempFile("dictionary", ".tst");
+		file.deleteOnExit();
+		try {
+			d.writeSnapshot(file, ids);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected: only read only dictionaries can be written
+		}
+		d.setReadOnly();
+		d.writeSnapshot(file, ids);
+
+		final TstDictionary<TestStringSearchable> loaded =
+				TstDictionary.loadSnapshot(file, Dictionary.DEFAULT_PREPROCESSOR, ids);
+		final TstDictionary<TestStringSearchable> mapped =
+				TstDictionary.mapSnapshot(file, Dictionary.DEFAULT_PREPROCESSOR, ids);
+		// map in tiny regions so that many values straddle the boundary between two regions
+		final TstCompactTree<TestStringSearchable> smallRegions = TstCompactTreeMapped.map(file, ids, 6);
+		final TstCompactTree<TestStringSearchable> original = TstCompactTree.readFrom(mappedFile(file), ids);
+		final ScoreFilter filter = new ScoreFilter();
+		for (int i = 0; i < 300; i++) {
+			final String word = randomWord(rand);
+			for (int length = 1; length <= word.length(); length++) {
+				final String prefix = word.substring(0, length);
+				final List<TestStringSearchable> expected = d.searchPrefix(prefix, filter, 10);
+				assertEquals(expected, loaded.searchPrefix(prefix, filter, 10));
+				assertEquals(expected, mapped.searchPrefix(prefix, filter, 10));
+				assertEquals(d.searchExactMatch(prefix, filter, 10), loaded.searchExactMatch(prefix, filter, 10));
+				assertEquals(d.searchExactMatch(prefix, filter, 10), mapped.searchExactMatch(prefix, filter, 10));
+				assertEquals(
+						d.searchFuzzyPrefix(prefix, 1, filter, 10),
+						mapped.searchFuzzyPrefix(prefix, 1, filter, 10));
+
+				final TstDictionary.DefaultVisitor<TestStringSearchable> originalVisitor =
+						new TstDictionary.DefaultVisitor<TestStringSearchable>(filter, 10000);
+				final TstDictionary.DefaultVisitor<TestStringSearchable> smallRegionsVisitor =
+						new TstDictionary.DefaultVisitor<TestStringSearchable>(filter, 10000);
+				original.searchPrefix(prefix, originalVisitor);
+				smallRegions.searchPrefix(prefix, smallRegionsVisitor);
+				assertEquals(originalVisitor.resultList(), smallRegionsVisitor.resultList());
+			}
+		}
+		assertEquals(d.searchPrefix("accent a", filter, 10), loaded.searchPrefix("Accent A", filter, 10));
+		assertFalse(loaded.searchPrefix("accent a", filter, 10).isEmpty());
+		try {
+			loaded.addSearchable(new TestStringSearchable("new"));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		// a mapped dictionary resolves ids as it searches and skips searchables that no longer exist
+		final SearchableIdMapping<TestStringSearchable> evenIds = new SearchableIdMapping<TestStringSearchable>() {
+			public long getId(final TestStringSearchable searchable) {
+				return ids.getId(searchable);
+			}
+
+			public TestStringSearchable getSearchable(final long id) {
+				return id % 2 == 0 ? ids.getSearchable(id) : null;
+			}
+		};
+		final TstDictionary<TestStringSearchable> stale =
+				TstDictionary.mapSnapshot(file, Dictionary.DEFAULT_PREPROCESSOR, evenIds);
+		final List<TestStringSearchable> evens = stale.searchPrefix("a", filter, 10000);
+		assertFalse(evens.isEmpty());
+		for (final TestStringSearchable searchable: evens) {
+			assertEquals(0, ids.getId(searchable) % 2);
+		}
+		try {
+			TstDictionary.loadSnapshot(file, Dictionary.DEFAULT_PREPROCESSOR, evenIds);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		// a snapshot must start with the format header and be complete
+		final FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+		out.close();
+		try {
+			TstDictionary.loadSnapshot(file, Dictionary.DEFAULT_PREPROCESSOR, ids);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testSearchTokens() {
+		final TestStringSearchable newYork = new TestStringSearchable("New York");
+		final TestStringSearchable york = new TestStringSearchable("York");
+		final TestStringSearchable dales = new TestStringSearchable("Yorkshire Dales");
+		final TestStringSearchable orleans = new TestStringSearchable("New Orleans");
+		final TestStringSearchable newark = new TestStringSearchable("Newark");
+		final TestStringSearchable stJean = new TestStringSearchable("Saint-Jean-sur-Richelieu");
+		final List<TestStringSearchable> searchables =
+				Arrays.asList(newYork, york, dales, orleans, newark, stJean);
+
+		final TstDictionary<TestStringSearchable> d = new TstDictionary<TestStringSearchable>(
+				Dictionary.DEFAULT_PREPROCESSOR, Dictionary.DEFAULT_TOKENIZER);
+		d.addSearchables(searchables);
+		assertTokenSearches(d, newYork, york, dales, orleans, newark, stJean);
+		d.setReadOnly();
+		assertTokenSearches(d, newYork, york, dales, orleans, newark, stJean);
+
+		final TstDictionary<TestStringSearchable> oneByOne = new TstDictionary<TestStringSearchable>(
+				Dictionary.DEFAULT_PREPROCESSOR, Dictionary.DEFAULT_TOKENIZER);
+		for (final TestStringSearchable searchable: searchables) {
+			oneByOne.addSearchable(searchable);
+		}
+		assertTokenSearches(oneByOne, newYork, york, dales, orleans, newark, stJean);
+		oneByOne.removeSearchable(newYork);
+		assertMatches(oneByOne.searchTokens("york", FILTER, 10), york, dales);
+		assertMatches(oneByOne.searchTokens("new", FILTER, 10), orleans, newark);
+
+		// without a tokenizer only whole strings are indexed
+		final TstDictionary<TestStringSearchable> untokenized =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		untokenized.addSearchables(searchables);
+		assertMatches(untokenized.searchTokens("york", FILTER, 10), york, dales);
+		assertMatches(untokenized.searchTokens("new y", FILTER, 10), newYork);
+	}
+
+	private static void assertTokenSearches(
+			final TstDictionary<TestStringSearchable> d,
+			final TestStringSearchable newYork,
+			final TestStringSearchable york,
+			final TestStringSearchable dales,
+			final TestStringSearchable orleans,
+			final TestStringSearchable newark,
+			final TestStringSearchable stJean) {
+		assertMatches(d.searchTokens("york", FILTER, 10), newYork, york, dales);
+		assertMatches(d.searchTokens("New", FILTER, 10), newYork, orleans, newark);
+		assertMatches(d.searchTokens("new yo", FILTER, 10), newYork);
+		assertMatches(d.searchTokens("yo, new", FILTER, 10), newYork);
+		assertMatches(d.searchTokens("newy", FILTER, 10), newYork);
+		assertMatches(d.searchTokens("dales york", FILTER, 10), dales);
+		assertMatches(d.searchTokens("jean rich", FILTER, 10), stJean);
+		assertMatches(d.searchTokens("new dales", FILTER, 10));
+		assertMatches(d.searchTokens(" , ", FILTER, 10));
+		// words are indexed for prefix searches as well
+		assertMatches(d.searchPrefix("orl", FILTER, 10), orleans);
+	}
+
+	public void testAddSearchablesBulk() {
+		final Set<String> words = new HashSet<String>();
+		final Random rand = new Random(5);
+		while (words.size() < 20000) {
+			final int length = 3 + rand.nextInt(4);
+			final StringBuilder sb = new StringBuilder(length);
+			for (int i = 0; i < length; i++) {
+				sb.append((char) ('a' + rand.nextInt(26)));
+			}
+			words.add(sb.toString());
+		}
+		final List<String> sorted = new ArrayList<String>(words);
+		Collections.sort(sorted);
+		final List<TestStringSearchable> searchables = new ArrayList<TestStringSearchable>();
+		for (final String word: sorted) {
+			searchables.add(new TestStringSearchable(word, word.toUpperCase() + "x"));
+		}
+		// strings that are empty once preprocessed are ignored
+		searchables.add(new TestStringSearchable(" ", "!?"));
+
+		long start = System.nanoTime();
+		final TstDictionary<TestStringSearchable> oneByOne =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		for (final TestStringSearchable searchable: searchables) {
+			oneByOne.addSearchable(searchable);
+		}
+		final long oneByOneNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		final TstDictionary<TestStringSearchable> bulk =
+				new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		bulk.addSearchables(searchables);
+		final long bulkNanos = System.nanoTime() - start;
+		System.out.println("Sorted input: one by one " + oneByOneNanos / 1000000 + "ms, bulk " + bulkNanos / 1000000 +
+				"ms, sibling depth " + siblingDepth(oneByOne.getRoot()) + " vs " + siblingDepth(bulk.getRoot()));
+
+		// inserting sorted strings one at a time degenerates each level into a linked list
+		assertTrue(siblingDepth(bulk.getRoot()) * 2 < siblingDepth(oneByOne.getRoot()));
+
+		for (int i = 0; i < 500; i++) {
+			final String word = sorted.get(rand.nextInt(sorted.size()));
+			for (int length = 1; length <= word.length() + 1; length++) {
+				final String prefix = length > word.length() ? word + "x" : word.substring(0, length);
+				assertEquals(
+						new HashSet<TestStringSearchable>(oneByOne.searchPrefix(prefix, FILTER, 100000)),
+						new HashSet<TestStringSearchable>(bulk.searchPrefix(prefix, FILTER, 100000)));
+				assertEquals(
+						new HashSet<TestStringSearchable>(oneByOne.searchExactMatch(prefix, FILTER, 100000)),
+						new HashSet<TestStringSearchable>(bulk.searchExactMatch(prefix, FILTER, 100000)));
+			}
+		}
+	}
+
+	/**
+	 * Finds the largest number of left and right links on any path from the root.
+	 */
+	private static int siblingDepth(final TstNode<?> node) {
+		if (node == null) {
+			return 0;
+		}
+		final int middle = siblingDepth(node.middle);
+		final int sibling = 1 + Math.max(siblingDepth(node.left), siblingDepth(node.right));
+		return Math.max(middle, sibling);
+	}
+
+	public void testRemoveMergesFragments() {
+		final TstNode<TestStringSearchable> root = TstNode.newRoot("fraser", new TestStringSearchable("fraser"));
+		final TestStringSearchable fic = new TestStringSearchable("fic");
+		root.insert("fic", fic);
+		assertEquals("f", root.getFragment());
+
+		final TstNode<TestStringSearchable> after = root.remove("fic", fic);
+		assertSame(root, after);
+		assertEquals("fraser", after.getFragment());
+		assertNull(after.middle);
+		assertNull(after.remove("fraser", new TestStringSearchable("fraser")));
+	}
+
+	public void testSearchEmpty() {
+		final TstDictionary<TestStringSearchable> d = new TstDictionary<TestStringSearchable>(Dictionary.DEFAULT_PREPROCESSOR);
+		assertMatches(d.searchPrefix("abc", FILTER, 1));
+		d.setReadOnly();
+		assertMatches(d.searchPrefix("abc", FILTER, 1));
+		assertMatches(d.searchExactMatch("abc", FILTER, 1));
+	}
+
+	private static String randomWord(final Random rand) {
+		final int length = 1 + rand.nextInt(8);
+		final StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + rand.nextInt(6)));
+		}
+		return sb.toString();
+	}
+
 	private static void assertMatches(final List<TestStringSearchable> matches, final TestStringSearchable... expecteds) {
 		assertNotNull(matches);
 		assertEquals(expecteds.length, matches.size());
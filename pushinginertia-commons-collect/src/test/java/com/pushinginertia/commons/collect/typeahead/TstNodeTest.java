@@ -0,0 +1,157 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.collect.typeahead;
+
+import com.pushinginertia.commons.collect.typeahead.TstDictionaryTest.TestStringSearchable;
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+public class TstNodeTest extends TestCase {
+	private static final int WORDS = 20000;
+	private static final int OPS = 200000;
+
+	private static class CountingVisitor implements TstNode.NodeVisitor<TestStringSearchable> {
+		private long count = 0;
+
+		public void visit(final TestStringSearchable searchable, final String searchString) {
+			count++;
+		}
+	}
+
+	/**
+	 * Reports the bytes allocated per search on the calling thread. Uses the HotSpot thread allocation counter, so the
+	 * test is skipped on JVMs that don't provide one.
+	 */
+	public void testSearchAllocations() {
+		final com.sun.management.ThreadMXBean bean = threadMXBean();
+		if (bean == null) {
+			return;
+		}
+
+		final Random rand = new Random(7);
+		final TstNode<TestStringSearchable> root = TstNode.newRoot("m", new TestStringSearchable("m"));
+		final String[] words = new String[WORDS];
+		for (int i = 0; i < WORDS; i++) {
+			words[i] = randomWord(rand);
+			root.insert(words[i], new TestStringSearchable(words[i]));
+		}
+		final String[] prefixes = new String[1024];
+		for (int i = 0; i < prefixes.length; i++) {
+			final String word = words[rand.nextInt(WORDS)];
+			prefixes[i] = word.substring(0, 2 + rand.nextInt(word.length() - 1));
+		}
+
+		final CountingVisitor visitor = new CountingVisitor();
+		final long threadId = Thread.currentThread().getId();
+
+		// warm up so that one-time allocations (class loading, thread-local state) aren't counted
+		for (int i = 0; i < OPS; i++) {
+			root.searchPrefix(prefixes[i & 1023], visitor);
+			root.searchExactMatch(prefixes[i & 1023], visitor);
+		}
+
+		long before = bean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < OPS; i++) {
+			root.searchPrefix(prefixes[i & 1023], visitor);
+		}
+		final double prefixBytesPerOp = (double) (bean.getThreadAllocatedBytes(threadId) - before) / OPS;
+
+		before = bean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < OPS; i++) {
+			root.searchExactMatch(prefixes[i & 1023], visitor);
+		}
+		final double exactBytesPerOp = (double) (bean.getThreadAllocatedBytes(threadId) - before) / OPS;
+
+		assertTrue(visitor.count > 0);
+		System.out.println(
+				"TstNode allocations: searchPrefix=" + prefixBytesPerOp + " bytes/op, searchExactMatch=" +
+				exactBytesPerOp + " bytes/op");
+	}
+
+	/**
+	 * Reports the time per fuzzy prefix search relative to an exact prefix search over the same tree.
+	 */
+	public void testFuzzySearchLatency() {
+		final Random rand = new Random(11);
+		final TstNode<TestStringSearchable> root = TstNode.newRoot("m", new TestStringSearchable("m"));
+		final String[] words = new String[WORDS];
+		for (int i = 0; i < WORDS; i++) {
+			words[i] = randomWord(rand);
+			root.insert(words[i], new TestStringSearchable(words[i]));
+		}
+		final String[] prefixes = new String[1024];
+		for (int i = 0; i < prefixes.length; i++) {
+			final String word = words[rand.nextInt(WORDS)];
+			prefixes[i] = word.substring(0, Math.min(word.length(), 4 + rand.nextInt(4)));
+		}
+
+		final CountingVisitor visitor = new CountingVisitor();
+		final int ops = OPS / 10;
+		for (int i = 0; i < ops; i++) {
+			root.searchPrefix(prefixes[i & 1023], visitor);
+			root.searchFuzzyPrefix(prefixes[i & 1023], 1, visitor);
+		}
+
+		long count = visitor.count;
+		long start = System.nanoTime();
+		for (int i = 0; i < ops; i++) {
+			root.searchPrefix(prefixes[i & 1023], visitor);
+		}
+		final double prefixNanosPerOp = (double) (System.nanoTime() - start) / ops;
+		final double prefixMatchesPerOp = (double) (visitor.count - count) / ops;
+
+		count = visitor.count;
+		start = System.nanoTime();
+		for (int i = 0; i < ops; i++) {
+			root.searchFuzzyPrefix(prefixes[i & 1023], 1, visitor);
+		}
+		final double fuzzyNanosPerOp = (double) (System.nanoTime() - start) / ops;
+		final double fuzzyMatchesPerOp = (double) (visitor.count - count) / ops;
+
+		assertTrue(visitor.count > 0);
+		System.out.println(
+				"TstNode latency: searchPrefix=" + prefixNanosPerOp + " ns/op (" + prefixMatchesPerOp +
+				" matches/op), searchFuzzyPrefix(maxEdits=1)=" + fuzzyNanosPerOp + " ns/op (" + fuzzyMatchesPerOp +
+				" matches/op)");
+	}
+
+	private static com.sun.management.ThreadMXBean threadMXBean() {
+		try {
+			final com.sun.management.ThreadMXBean bean =
+					(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (!bean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			bean.setThreadAllocatedMemoryEnabled(true);
+			return bean;
+		} catch (ClassCastException e) {
+			return null;
+		} catch (NoClassDefFoundError e) {
+			return null;
+		}
+	}
+
+	private static String randomWord(final Random rand) {
+		final int length = 3 + rand.nextInt(10);
+		final StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + rand.nextInt(26)));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,143 @@
+/* Copyright (c) 2011-2015 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.domain.usertype;
+
+import com.pushinginertia.commons.net.IpAddress;
+import org.hibernate.HibernateException;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.usertype.EnhancedUserType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Custom hibernate user type to map an IPv4 or IPv6 {@link com.pushinginertia.commons.net.IpAddress} to its string
+ * representation, which is the output of {@link com.pushinginertia.commons.net.IpAddress#getIpAddress()}. IPv6
+ * addresses are written in the canonical form of RFC 5952, which takes at most 45 characters.
+ */
+public class IpAddressAsStringUserType implements EnhancedUserType, Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final int[] SQL_TYPES = new int[]{Types.VARCHAR};
+	private static final Logger LOG = LoggerFactory.getLogger(IpAddressAsStringUserType.class);
+
+	@Override
+	public int[] sqlTypes() {
+		return SQL_TYPES;
+	}
+
+	@Override
+	public Class returnedClass() {
+		return IpAddress.class;
+	}
+
+	@Override
+	public boolean equals(final Object x, final Object y) throws HibernateException {
+		if (x == y) {
+			return true;
+		}
+		if (x == null || y == null) {
+			return false;
+		}
+		return x.equals(y);
+	}
+
+	@Override
+	public int hashCode(final Object x) throws HibernateException {
+		return x.hashCode();
+	}
+
+	@Override
+	public Object nullSafeGet(final ResultSet rs, String[] names, Object owner) throws HibernateException, SQLException {
+		if (rs == null) {
+			return null;
+		}
+
+		final String columnName = names[0];
+		final String columnValue = rs.getString(columnName);
+		if (columnValue == null) {
+			LOG.debug("Returning null for column: {}", columnName);
+			return null;
+		}
+		return deserialize(columnValue);
+	}
+
+	@Override
+	public void nullSafeSet(final PreparedStatement statement, Object value, int index)
+	throws HibernateException, SQLException {
+		if (value == null) {
+			statement.setNull(index, StandardBasicTypes.STRING.sqlType());
+			return;
+		}
+		statement.setString(index, serialize((IpAddress)value));
+	}
+
+	@Override
+	public Object deepCopy(Object value) throws HibernateException {
+		return value;
+	}
+
+	@Override
+	public boolean isMutable() {
+		return true;
+	}
+
+	@Override
+	public Serializable disassemble(final Object value) throws HibernateException {
+		return serialize((IpAddress)value);
+	}
+
+	@Override
+	public Object assemble(final Serializable cached, final Object owner) throws HibernateException {
+		return deserialize((String)cached);
+	}
+
+	@Override
+	public Object replace(final Object original, final Object target, final Object owner) throws HibernateException {
+		return original;
+	}
+
+	@Override
+	public String objectToSQLString(final Object value) {
+		return '\'' + serialize((IpAddress) value) + '\'';
+	}
+
+	@Override
+	public String toXMLString(Object value) {
+		return serialize((IpAddress) value);
+	}
+
+	@Override
+	public Object fromXMLString(final String xmlValue) {
+		return deserialize(xmlValue);
+	}
+
+	static String serialize(final IpAddress ipAddress) throws HibernateException {
+		return ipAddress.getIpAddress();
+	}
+
+	static IpAddress deserialize(final String columnValue) throws HibernateException {
+		try {
+			return new IpAddress(columnValue);
+		} catch (final IllegalArgumentException e) {
+			throw new HibernateException("Failed to parse IP address: " + columnValue, e);
+		}
+	}
+}
@@ -30,6 +30,8 @@ import java.sql.Types;
 
 /**
  * Custom hibernate user type to map an {@link com.pushinginertia.commons.net.IpAddress} to a numeric representation.
+ * Only IPv4 addresses fit in the numeric column; use {@link IpAddressAsStringUserType} for columns that must also hold
+ * IPv6 addresses.
  */
 public class IpAddressUserType implements EnhancedUserType, Serializable {
 	private static final long serialVersionUID = 1L;
@@ -135,7 +137,12 @@ public class IpAddressUserType implements EnhancedUserType, Serializable {
 		}
 	}
 
-	static long serialize(final IpAddress ipAddress) throws HibernateException{
+	static long serialize(final IpAddress ipAddress) throws HibernateException {
+		if (ipAddress.isIpv6()) {
+			throw new HibernateException(
+					"Cannot store IPv6 address " + ipAddress.getIpAddress() + " as an IPv4 number, map the property with " +
+					IpAddressAsStringUserType.class.getName() + " instead.");
+		}
 		return ipAddress.getIpNumber();
 	}
 
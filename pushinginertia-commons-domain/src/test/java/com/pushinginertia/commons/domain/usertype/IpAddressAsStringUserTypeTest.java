@@ -0,0 +1,38 @@
+/* Copyright (c) 2011-2015 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.domain.usertype;
+
+import com.pushinginertia.commons.net.IpAddress;
+import org.hibernate.HibernateException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IpAddressAsStringUserTypeTest {
+	@Test
+	public void roundTrip() {
+		for (final String s: new String[] {"202.191.68.0", "2001:db8::1", "::ffff:10.0.0.1"}) {
+			final IpAddress ipAddress = new IpAddress(s);
+			Assert.assertEquals(s, IpAddressAsStringUserType.serialize(ipAddress));
+			Assert.assertEquals(ipAddress, IpAddressAsStringUserType.deserialize(s));
+		}
+		Assert.assertEquals("2001:db8::1", IpAddressAsStringUserType.serialize(new IpAddress("2001:0DB8:0:0:0:0:0:1")));
+	}
+
+	@Test(expected = HibernateException.class)
+	public void deserializeInvalid() {
+		IpAddressAsStringUserType.deserialize("not an IP address");
+	}
+}
@@ -0,0 +1,39 @@
+/* Copyright (c) 2011-2015 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.domain.usertype;
+
+import com.pushinginertia.commons.net.IpAddress;
+import org.hibernate.HibernateException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IpAddressUserTypeTest {
+	@Test
+	public void serialize() {
+		Assert.assertEquals(3401532416L, IpAddressUserType.serialize(new IpAddress("202.191.68.0")));
+		Assert.assertEquals(new IpAddress("202.191.68.0"), IpAddressUserType.deserialize(3401532416L));
+	}
+
+	@Test
+	public void serializeRejectsIpv6() {
+		try {
+			IpAddressUserType.serialize(new IpAddress("2001:db8::1"));
+			Assert.fail();
+		} catch (final HibernateException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("2001:db8::1"));
+		}
+	}
+}
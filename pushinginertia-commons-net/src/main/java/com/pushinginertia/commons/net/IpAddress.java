@@ -21,36 +21,80 @@ import java.io.Serializable;
 
 /**
  * An object representation of an IP address that allows it to be represented in different formats.
+ * <p>
+ * Both IPv4 and IPv6 addresses are supported. An IPv6 address is held as its 128-bit number split into two longs.
+ * Addresses are ordered with all IPv4 addresses below all IPv6 addresses, and numerically within each family.
+ * {@link #getIpNumber()} only applies to IPv4 addresses, so callers that may receive client addresses must check
+ * {@link #isIpv6()} first or use {@link #getHighBits()} and {@link #getLowBits()}, which apply to both.
  * Not thread-safe.
  */
-public class IpAddress implements Serializable {
+public class IpAddress implements Serializable, Comparable<IpAddress> {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * IPv4 number, or the lower 64 bits of an IPv6 address.
+	 */
 	private final long ipNumber;
+	/**
+	 * Upper 64 bits of an IPv6 address.
+	 */
+	private final long highBits;
+	private final boolean ipv6;
 	private transient String ipAddress;
 
 	/**
 	 * Constructs the instance from a string representation of the IP address.
-	 * @param ipAddress IPv4 address in n.n.n.n format
-	 * @throws IllegalArgumentException if the input is not a valid IPv4 address
+	 * @param ipAddress IPv4 address in n.n.n.n format or IPv6 address in any of the forms of RFC 4291
+	 * @throws IllegalArgumentException if the input is not a valid IP address
 	 */
 	public IpAddress(final String ipAddress) throws IllegalArgumentException {
-		this.ipAddress = ValidateAs.notNull(ipAddress, "ipAddress");
-		this.ipNumber = IpAddressUtils.toIpNumber(ipAddress);
+		ValidateAs.notNull(ipAddress, "ipAddress");
+		if (ipAddress.indexOf(':') >= 0) {
+			final long[] bits = new long[2];
+			IpAddressUtils.toIpv6Number(ipAddress, bits);
+			this.highBits = bits[0];
+			this.ipNumber = bits[1];
+			this.ipv6 = true;
+			// formatted in canonical form when needed
+			this.ipAddress = null;
+		} else {
+			this.ipAddress = ipAddress;
+			this.ipNumber = IpAddressUtils.toIpNumber(ipAddress);
+			this.highBits = 0;
+			this.ipv6 = false;
+		}
 	}
 
+	/**
+	 * Constructs an IPv4 address from its IP number.
+	 * @param ipNumber IP number
+	 */
 	public IpAddress(final long ipNumber) {
 		this.ipNumber = ipNumber;
+		this.highBits = 0;
+		this.ipv6 = false;
+		this.ipAddress = null;
+	}
+
+	/**
+	 * Constructs an IPv6 address from its 128-bit number.
+	 * @param highBits upper 64 bits of the address
+	 * @param lowBits lower 64 bits of the address
+	 */
+	public IpAddress(final long highBits, final long lowBits) {
+		this.ipNumber = lowBits;
+		this.highBits = highBits;
+		this.ipv6 = true;
 		this.ipAddress = null;
 	}
 
 	/**
 	 * True if this IP address is lower (less than) than the given IP address.
-	 * @param otherIpAddress other IP address in string n.n.n.n notation
+	 * @param otherIpAddress other IP address in string n.n.n.n or IPv6 notation
 	 * @return comparison result
 	 */
 	public boolean isLower(final String otherIpAddress) {
-		return isLower(IpAddressUtils.toIpNumber(otherIpAddress));
+		return isLower(new IpAddress(otherIpAddress));
 	}
 
 	/**
@@ -59,26 +103,26 @@ public class IpAddress implements Serializable {
 	 * @return comparison result
 	 */
 	public boolean isLower(final IpAddress other) {
-		return isLower(other.getIpNumber());
+		return compareTo(other) < 0;
 	}
 
 	/**
-	 * True if this IP address is lower than the given IP address.
+	 * True if this IP address is lower than the given IPv4 address.
 	 * @param otherIpNumber IP number representation of the IP address
 	 * @return comparison result
 	 * @see IpAddressUtils#toIpNumber(String)
 	 */
 	public boolean isLower(final long otherIpNumber) {
-		return ipNumber < otherIpNumber;
+		return !ipv6 && ipNumber < otherIpNumber;
 	}
 
 	/**
 	 * True if this IP address is higher than the given IP address.
-	 * @param otherIpAddress other IP address in string n.n.n.n notation
+	 * @param otherIpAddress other IP address in string n.n.n.n or IPv6 notation
 	 * @return comparison result
 	 */
 	public boolean isHigher(final String otherIpAddress) {
-		return isHigher(IpAddressUtils.toIpNumber(otherIpAddress));
+		return isHigher(new IpAddress(otherIpAddress));
 	}
 
 	/**
@@ -87,17 +131,17 @@ public class IpAddress implements Serializable {
 	 * @return comparison result
 	 */
 	public boolean isHigher(final IpAddress other) {
-		return isLower(other.getIpNumber());
+		return compareTo(other) > 0;
 	}
 
 	/**
-	 * True if this IP address is higher than the given IP address.
+	 * True if this IP address is higher than the given IPv4 address.
 	 * @param otherIpNumber IP number representation of the IP address
 	 * @return comparison result
 	 * @see IpAddressUtils#toIpNumber(String)
 	 */
 	public boolean isHigher(final long otherIpNumber) {
-		return ipNumber > otherIpNumber;
+		return ipv6 || ipNumber > otherIpNumber;
 	}
 
 	/**
@@ -119,16 +163,16 @@ public class IpAddress implements Serializable {
 	public boolean isBetween(final IpAddress lo, final IpAddress hi) {
 		ValidateAs.notNull(lo, "lo");
 		ValidateAs.notNull(hi, "hi");
-		return (lo.ipNumber <= this.ipNumber && this.ipNumber <= hi.ipNumber);
+		return lo.compareTo(this) <= 0 && compareTo(hi) <= 0;
 	}
 
 	/**
 	 * True if this IP address is equal to the given IP address.
-	 * @param otherIpAddress other IP address in string n.n.n.n notation
+	 * @param otherIpAddress other IP address in string n.n.n.n or IPv6 notation
 	 * @return comparison result
 	 */
 	public boolean isEqual(final String otherIpAddress) {
-		return isEqual(IpAddressUtils.toIpNumber(otherIpAddress));
+		return isEqual(new IpAddress(otherIpAddress));
 	}
 
 	/**
@@ -137,30 +181,71 @@ public class IpAddress implements Serializable {
 	 * @return comparison result
 	 */
 	public boolean isEqual(final IpAddress other) {
-		return isEqual(other.getIpNumber());
+		return equals(other);
 	}
 
 	/**
-	 * True if this IP address is equal to the given IP address.
+	 * True if this IP address is equal to the given IPv4 address.
 	 * @param otherIpNumber IP number representation of the IP address
 	 * @return comparison result
 	 * @see IpAddressUtils#toIpNumber(String)
 	 */
 	public boolean isEqual(final long otherIpNumber) {
-		return ipNumber == otherIpNumber;
+		return !ipv6 && ipNumber == otherIpNumber;
+	}
+
+	/**
+	 * Indicates if this is an IPv6 address.
+	 * @return true for IPv6, false for IPv4
+	 */
+	public boolean isIpv6() {
+		return ipv6;
 	}
 
-	public long getIpNumber() {
+	/**
+	 * Returns the IP number of an IPv4 address. A 128-bit IPv6 number doesn't fit in a long, so rather than return part
+	 * of it this throws for IPv6 addresses; check {@link #isIpv6()} first.
+	 * @return IP number
+	 * @throws IllegalStateException if this is an IPv6 address
+	 */
+	public long getIpNumber() throws IllegalStateException {
+		if (ipv6) {
+			throw new IllegalStateException("Not an IPv4 address: " + getIpAddress());
+		}
+		return ipNumber;
+	}
+
+	/**
+	 * Returns the upper 64 bits of an IPv6 address, or zero for an IPv4 address.
+	 * @return upper 64 bits
+	 */
+	public long getHighBits() {
+		return highBits;
+	}
+
+	/**
+	 * Returns the lower 64 bits of an IPv6 address, or the IP number of an IPv4 address.
+	 * @return lower 64 bits
+	 */
+	public long getLowBits() {
 		return ipNumber;
 	}
 
 	public String getIpAddress() {
 		if (ipAddress == null) {
-			ipAddress = IpAddressUtils.toIpAddress(ipNumber);
+			ipAddress = ipv6 ? IpAddressUtils.toIpv6Address(highBits, ipNumber) : IpAddressUtils.toIpAddress(ipNumber);
 		}
 		return ipAddress;
 	}
 
+	@Override
+	public int compareTo(final IpAddress other) {
+		if (ipv6 != other.ipv6) {
+			return ipv6 ? 1 : -1;
+		}
+		return IpAddressUtils.compareIpv6(highBits, ipNumber, other.highBits, other.ipNumber);
+	}
+
 	@Override
 	public boolean equals(final Object o) {
 		if (this == o) {
@@ -170,16 +255,23 @@ public class IpAddress implements Serializable {
 			return false;
 		}
 		final IpAddress ipAddress = (IpAddress)o;
-		return ipNumber == ipAddress.ipNumber;
+		return ipNumber == ipAddress.ipNumber && highBits == ipAddress.highBits && ipv6 == ipAddress.ipv6;
 	}
 
 	@Override
 	public int hashCode() {
-		return (int) (ipNumber ^ (ipNumber >>> 32));
+		final int result = (int) (ipNumber ^ (ipNumber >>> 32));
+		if (!ipv6) {
+			return result;
+		}
+		return 31 * result + (int) (highBits ^ (highBits >>> 32)) + 1;
 	}
 
 	@Override
 	public String toString() {
+		if (ipv6) {
+			return "IpAddress{ipAddress=" + getIpAddress() + '}';
+		}
 		return "IpAddress{ipNumber=" + getIpNumber() + ", ipAddress=" + getIpAddress() + '}';
 	}
 }
@@ -39,7 +39,8 @@ public class IpAddressAndCountry implements Serializable {
 			this.countryCode = null;
 		} else {
 			ValidateAs.ofLength(countryCode, 2, "countryCode");
-			this.countryCode = countryCode.toUpperCase();
+			// share one instance of each code across the many instances typically cached
+			this.countryCode = PackedIpAddressAndCountry.canonicalCountryCode(countryCode);
 		}
 	}
 
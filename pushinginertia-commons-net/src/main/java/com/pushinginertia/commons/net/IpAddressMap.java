@@ -0,0 +1,296 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from IPv4 addresses to values that stores each key as an unsigned int in a primitive array, so entries
+ * cost an int and a reference instead of a key object and a map entry. Lookups by IP number allocate nothing.
+ * <p>
+ * The table uses open addressing with linear probing and backward-shift deletion, so it never fills up with
+ * tombstones. The address 0.0.0.0 marks a free slot and is stored separately. Null values are allowed.
+ * Not thread-safe.
+ * @param <V> Type of the value mapped to each IP address.
+ */
+public final class IpAddressMap<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	private int threshold;
+	private boolean hasZeroKey;
+	private Object zeroValue;
+
+	/**
+	 * Receives each entry of the map.
+	 * @param <V> Type of the value.
+	 */
+	public interface EntryConsumer<V> {
+		public void accept(long ipNumber, V value);
+	}
+
+	public IpAddressMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a map sized to hold a number of entries without resizing.
+	 * @param expectedSize Number of entries expected.
+	 */
+	public IpAddressMap(final int expectedSize) {
+		ValidateAs.nonNegative(expectedSize, "expectedSize");
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * Returns a power of two table size that keeps the load factor at most 3/4.
+	 */
+	static int tableSizeFor(final int expectedSize) {
+		final long minimum = Math.max(DEFAULT_CAPACITY, (long) expectedSize * 4 / 3 + 1);
+		if (minimum > 1 << 30) {
+			return 1 << 30;
+		}
+		return Integer.highestOneBit((int) minimum - 1) << 1;
+	}
+
+	/**
+	 * Spreads the bits of a key so that runs of adjacent addresses don't cluster in the table.
+	 */
+	static int hash(final int key) {
+		final int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Converts an IP number to the unsigned int stored as a key.
+	 * @throws IllegalArgumentException if the IP number is out of range
+	 */
+	static int toKey(final long ipNumber) throws IllegalArgumentException {
+		if (ipNumber < 0 || ipNumber > IpIntervalIndex.MAX_IP_NUMBER) {
+			throw new IllegalArgumentException("Not an IPv4 number: " + ipNumber);
+		}
+		return (int) ipNumber;
+	}
+
+	private void allocate(final int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		threshold = capacity / 4 * 3;
+	}
+
+	/**
+	 * Finds the slot of a non-zero key.
+	 * @return slot, or -1 if the key isn't in the table
+	 */
+	private int slotOf(final int key) {
+		final int mask = keys.length - 1;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			final int k = keys[slot];
+			if (k == key) {
+				return slot;
+			}
+			if (k == 0) {
+				return -1;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(final long ipNumber) {
+		if (ipNumber < 0 || ipNumber > IpIntervalIndex.MAX_IP_NUMBER) {
+			return null;
+		}
+		final int key = (int) ipNumber;
+		if (key == 0) {
+			return (V) zeroValue;
+		}
+		final int slot = slotOf(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+
+	/**
+	 * Returns the value mapped to an IP address.
+	 * @param ipAddress IP address to look up
+	 * @return mapped value, or null if there is none (always null for IPv6 addresses)
+	 */
+	public V get(final IpAddress ipAddress) {
+		return ipAddress.isIpv6() ? null : get(ipAddress.getIpNumber());
+	}
+
+	public boolean containsKey(final long ipNumber) {
+		if (ipNumber < 0 || ipNumber > IpIntervalIndex.MAX_IP_NUMBER) {
+			return false;
+		}
+		final int key = (int) ipNumber;
+		return key == 0 ? hasZeroKey : slotOf(key) >= 0;
+	}
+
+	public boolean containsKey(final IpAddress ipAddress) {
+		return !ipAddress.isIpv6() && containsKey(ipAddress.getIpNumber());
+	}
+
+	/**
+	 * Maps an IP number to a value.
+	 * @param ipNumber IPv4 number
+	 * @param value value to map, can be null
+	 * @return value previously mapped to the IP number, or null if there was none
+	 * @throws IllegalArgumentException if the IP number is out of range
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(final long ipNumber, final V value) throws IllegalArgumentException {
+		final int key = toKey(ipNumber);
+		if (key == 0) {
+			final V previous = (V) zeroValue;
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+			zeroValue = value;
+			return previous;
+		}
+
+		final int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				final V previous = (V) values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > threshold) {
+			resize();
+		}
+		return null;
+	}
+
+	/**
+	 * Maps an IP address to a value.
+	 * @param ipAddress IPv4 address
+	 * @param value value to map, can be null
+	 * @return value previously mapped to the IP address, or null if there was none
+	 * @throws IllegalArgumentException if the IP address is an IPv6 address
+	 */
+	public V put(final IpAddress ipAddress, final V value) throws IllegalArgumentException {
+		if (ipAddress.isIpv6()) {
+			throw new IllegalArgumentException("Not an IPv4 address: " + ipAddress.getIpAddress());
+		}
+		return put(ipAddress.getIpNumber(), value);
+	}
+
+	private void resize() {
+		if (keys.length == 1 << 30) {
+			throw new IllegalStateException("Map is full.");
+		}
+		final int[] oldKeys = keys;
+		final Object[] oldValues = values;
+		allocate(keys.length << 1);
+		final int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			final int key = oldKeys[i];
+			if (key != 0) {
+				int slot = hash(key) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Removes the mapping of an IP number.
+	 * @param ipNumber IPv4 number
+	 * @return value that was mapped to the IP number, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(final long ipNumber) {
+		if (ipNumber < 0 || ipNumber > IpIntervalIndex.MAX_IP_NUMBER) {
+			return null;
+		}
+		final int key = (int) ipNumber;
+		if (key == 0) {
+			final V previous = (V) zeroValue;
+			if (hasZeroKey) {
+				hasZeroKey = false;
+				zeroValue = null;
+				size--;
+			}
+			return previous;
+		}
+		final int slot = slotOf(key);
+		if (slot < 0) {
+			return null;
+		}
+		final V previous = (V) values[slot];
+		size--;
+
+		// shift back each following entry of the probe sequence that may move into the gap
+		final int mask = keys.length - 1;
+		int gap = slot;
+		for (int i = (slot + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			final int home = hash(keys[i]) & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		keys[gap] = 0;
+		values[gap] = null;
+		return previous;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		hasZeroKey = false;
+		zeroValue = null;
+		size = 0;
+	}
+
+	/**
+	 * Passes each entry to a consumer, in no particular order. The map must not be modified while it is iterated.
+	 * @param consumer receives the IP number and value of each entry
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(final EntryConsumer<? super V> consumer) {
+		if (hasZeroKey) {
+			consumer.accept(0, (V) zeroValue);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				consumer.accept(keys[i] & IpIntervalIndex.MAX_IP_NUMBER, (V) values[i]);
+			}
+		}
+	}
+}
@@ -32,6 +32,9 @@ public class IpAddressRange implements Serializable {
 	private List<String> cidrNotationList;
 
 	protected IpAddressRange(final IpAddress lowAddress, final IpAddress highAddress) {
+		if (lowAddress.isIpv6() != highAddress.isIpv6()) {
+			throw new IllegalArgumentException("Cannot mix IPv4 and IPv6 addresses: " + lowAddress + " - " + highAddress);
+		}
 		this.lowAddress = lowAddress;
 		this.highAddress = highAddress;
 		this.cidrNotationList = null;
@@ -51,7 +54,7 @@ public class IpAddressRange implements Serializable {
 	 * Parses an input string into an IP range. The input string must be of one of three forms:
 	 * <ul>
 	 *     <li>&lt;IPlo&gt;-&lt;IPhi&gt;</li>
-	 *     <li>CIDR notation</li>
+	 *     <li>CIDR notation (IPv4 or IPv6)</li>
 	 *     <li>single IP</li>
 	 * </ul>
 	 * @param rangeAsString string representation to parse
@@ -78,6 +81,11 @@ public class IpAddressRange implements Serializable {
 	}
 
 	protected IpAddressRange(final String cidrNotation) throws IllegalArgumentException {
+		if (cidrNotation.indexOf(':') >= 0) {
+			initIpv6(cidrNotation);
+			return;
+		}
+
 		// 1. compute lo/hi addresses from given cidr block
 		final SubnetUtils su = new SubnetUtils(cidrNotation);
 		su.setInclusiveHostCount(true);
@@ -92,17 +100,46 @@ public class IpAddressRange implements Serializable {
 		this.highAddress = new IpAddress(hia);
 	}
 
+	/**
+	 * Computes the lowest and highest addresses of an IPv6 CIDR block.
+	 * @param cidrNotation IPv6 address and prefix length separated by a slash
+	 * @throws IllegalArgumentException if the input cannot be parsed
+	 */
+	private void initIpv6(final String cidrNotation) throws IllegalArgumentException {
+		final int slashIndex = cidrNotation.indexOf('/');
+		final int prefixLength;
+		try {
+			prefixLength = Integer.parseInt(cidrNotation.substring(slashIndex + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a CIDR block: " + cidrNotation);
+		}
+		if (slashIndex < 0 || prefixLength < 0 || prefixLength > 128) {
+			throw new IllegalArgumentException("Not a CIDR block: " + cidrNotation);
+		}
+		final IpAddress address = new IpAddress(cidrNotation.substring(0, slashIndex));
+		if (!address.isIpv6()) {
+			throw new IllegalArgumentException("Not a CIDR block: " + cidrNotation);
+		}
+
+		// shifting a long by 64 is a no-op, so the prefix lengths at each end of a half are handled separately
+		final long highMask = prefixLength == 0 ? 0 : prefixLength >= 64 ? -1L : -1L << (64 - prefixLength);
+		final long lowMask = prefixLength <= 64 ? 0 : -1L << (128 - prefixLength);
+		this.cidrNotationList = Arrays.asList(cidrNotation);
+		this.lowAddress = new IpAddress(address.getHighBits() & highMask, address.getLowBits() & lowMask);
+		this.highAddress = new IpAddress(address.getHighBits() | ~highMask, address.getLowBits() | ~lowMask);
+	}
+
 	public static IpAddressRange fromCidrNotation(final String cidrNotation) {
 		return new IpAddressRange(cidrNotation.trim());
 	}
 
 	/**
 	 * Is the given IP address within this range?
-	 * @param ipAddress address to compare in string n.n.n.n notation
+	 * @param ipAddress address to compare in string n.n.n.n or IPv6 notation
 	 * @return true if the given IP address is within this range
 	 */
 	public boolean isInRange(final String ipAddress) {
-		return isInRange(IpAddressUtils.toIpNumber(ipAddress));
+		return isInRange(new IpAddress(ipAddress));
 	}
 
 	/**
@@ -111,7 +148,7 @@ public class IpAddressRange implements Serializable {
 	 * @return true if the given IP address is within this range
 	 */
 	public boolean isInRange(final IpAddress ipAddress) {
-		return isInRange(ipAddress.getIpNumber());
+		return ipAddress.isBetween(lowAddress, highAddress);
 	}
 
 	/**
@@ -120,7 +157,27 @@ public class IpAddressRange implements Serializable {
 	 * @return true if the given IP address is within this range
 	 */
 	public boolean isInRange(final long ipNumber) {
-		return lowAddress.getIpNumber() <= ipNumber && ipNumber <= highAddress.getIpNumber();
+		return !lowAddress.isIpv6() && lowAddress.getIpNumber() <= ipNumber && ipNumber <= highAddress.getIpNumber();
+	}
+
+	/**
+	 * Is the given IPv6 address within this range?
+	 * @param highBits upper 64 bits of the IPv6 address
+	 * @param lowBits lower 64 bits of the IPv6 address
+	 * @return true if the given IP address is within this range
+	 */
+	public boolean isInRange(final long highBits, final long lowBits) {
+		return lowAddress.isIpv6() &&
+				IpAddressUtils.compareIpv6(lowAddress.getHighBits(), lowAddress.getLowBits(), highBits, lowBits) <= 0 &&
+				IpAddressUtils.compareIpv6(highBits, lowBits, highAddress.getHighBits(), highAddress.getLowBits()) <= 0;
+	}
+
+	/**
+	 * Indicates if this is a range of IPv6 addresses.
+	 * @return true for IPv6, false for IPv4
+	 */
+	public boolean isIpv6() {
+		return lowAddress.isIpv6();
 	}
 
 	public IpAddress getLowAddress() {
@@ -138,6 +195,16 @@ public class IpAddressRange implements Serializable {
 		return cidrNotationList;
 	}
 
+	/**
+	 * Returns the minimal list of CIDR blocks covering this range without formatting them as strings.
+	 * @return blocks packed by {@link IpAddressUtils#cidrBlock(long, int)}
+	 * @throws IllegalStateException if this is a range of IPv6 addresses
+	 * @see IpAddressUtils#toCidrNotationList(long[])
+	 */
+	public long[] getCidrBlocks() throws IllegalStateException {
+		return IpAddressUtils.toCidrBlocks(lowAddress.getIpNumber(), highAddress.getIpNumber());
+	}
+
 	@Override
 	public String toString() {
 		return "IpAddressRange{" +
@@ -0,0 +1,220 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A hash set of IPv4 addresses that stores each address as an unsigned int in a primitive array, so an element costs
+ * about 5 bytes instead of a boxed key and a map entry. Lookups by IP number allocate nothing.
+ * <p>
+ * The table uses open addressing with linear probing and backward-shift deletion, as {@link IpAddressMap} does. The
+ * address 0.0.0.0 marks a free slot and is tracked separately.
+ * Not thread-safe.
+ */
+public final class IpAddressSet {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+	private int size;
+	private int threshold;
+	private boolean hasZeroKey;
+
+	public IpAddressSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a set sized to hold a number of addresses without resizing.
+	 * @param expectedSize Number of addresses expected.
+	 */
+	public IpAddressSet(final int expectedSize) {
+		ValidateAs.nonNegative(expectedSize, "expectedSize");
+		allocate(IpAddressMap.tableSizeFor(expectedSize));
+	}
+
+	private void allocate(final int capacity) {
+		keys = new int[capacity];
+		threshold = capacity / 4 * 3;
+	}
+
+	public boolean contains(final long ipNumber) {
+		if (ipNumber < 0 || ipNumber > IpIntervalIndex.MAX_IP_NUMBER) {
+			return false;
+		}
+		final int key = (int) ipNumber;
+		if (key == 0) {
+			return hasZeroKey;
+		}
+		final int mask = keys.length - 1;
+		for (int slot = IpAddressMap.hash(key) & mask; ; slot = (slot + 1) & mask) {
+			final int k = keys[slot];
+			if (k == key) {
+				return true;
+			}
+			if (k == 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Indicates if the set contains an IP address.
+	 * @param ipAddress IP address to look up
+	 * @return true if the set contains it (always false for IPv6 addresses)
+	 */
+	public boolean contains(final IpAddress ipAddress) {
+		return !ipAddress.isIpv6() && contains(ipAddress.getIpNumber());
+	}
+
+	/**
+	 * Adds an IP number to the set.
+	 * @param ipNumber IPv4 number
+	 * @return true if the set didn't already contain it
+	 * @throws IllegalArgumentException if the IP number is out of range
+	 */
+	public boolean add(final long ipNumber) throws IllegalArgumentException {
+		final int key = IpAddressMap.toKey(ipNumber);
+		if (key == 0) {
+			if (hasZeroKey) {
+				return false;
+			}
+			hasZeroKey = true;
+			size++;
+			return true;
+		}
+
+		final int mask = keys.length - 1;
+		int slot = IpAddressMap.hash(key) & mask;
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		if (++size > threshold) {
+			resize();
+		}
+		return true;
+	}
+
+	/**
+	 * Adds an IP address to the set.
+	 * @param ipAddress IPv4 address
+	 * @return true if the set didn't already contain it
+	 * @throws IllegalArgumentException if the IP address is an IPv6 address
+	 */
+	public boolean add(final IpAddress ipAddress) throws IllegalArgumentException {
+		if (ipAddress.isIpv6()) {
+			throw new IllegalArgumentException("Not an IPv4 address: " + ipAddress.getIpAddress());
+		}
+		return add(ipAddress.getIpNumber());
+	}
+
+	private void resize() {
+		if (keys.length == 1 << 30) {
+			throw new IllegalStateException("Set is full.");
+		}
+		final int[] oldKeys = keys;
+		allocate(keys.length << 1);
+		final int mask = keys.length - 1;
+		for (final int key: oldKeys) {
+			if (key != 0) {
+				int slot = IpAddressMap.hash(key) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+			}
+		}
+	}
+
+	/**
+	 * Removes an IP number from the set.
+	 * @param ipNumber IPv4 number
+	 * @return true if the set contained it
+	 */
+	public boolean remove(final long ipNumber) {
+		if (ipNumber < 0 || ipNumber > IpIntervalIndex.MAX_IP_NUMBER) {
+			return false;
+		}
+		final int key = (int) ipNumber;
+		if (key == 0) {
+			if (!hasZeroKey) {
+				return false;
+			}
+			hasZeroKey = false;
+			size--;
+			return true;
+		}
+
+		final int mask = keys.length - 1;
+		int slot = IpAddressMap.hash(key) & mask;
+		while (keys[slot] != key) {
+			if (keys[slot] == 0) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		size--;
+
+		// shift back each following entry of the probe sequence that may move into the gap
+		int gap = slot;
+		for (int i = (slot + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			final int home = IpAddressMap.hash(keys[i]) & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				gap = i;
+			}
+		}
+		keys[gap] = 0;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		hasZeroKey = false;
+		size = 0;
+	}
+
+	/**
+	 * Passes each IP number in the set to a consumer, in no particular order. The set must not be modified while it is
+	 * iterated.
+	 * @param consumer receives each IP number
+	 */
+	public void forEach(final LongConsumer consumer) {
+		if (hasZeroKey) {
+			consumer.accept(0);
+		}
+		for (final int key: keys) {
+			if (key != 0) {
+				consumer.accept(key & IpIntervalIndex.MAX_IP_NUMBER);
+			}
+		}
+	}
+}
@@ -16,59 +16,96 @@
 package com.pushinginertia.commons.net;
 
 import com.pushinginertia.commons.core.validation.ValidateAs;
-import com.pushinginertia.commons.lang.Tuple2;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * Static utility methods for IP address handling.
  */
 public class IpAddressUtils {
-	private static final int[] CIDR2MASK =
-			new int[]{
-					0x00000000, 0x80000000, 0xC0000000, 0xE0000000, 0xF0000000, 0xF8000000, 0xFC000000, 0xFE000000,
-					0xFF000000, 0xFF800000, 0xFFC00000, 0xFFE00000, 0xFFF00000, 0xFFF80000, 0xFFFC0000, 0xFFFE0000,
-					0xFFFF0000, 0xFFFF8000, 0xFFFFC000, 0xFFFFE000, 0xFFFFF000, 0xFFFFF800, 0xFFFFFC00, 0xFFFFFE00,
-					0xFFFFFF00, 0xFFFFFF80, 0xFFFFFFC0, 0xFFFFFFE0, 0xFFFFFFF0, 0xFFFFFFF8, 0xFFFFFFFC, 0xFFFFFFFE,
-					0xFFFFFFFF};
+	/**
+	 * Number of bits that the base IP number of a packed CIDR block is shifted by, leaving room for the prefix length.
+	 */
+	private static final int CIDR_BASE_SHIFT = 8;
 
+	private static final long LOCALHOST = 0x7F000001L;
 	/**
-	 * Defines the ranges of non-routable IP addresses.
+	 * Lower 64 bits of the IPv4-mapped IPv6 prefix ::ffff:0:0/96.
 	 */
-	private static final List<Tuple2<IpAddress, IpAddress>> NON_ROUTABLE_IPS = new ArrayList<Tuple2<IpAddress, IpAddress>>();
-	static {
-		NON_ROUTABLE_IPS.add(new Tuple2<IpAddress, IpAddress>(new IpAddress("10.0.0.0"), new IpAddress("10.255.255.255")));
-		NON_ROUTABLE_IPS.add(new Tuple2<IpAddress, IpAddress>(new IpAddress("172.16.0.0"), new IpAddress("172.31.255.255")));
-		NON_ROUTABLE_IPS.add(new Tuple2<IpAddress, IpAddress>(new IpAddress("192.168.0.0"), new IpAddress("192.168.255.255")));
-	}
+	private static final long IPV4_MAPPED = 0xFFFF00000000L;
 
 	/**
-	 * Converts an IP address to an IP number for efficient database lookups.
-	 * @param ipAddress IPv4 address with four octets separated by dots
+	 * Converts an IP address to an IP number for efficient database lookups. The address is parsed in a single pass
+	 * without allocating.
+	 * @param ipAddress IPv4 address with four octets (0 to 255, at most three digits each) separated by dots
 	 * @return IP number representation
 	 * @throws IllegalArgumentException if the input is not a valid IPv4 address or is null
 	 */
 	public static long toIpNumber(final String ipAddress) throws IllegalArgumentException {
 		ValidateAs.notEmpty(ipAddress, "ipAddress");
-
-		// 1. split string into octets
-		final String[] s = ipAddress.split("\\.");
-		if (s.length != 4) {
+		final long ipNumber = parseIpv4(ipAddress, 0, ipAddress.length());
+		if (ipNumber < 0) {
 			throw new IllegalArgumentException("Not an IP address: " + ipAddress);
 		}
+		return ipNumber;
+	}
 
-		// 2. convert to number
-		long out = 0;
-		try {
-			out += Long.parseLong(s[0]) << 24;
-			out += Long.parseLong(s[1]) << 16;
-			out += Long.parseLong(s[2]) << 8;
-			out += Long.parseLong(s[3]);
-		} catch (NumberFormatException e) {
+	/**
+	 * Converts an IP address held in any character sequence (such as a slice of a request header in a reused buffer) to
+	 * an IP number without allocating.
+	 * @param ipAddress IPv4 address with four octets (0 to 255, at most three digits each) separated by dots
+	 * @return IP number representation
+	 * @throws IllegalArgumentException if the input is not a valid IPv4 address or is null
+	 */
+	public static long toIpNumber(final CharSequence ipAddress) throws IllegalArgumentException {
+		ValidateAs.notNull(ipAddress, "ipAddress");
+		final long ipNumber = parseIpv4(ipAddress, 0, ipAddress.length());
+		if (ipNumber < 0) {
 			throw new IllegalArgumentException("Not an IP address: " + ipAddress);
 		}
-		return out;
+		return ipNumber;
+	}
+
+	/**
+	 * Converts a batch of IP addresses to IP numbers.
+	 * @param ipAddresses IPv4 addresses to convert
+	 * @param ipNumbers array that receives the IP number of each address at the same index
+	 * @throws IllegalArgumentException if any input is not a valid IPv4 address or is null, or the output array is
+	 * shorter than the input
+	 */
+	public static void toIpNumbers(final CharSequence[] ipAddresses, final long[] ipNumbers)
+			throws IllegalArgumentException {
+		ValidateAs.notNull(ipAddresses, "ipAddresses");
+		ValidateAs.notNull(ipNumbers, "ipNumbers");
+		checkLength(ipAddresses.length, ipNumbers.length);
+		for (int i = 0; i < ipAddresses.length; i++) {
+			ipNumbers[i] = toIpNumber(ipAddresses[i]);
+		}
+	}
+
+	/**
+	 * Converts a batch of IP addresses to IP numbers.
+	 * @param ipAddresses IPv4 addresses to convert
+	 * @return IP number of each address in the same order
+	 * @throws IllegalArgumentException if any input is not a valid IPv4 address or is null
+	 */
+	public static long[] toIpNumbers(final CharSequence[] ipAddresses) throws IllegalArgumentException {
+		final long[] ipNumbers = new long[ValidateAs.notNull(ipAddresses, "ipAddresses").length];
+		toIpNumbers(ipAddresses, ipNumbers);
+		return ipNumbers;
+	}
+
+	/**
+	 * Lazily converts a stream of IP addresses to IP numbers.
+	 * @param ipAddresses IPv4 addresses to convert
+	 * @return stream of IP numbers in the same order, which throws {@link IllegalArgumentException} when it reaches an
+	 * input that is not a valid IPv4 address
+	 */
+	public static LongStream toIpNumbers(final Stream<? extends CharSequence> ipAddresses) {
+		return ValidateAs.notNull(ipAddresses, "ipAddresses").mapToLong(IpAddressUtils::toIpNumber);
 	}
 
 	/**
@@ -77,7 +114,7 @@ public class IpAddressUtils {
 	 * @return IPv4 address
 	 */
 	public static String toIpAddress(final long ipNumber) {
-		final StringBuilder sb = new StringBuilder();
+		final StringBuilder sb = new StringBuilder(15);
 		sb.append((ipNumber >> 24) & 0xff);
 		sb.append('.');
 		sb.append((ipNumber >> 16) & 0xff);
@@ -88,6 +125,229 @@ public class IpAddressUtils {
 		return sb.toString();
 	}
 
+	/**
+	 * Converts an IPv6 address to its 128-bit number, held in two longs.
+	 * @param ipAddress IPv6 address in any of the text forms of RFC 4291, including <code>::</code> compression and a
+	 * trailing dotted quad
+	 * @param out array that receives the upper 64 bits in element 0 and the lower 64 bits in element 1
+	 * @throws IllegalArgumentException if the input is not a valid IPv6 address or is null
+	 */
+	public static void toIpv6Number(final String ipAddress, final long[] out) throws IllegalArgumentException {
+		ValidateAs.notEmpty(ipAddress, "ipAddress");
+		if (!parseIpv6(ipAddress, out)) {
+			throw new IllegalArgumentException("Not an IP address: " + ipAddress);
+		}
+	}
+
+	/**
+	 * Parses an IPv6 address without allocating.
+	 * @param s text to parse
+	 * @param out array that receives the upper and lower 64 bits
+	 * @return false if the text is not a valid IPv6 address
+	 */
+	static boolean parseIpv6(final CharSequence s, final long[] out) {
+		final int len = s.length();
+		if (len < 2) {
+			return false;
+		}
+		// groups before a "::" accumulate in (hi, lo) and groups after it in (tailHi, tailLo)
+		long hi = 0;
+		long lo = 0;
+		long tailHi = 0;
+		long tailLo = 0;
+		int groups = 0;
+		int compressAt = -1;
+		int i = 0;
+		if (s.charAt(0) == ':') {
+			if (s.charAt(1) != ':') {
+				return false;
+			}
+			compressAt = 0;
+			i = 2;
+		}
+		while (i < len) {
+			final int start = i;
+			int value = 0;
+			int digit;
+			while (i < len && i - start < 5 && (digit = hexDigit(s.charAt(i))) >= 0) {
+				value = (value << 4) | digit;
+				i++;
+			}
+			final int bits;
+			if (i < len && s.charAt(i) == '.') {
+				// a trailing dotted quad fills the last two groups
+				final long ipv4 = parseIpv4(s, start, len);
+				if (ipv4 < 0) {
+					return false;
+				}
+				bits = 32;
+				value = (int) ipv4;
+				i = len;
+			} else if (i == start || i - start > 4) {
+				return false;
+			} else {
+				bits = 16;
+			}
+
+			groups += bits / 16;
+			if (groups > 8) {
+				return false;
+			}
+			final long v = value & 0xFFFFFFFFL;
+			if (compressAt < 0) {
+				hi = (hi << bits) | (lo >>> (64 - bits));
+				lo = (lo << bits) | v;
+			} else {
+				tailHi = (tailHi << bits) | (tailLo >>> (64 - bits));
+				tailLo = (tailLo << bits) | v;
+			}
+
+			if (i == len) {
+				break;
+			}
+			if (s.charAt(i) != ':' || ++i == len) {
+				return false;
+			}
+			if (s.charAt(i) == ':') {
+				if (compressAt >= 0) {
+					return false;
+				}
+				compressAt = groups;
+				i++;
+			}
+		}
+
+		if (compressAt < 0) {
+			if (groups != 8) {
+				return false;
+			}
+			out[0] = hi;
+			out[1] = lo;
+		} else {
+			if (groups > 7) {
+				return false;
+			}
+			// move the groups before the "::" to the top
+			final int shift = 16 * (8 - compressAt);
+			if (shift >= 128) {
+				hi = 0;
+				lo = 0;
+			} else if (shift >= 64) {
+				hi = lo << (shift - 64);
+				lo = 0;
+			} else {
+				hi = (hi << shift) | (lo >>> (64 - shift));
+				lo = lo << shift;
+			}
+			out[0] = hi | tailHi;
+			out[1] = lo | tailLo;
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a dotted quad within a character sequence without allocating.
+	 * @param s text to parse
+	 * @param from index of the first character
+	 * @param to index after the last character
+	 * @return IP number, or -1 if the text is not a valid IPv4 address
+	 */
+	static long parseIpv4(final CharSequence s, final int from, final int to) {
+		long out = 0;
+		int octet = 0;
+		int digits = 0;
+		int dots = 0;
+		for (int i = from; i < to; i++) {
+			final char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (++digits > 3) {
+					return -1;
+				}
+				octet = octet * 10 + (c - '0');
+			} else if (c == '.' && digits > 0 && octet <= 255 && dots < 3) {
+				out = (out << 8) | octet;
+				octet = 0;
+				digits = 0;
+				dots++;
+			} else {
+				return -1;
+			}
+		}
+		if (dots != 3 || digits == 0 || octet > 255) {
+			return -1;
+		}
+		return (out << 8) | octet;
+	}
+
+	/**
+	 * Converts an ASCII hex digit to its value. Unlike {@link Character#digit(char, int)}, other Unicode digits and
+	 * fullwidth letters are rejected.
+	 * @return value of the digit, or -1 if the character isn't one of 0-9, a-f or A-F
+	 */
+	private static int hexDigit(final char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	/**
+	 * Converts a 128-bit IPv6 number to the canonical text form of RFC 5952: lowercase hex groups without leading
+	 * zeros, the longest run of two or more zero groups compressed to <code>::</code>, and IPv4-mapped addresses
+	 * written as <code>::ffff:n.n.n.n</code>.
+	 * @param highBits upper 64 bits of the address
+	 * @param lowBits lower 64 bits of the address
+	 * @return IPv6 address
+	 */
+	public static String toIpv6Address(final long highBits, final long lowBits) {
+		if (highBits == 0 && (lowBits >>> 32) == 0xFFFFL) {
+			return "::ffff:" + toIpAddress(lowBits & 0xFFFFFFFFL);
+		}
+
+		// find the longest run of zero groups, preferring the first
+		int bestStart = -1;
+		int bestLength = 1;
+		int runStart = -1;
+		for (int g = 0; g <= 8; g++) {
+			if (g < 8 && ipv6Group(highBits, lowBits, g) == 0) {
+				if (runStart < 0) {
+					runStart = g;
+				}
+			} else if (runStart >= 0) {
+				if (g - runStart > bestLength) {
+					bestStart = runStart;
+					bestLength = g - runStart;
+				}
+				runStart = -1;
+			}
+		}
+
+		final StringBuilder sb = new StringBuilder(39);
+		for (int g = 0; g < 8; g++) {
+			if (g == bestStart) {
+				sb.append("::");
+				g += bestLength - 1;
+				continue;
+			}
+			if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') {
+				sb.append(':');
+			}
+			sb.append(Integer.toHexString(ipv6Group(highBits, lowBits, g)));
+		}
+		return sb.toString();
+	}
+
+	private static int ipv6Group(final long highBits, final long lowBits, final int group) {
+		final long bits = group < 4 ? highBits : lowBits;
+		return (int) (bits >>> (16 * (3 - (group & 3)))) & 0xFFFF;
+	}
+
 	/**
 	 * Converts a range of IP addresses to a list of CIDR blocks in n.n.n.n/n notation.
 	 * @param lowIpAddress lowest inclusive IP address in the range
@@ -105,75 +365,384 @@ public class IpAddressUtils {
 	 * @return generated list
 	 */
 	public static List<String> toCidrNotationList(final IpAddress lowIpAddress, final IpAddress highIpAddress) {
+		if (lowIpAddress.isIpv6() != highIpAddress.isIpv6()) {
+			throw new IllegalArgumentException("Cannot mix IPv4 and IPv6 addresses: " + lowIpAddress + " - " + highIpAddress);
+		}
+		if (lowIpAddress.isIpv6()) {
+			return toIpv6CidrNotationList(
+					lowIpAddress.getHighBits(), lowIpAddress.getLowBits(),
+					highIpAddress.getHighBits(), highIpAddress.getLowBits());
+		}
 		return toCidrNotationList(lowIpAddress.getIpNumber(), highIpAddress.getIpNumber());
 	}
 
 	/**
-	 * Converts a range of IP numbers to a list of CIDR blocks in n.n.n.n/n notation. Loosely based on the code sample
-	 * found at: http://stackoverflow.com/questions/5020317/in-java-given-an-ip-address-range-return-the-minimum-list-of-cidr-blocks-that
-	 *
-	 * @param lowIpNumber lowest inclusive IP number in the range
-	 * @param highIpNumber highest inclusive IP number in the range
+	 * Converts a range of 128-bit IPv6 numbers to the minimal list of CIDR blocks in IPv6 prefix notation.
+	 * @param lowHighBits upper 64 bits of the lowest inclusive IP number in the range
+	 * @param lowLowBits lower 64 bits of the lowest inclusive IP number in the range
+	 * @param highHighBits upper 64 bits of the highest inclusive IP number in the range
+	 * @param highLowBits lower 64 bits of the highest inclusive IP number in the range
 	 * @return generated list
 	 */
-	public static List<String> toCidrNotationList(final long lowIpNumber, final long highIpNumber) {
-		long curIpNumber = lowIpNumber;
+	public static List<String> toIpv6CidrNotationList(
+			final long lowHighBits,
+			final long lowLowBits,
+			final long highHighBits,
+			final long highLowBits) {
 		final List<String> pairs = new ArrayList<String>();
-		while (highIpNumber >= curIpNumber) {
-			byte maxsize = 32;
-			while (maxsize > 0) {
-				final long mask = CIDR2MASK[maxsize - 1];
-				final long maskedBase = curIpNumber & mask;
-				if (maskedBase != curIpNumber) {
-					break;
-				}
+		long curHigh = lowHighBits;
+		long curLow = lowLowBits;
+		while (compareIpv6(curHigh, curLow, highHighBits, highLowBits) <= 0) {
+			// the largest block aligned on the current address...
+			final int aligned = curLow != 0 ? Long.numberOfTrailingZeros(curLow) :
+					curHigh != 0 ? 64 + Long.numberOfTrailingZeros(curHigh) : 128;
+			// ...that doesn't extend past the end of the range: floor(log2(high - cur + 1))
+			long spanHigh = highHighBits - curHigh - (Long.compareUnsigned(highLowBits, curLow) < 0 ? 1 : 0);
+			long spanLow = highLowBits - curLow + 1;
+			if (spanLow == 0) {
+				spanHigh++;
+			}
+			final int fits = spanHigh == 0 && spanLow == 0 ? 128 :
+					spanHigh != 0 ? 127 - Long.numberOfLeadingZeros(spanHigh) : 63 - Long.numberOfLeadingZeros(spanLow);
+			final int blockBits = Math.min(aligned, fits);
+			pairs.add(toIpv6Address(curHigh, curLow) + "/" + (128 - blockBits));
 
-				maxsize--;
+			// advance past the block, stopping if the end of the address space is reached
+			if (blockBits == 128) {
+				break;
+			}
+			final long nextHigh;
+			final long nextLow;
+			if (blockBits >= 64) {
+				nextHigh = curHigh + (1L << (blockBits - 64));
+				nextLow = curLow;
+			} else {
+				nextLow = curLow + (1L << blockBits);
+				nextHigh = curHigh + (Long.compareUnsigned(nextLow, curLow) < 0 ? 1 : 0);
 			}
-			final double x = Math.log(highIpNumber - curIpNumber + 1) / Math.log(2);
-			final byte maxdiff = (byte) (32 - Math.floor(x));
-			if (maxsize < maxdiff) {
-				maxsize = maxdiff;
+			if (compareIpv6(nextHigh, nextLow, curHigh, curLow) <= 0) {
+				break;
 			}
-			final String ip = toIpAddress(curIpNumber);
-			pairs.add(ip + "/" + maxsize);
-			curIpNumber += Math.pow(2, (32 - maxsize));
+			curHigh = nextHigh;
+			curLow = nextLow;
 		}
 		return pairs;
 	}
 
 	/**
-	 * Identifies if a given IP address is from the local host (127.0.0.1).
+	 * Compares two 128-bit IPv6 numbers as unsigned values.
+	 * @return negative, zero or positive as the first number is below, equal to or above the second
+	 */
+	static int compareIpv6(final long highBits1, final long lowBits1, final long highBits2, final long lowBits2) {
+		final int c = Long.compareUnsigned(highBits1, highBits2);
+		return c != 0 ? c : Long.compareUnsigned(lowBits1, lowBits2);
+	}
+
+	/**
+	 * Converts a range of IP numbers to a list of CIDR blocks in n.n.n.n/n notation.
+	 * @param lowIpNumber lowest inclusive IP number in the range
+	 * @param highIpNumber highest inclusive IP number in the range
+	 * @return generated list, empty if the low IP number is above the high IP number
+	 * @see #toCidrBlocks(long, long)
+	 */
+	public static List<String> toCidrNotationList(final long lowIpNumber, final long highIpNumber) {
+		return toCidrNotationList(toCidrBlocks(lowIpNumber, highIpNumber));
+	}
+
+	/**
+	 * Formats a list of CIDR blocks in n.n.n.n/n notation.
+	 * @param cidrBlocks blocks packed by {@link #cidrBlock(long, int)}
+	 * @return generated list
+	 */
+	public static List<String> toCidrNotationList(final long[] cidrBlocks) {
+		final List<String> list = new ArrayList<String>(cidrBlocks.length);
+		for (final long cidrBlock: cidrBlocks) {
+			list.add(toCidrNotation(cidrBlock));
+		}
+		return list;
+	}
+
+	/**
+	 * Formats a CIDR block in n.n.n.n/n notation.
+	 * @param cidrBlock block packed by {@link #cidrBlock(long, int)}
+	 * @return formatted block
+	 */
+	public static String toCidrNotation(final long cidrBlock) {
+		final long base = cidrBase(cidrBlock);
+		final StringBuilder sb = new StringBuilder(18);
+		sb.append((base >> 24) & 0xff);
+		sb.append('.');
+		sb.append((base >> 16) & 0xff);
+		sb.append('.');
+		sb.append((base >> 8) & 0xff);
+		sb.append('.');
+		sb.append(base & 0xff);
+		sb.append('/');
+		sb.append(cidrPrefix(cidrBlock));
+		return sb.toString();
+	}
+
+	/**
+	 * Packs a CIDR block into a long: the base IP number in the upper bits and the prefix length in the low 8 bits.
+	 * Packed blocks sort in the same order as their base IP numbers.
+	 * @param baseIpNumber first IP number in the block
+	 * @param prefixLength number of leading bits fixed by the block (0 to 32)
+	 * @return packed block
+	 */
+	public static long cidrBlock(final long baseIpNumber, final int prefixLength) {
+		return baseIpNumber << CIDR_BASE_SHIFT | prefixLength;
+	}
+
+	public static long cidrBase(final long cidrBlock) {
+		return cidrBlock >>> CIDR_BASE_SHIFT;
+	}
+
+	public static int cidrPrefix(final long cidrBlock) {
+		return (int) cidrBlock & 0xFF;
+	}
+
+	/**
+	 * Converts a range of IP numbers to the minimal list of CIDR blocks that covers it. Each block is found with bit
+	 * operations: the largest block aligned on the current IP number (its trailing zero bits) that doesn't extend past
+	 * the end of the range (the highest power of two within the remaining span).
+	 * @param lowIpNumber lowest inclusive IP number in the range
+	 * @param highIpNumber highest inclusive IP number in the range
+	 * @return blocks in ascending order packed by {@link #cidrBlock(long, int)}, empty if the low IP number is above the
+	 * high IP number
+	 * @throws IllegalArgumentException if either IP number is out of range
+	 */
+	public static long[] toCidrBlocks(final long lowIpNumber, final long highIpNumber) throws IllegalArgumentException {
+		checkIpNumber(lowIpNumber);
+		checkIpNumber(highIpNumber);
+		final long[] cidrBlocks = new long[countCidrBlocks(lowIpNumber, highIpNumber)];
+		writeCidrBlocks(lowIpNumber, highIpNumber, cidrBlocks, 0);
+		return cidrBlocks;
+	}
+
+	/**
+	 * Converts the union of a set of IP ranges to the minimal list of CIDR blocks that covers it. The ranges can be in
+	 * any order and can overlap or touch each other.
+	 * @param lowIpNumbers lowest inclusive IP number of each range
+	 * @param highIpNumbers highest inclusive IP number of each range, at the same index
+	 * @return blocks in ascending order packed by {@link #cidrBlock(long, int)}
+	 * @throws IllegalArgumentException if the arrays differ in length, an IP number is out of range or a range's low IP
+	 * number is above its high IP number
+	 */
+	public static long[] toCidrBlocks(final long[] lowIpNumbers, final long[] highIpNumbers)
+			throws IllegalArgumentException {
+		if (lowIpNumbers.length != highIpNumbers.length) {
+			throw new IllegalArgumentException(
+					lowIpNumbers.length + " low IP numbers don't match " + highIpNumbers.length + " high IP numbers.");
+		}
+		final int n = lowIpNumbers.length;
+		final long[] lows = new long[n];
+		final long[] highs = new long[n];
+		return toCidrBlocks(lows, highs, coalesceRanges(lowIpNumbers, highIpNumbers, n, lows, highs));
+	}
+
+	/**
+	 * Converts disjoint IP ranges that are sorted and don't touch to the minimal list of CIDR blocks covering them.
+	 * @param lows lowest inclusive IP number of each range
+	 * @param highs highest inclusive IP number of each range, at the same index
+	 * @param ranges number of ranges
+	 * @return blocks in ascending order packed by {@link #cidrBlock(long, int)}
+	 */
+	static long[] toCidrBlocks(final long[] lows, final long[] highs, final int ranges) {
+		int count = 0;
+		for (int i = 0; i < ranges; i++) {
+			count += countCidrBlocks(lows[i], highs[i]);
+		}
+		final long[] cidrBlocks = new long[count];
+		int offset = 0;
+		for (int i = 0; i < ranges; i++) {
+			offset = writeCidrBlocks(lows[i], highs[i], cidrBlocks, offset);
+		}
+		return cidrBlocks;
+	}
+
+	/**
+	 * Sorts IP ranges and merges those that overlap or touch, so that what remains are disjoint ranges separated by at
+	 * least one IP number.
+	 * @param lowIpNumbers lowest inclusive IP number of each range
+	 * @param highIpNumbers highest inclusive IP number of each range, at the same index
+	 * @param n number of ranges
+	 * @param lows array of at least n elements that receives the low IP number of each merged range
+	 * @param highs array of at least n elements that receives the high IP number of each merged range
+	 * @return number of merged ranges
+	 * @throws IllegalArgumentException if an IP number is out of range or a range's low IP number is above its high IP
+	 * number
+	 */
+	static int coalesceRanges(
+			final long[] lowIpNumbers,
+			final long[] highIpNumbers,
+			final int n,
+			final long[] lows,
+			final long[] highs) throws IllegalArgumentException {
+		// sort the positions of the ranges by low IP number, packed as (low << 32 | position)
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			checkIpNumber(lowIpNumbers[i]);
+			checkIpNumber(highIpNumbers[i]);
+			if (lowIpNumbers[i] > highIpNumbers[i]) {
+				throw new IllegalArgumentException(
+						"Low IP number " + lowIpNumbers[i] + " is above high IP number " + highIpNumbers[i]);
+			}
+			keys[i] = lowIpNumbers[i] << 32 | i;
+		}
+		keys = IpIntervalIndex.radixSortIpNumbers(keys, new long[n], n);
+
+		int count = 0;
+		for (int k = 0; k < n; k++) {
+			final int i = (int) keys[k];
+			if (count > 0 && lowIpNumbers[i] <= highs[count - 1] + 1) {
+				highs[count - 1] = Math.max(highs[count - 1], highIpNumbers[i]);
+			} else {
+				lows[count] = lowIpNumbers[i];
+				highs[count] = highIpNumbers[i];
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static int countCidrBlocks(final long lowIpNumber, final long highIpNumber) {
+		int count = 0;
+		for (long cur = lowIpNumber; cur <= highIpNumber; cur += 1L << cidrBlockBits(cur, highIpNumber)) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the CIDR blocks of a range to an array.
+	 * @return position after the last block written
+	 */
+	private static int writeCidrBlocks(
+			final long lowIpNumber,
+			final long highIpNumber,
+			final long[] cidrBlocks,
+			final int offset) {
+		int i = offset;
+		long cur = lowIpNumber;
+		while (cur <= highIpNumber) {
+			final int bits = cidrBlockBits(cur, highIpNumber);
+			cidrBlocks[i++] = cidrBlock(cur, 32 - bits);
+			cur += 1L << bits;
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the size of the largest CIDR block starting at an IP number that doesn't extend past the end of a range.
+	 * @return base 2 logarithm of the number of IP numbers in the block
+	 */
+	private static int cidrBlockBits(final long curIpNumber, final long highIpNumber) {
+		final int aligned = Math.min(32, Long.numberOfTrailingZeros(curIpNumber));
+		final int fits = 63 - Long.numberOfLeadingZeros(highIpNumber - curIpNumber + 1);
+		return Math.min(aligned, fits);
+	}
+
+	private static void checkIpNumber(final long ipNumber) throws IllegalArgumentException {
+		if (ipNumber < 0 || ipNumber > IpIntervalIndex.MAX_IP_NUMBER) {
+			throw new IllegalArgumentException("Not an IPv4 number: " + ipNumber);
+		}
+	}
+
+	/**
+	 * Identifies if a given IP address is from the local host (127.0.0.1, ::1 or ::ffff:127.0.0.1).
 	 * @param ipAddress IP address to examine
 	 * @return true iff the given IP address maps to localhost
 	 */
 	public static boolean isLocalhost(final IpAddress ipAddress) {
 		ValidateAs.notNull(ipAddress, "ipAddress");
-		return isLocalhost(ipAddress.getIpAddress());
+		if (!ipAddress.isIpv6()) {
+			return ipAddress.getIpNumber() == LOCALHOST;
+		}
+		return ipAddress.getHighBits() == 0 &&
+				(ipAddress.getLowBits() == 1 || ipAddress.getLowBits() == (IPV4_MAPPED | LOCALHOST));
 	}
 
 	/**
-	 * Identifies if a given IP address is from the local host (127.0.0.1).
+	 * Identifies if a given IP address is from the local host (127.0.0.1, ::1 or ::ffff:127.0.0.1).
 	 * @param ipAddress IP address to examine
 	 * @return true iff the given IP address maps to localhost
 	 */
 	public static boolean isLocalhost(final String ipAddress) {
-		return "127.0.0.1".equals(ipAddress);
+		if ("127.0.0.1".equals(ipAddress)) {
+			return true;
+		}
+		if (ipAddress == null || ipAddress.indexOf(':') < 0) {
+			return false;
+		}
+		final long[] ipv6 = new long[2];
+		return parseIpv6(ipAddress, ipv6) &&
+				ipv6[0] == 0 && (ipv6[1] == 1 || ipv6[1] == (IPV4_MAPPED | LOCALHOST));
 	}
 
 	/**
-	 * Identifies if a given IP address is non-routable.
+	 * Identifies if a given IP address is non-routable: a private IPv4 address (10.0.0.0/8, 172.16.0.0/12 or
+	 * 192.168.0.0/16), a unique local (fc00::/7) or link-local (fe80::/10) IPv6 address, or an IPv4-mapped IPv6 address
+	 * of a private IPv4 address.
 	 * @param ipAddress IP address to test
 	 * @return true if non-routable
 	 */
 	public static boolean isNonRoutable(final IpAddress ipAddress) {
-		for (final Tuple2<IpAddress, IpAddress> range: NON_ROUTABLE_IPS) {
-			final IpAddress lo = range.getV1();
-			final IpAddress hi = range.getV2();
-			if (ipAddress.isBetween(lo, hi)) {
-				return true;
-			}
+		if (!ipAddress.isIpv6()) {
+			return isNonRoutable(ipAddress.getIpNumber());
+		}
+		final long highBits = ipAddress.getHighBits();
+		final long lowBits = ipAddress.getLowBits();
+		if ((highBits & 0xFE00000000000000L) == 0xFC00000000000000L ||
+				(highBits & 0xFFC0000000000000L) == 0xFE80000000000000L) {
+			return true;
+		}
+		return highBits == 0 && (lowBits >>> 32) == 0xFFFFL && isNonRoutable(lowBits & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Identifies if a given IPv4 number is in one of the private ranges 10.0.0.0/8, 172.16.0.0/12 or 192.168.0.0/16.
+	 * @param ipNumber IP number to test
+	 * @return true if non-routable
+	 */
+	public static boolean isNonRoutable(final long ipNumber) {
+		return (ipNumber >>> 24) == 10 || (ipNumber >>> 20) == 0xAC1 || (ipNumber >>> 16) == 0xC0A8;
+	}
+
+	/**
+	 * Identifies which of a batch of IPv4 numbers are non-routable.
+	 * @param ipNumbers IP numbers to test
+	 * @param results array that receives true at the index of each non-routable IP number
+	 * @throws IllegalArgumentException if the output array is shorter than the input
+	 * @see #isNonRoutable(long)
+	 */
+	public static void isNonRoutable(final long[] ipNumbers, final boolean[] results) throws IllegalArgumentException {
+		ValidateAs.notNull(ipNumbers, "ipNumbers");
+		checkLength(ipNumbers.length, ValidateAs.notNull(results, "results").length);
+		for (int i = 0; i < ipNumbers.length; i++) {
+			results[i] = isNonRoutable(ipNumbers[i]);
+		}
+	}
+
+	/**
+	 * Identifies which of a batch of IPv4 numbers held as unsigned ints are non-routable.
+	 * @param ipNumbers IP numbers to test, each read as an unsigned int
+	 * @param results array that receives true at the index of each non-routable IP number
+	 * @throws IllegalArgumentException if the output array is shorter than the input
+	 * @see #isNonRoutable(long)
+	 */
+	public static void isNonRoutable(final int[] ipNumbers, final boolean[] results) throws IllegalArgumentException {
+		ValidateAs.notNull(ipNumbers, "ipNumbers");
+		checkLength(ipNumbers.length, ValidateAs.notNull(results, "results").length);
+		for (int i = 0; i < ipNumbers.length; i++) {
+			final int ipNumber = ipNumbers[i];
+			results[i] = (ipNumber >>> 24) == 10 || (ipNumber >>> 20) == 0xAC1 || (ipNumber >>> 16) == 0xC0A8;
+		}
+	}
+
+	private static void checkLength(final int inputLength, final int outputLength) throws IllegalArgumentException {
+		if (outputLength < inputLength) {
+			throw new IllegalArgumentException(
+					"Output array of length " + outputLength + " cannot hold " + inputLength + " results.");
 		}
-		return false;
 	}
 }
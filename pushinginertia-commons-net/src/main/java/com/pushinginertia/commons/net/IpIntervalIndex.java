@@ -0,0 +1,819 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An immutable index that maps ranges of IP numbers to values. The ranges are stored in sorted primitive arrays of low
+ * and high IP numbers with a parallel array of values, and a lookup is a binary search over the low IP numbers that
+ * allocates nothing.
+ * <p>
+ * The indexed ranges never overlap. Where the given intervals overlap, each IP number is mapped to the value of the
+ * first interval in the list that contains it, and intervals are split around the ranges of earlier intervals.
+ * <p>
+ * IPv6 ranges are kept apart from IPv4 ranges, with each 128-bit IP number split across two arrays of its upper and
+ * lower 64 bits, so IPv6 lookups are also a binary search that allocates nothing.
+ * @param <T> Type of the value that each range maps to.
+ */
+public final class IpIntervalIndex<T> {
+	/**
+	 * Highest IPv4 number (255.255.255.255).
+	 */
+	static final long MAX_IP_NUMBER = 0xFFFFFFFFL;
+	/**
+	 * Number of IP numbers of a batch lookup that are sorted and walked together, sized so that the keys fit in cache.
+	 */
+	private static final int CHUNK_SIZE = 1 << 15;
+
+	private final long[] lows;
+	private final long[] highs;
+	private final Object[] values;
+
+	/**
+	 * Upper and lower 64 bits of the low and high IP number of each IPv6 range.
+	 */
+	private final long[] ipv6LowsHigh;
+	private final long[] ipv6LowsLow;
+	private final long[] ipv6HighsHigh;
+	private final long[] ipv6HighsLow;
+	private final Object[] ipv6Values;
+
+	/**
+	 * A range of IP numbers (inclusive) and the value that it maps to.
+	 * @param <T> Type of the value.
+	 */
+	public static final class Interval<T> implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * IPv4 numbers, or the lower 64 bits of IPv6 numbers.
+		 */
+		private final long low;
+		private final long high;
+		/**
+		 * Upper 64 bits of IPv6 numbers.
+		 */
+		private final long lowHighBits;
+		private final long highHighBits;
+		private final boolean ipv6;
+		private final T value;
+
+		/**
+		 * Creates an interval of IPv4 numbers.
+		 * @param low Lowest IP number in the range.
+		 * @param high Highest IP number in the range.
+		 * @param value Value that the range maps to.
+		 * @throws IllegalArgumentException if the range is empty or isn't made up of IPv4 numbers
+		 */
+		public Interval(final long low, final long high, final T value) throws IllegalArgumentException {
+			this(false, 0, low, 0, high, value);
+		}
+
+		/**
+		 * Creates an interval of IPv4 or IPv6 addresses.
+		 * @param lowAddress Lowest IP address in the range.
+		 * @param highAddress Highest IP address in the range.
+		 * @param value Value that the range maps to.
+		 * @throws IllegalArgumentException if the range is empty or mixes IPv4 and IPv6 addresses
+		 */
+		public Interval(final IpAddress lowAddress, final IpAddress highAddress, final T value)
+				throws IllegalArgumentException {
+			this(
+					isIpv6(lowAddress, highAddress),
+					lowAddress.getHighBits(),
+					lowAddress.getLowBits(),
+					highAddress.getHighBits(),
+					highAddress.getLowBits(),
+					value);
+		}
+
+		/**
+		 * Creates an interval for a range of IP addresses.
+		 * @param range Range of IP addresses.
+		 * @param value Value that the range maps to.
+		 */
+		public Interval(final IpAddressRange range, final T value) {
+			this(range.getLowAddress(), range.getHighAddress(), value);
+		}
+
+		private Interval(
+				final boolean ipv6,
+				final long lowHighBits,
+				final long low,
+				final long highHighBits,
+				final long high,
+				final T value) throws IllegalArgumentException {
+			if (ipv6) {
+				if (IpAddressUtils.compareIpv6(lowHighBits, low, highHighBits, high) > 0) {
+					throw new IllegalArgumentException("Low IP address " + IpAddressUtils.toIpv6Address(lowHighBits, low) +
+							" is above high IP address " + IpAddressUtils.toIpv6Address(highHighBits, high));
+				}
+			} else {
+				if (low < 0 || high > MAX_IP_NUMBER) {
+					throw new IllegalArgumentException("Not a range of IPv4 numbers: " + low + " - " + high);
+				}
+				if (low > high) {
+					throw new IllegalArgumentException("Low IP number " + low + " is above high IP number " + high);
+				}
+			}
+			this.ipv6 = ipv6;
+			this.lowHighBits = lowHighBits;
+			this.low = low;
+			this.highHighBits = highHighBits;
+			this.high = high;
+			this.value = value;
+		}
+
+		private static boolean isIpv6(final IpAddress lowAddress, final IpAddress highAddress) {
+			if (lowAddress.isIpv6() != highAddress.isIpv6()) {
+				throw new IllegalArgumentException(
+						"Cannot mix IPv4 and IPv6 addresses: " + lowAddress + " - " + highAddress);
+			}
+			return lowAddress.isIpv6();
+		}
+
+		/**
+		 * Returns the lowest IPv4 number in the range, or the lower 64 bits of the lowest IPv6 number.
+		 * @return lowest IP number
+		 */
+		public long getLow() {
+			return low;
+		}
+
+		/**
+		 * Returns the highest IPv4 number in the range, or the lower 64 bits of the highest IPv6 number.
+		 * @return highest IP number
+		 */
+		public long getHigh() {
+			return high;
+		}
+
+		public IpAddress getLowAddress() {
+			return ipv6 ? new IpAddress(lowHighBits, low) : new IpAddress(low);
+		}
+
+		public IpAddress getHighAddress() {
+			return ipv6 ? new IpAddress(highHighBits, high) : new IpAddress(high);
+		}
+
+		public boolean isIpv6() {
+			return ipv6;
+		}
+
+		public T getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			if (ipv6) {
+				return "Interval{low=" + getLowAddress().getIpAddress() + ", high=" + getHighAddress().getIpAddress() +
+						", value=" + value + '}';
+			}
+			return "Interval{low=" + low + ", high=" + high + ", value=" + value + '}';
+		}
+	}
+
+	/**
+	 * Builds an index from a list of intervals in O(n log n).
+	 * @param intervals Intervals to index, in order of precedence where they overlap.
+	 */
+	public IpIntervalIndex(final List<Interval<T>> intervals) {
+		ValidateAs.notNull(intervals, "intervals");
+		final int n = intervals.size();
+		final long[] lows = new long[n];
+		final long[] highs = new long[n];
+		// position in the list of each IPv4 interval
+		final int[] positions = new int[n];
+		final List<Interval<T>> ipv6Intervals = new ArrayList<Interval<T>>();
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			final Interval<T> interval = intervals.get(i);
+			if (interval.ipv6) {
+				ipv6Intervals.add(interval);
+			} else {
+				lows[count] = interval.low;
+				highs[count] = interval.high;
+				positions[count] = i;
+				count++;
+			}
+		}
+
+		final Ranges ranges = flatten(lows, highs, count);
+		this.lows = ranges.lows;
+		this.highs = ranges.highs;
+		this.values = new Object[ranges.owners.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = intervals.get(positions[ranges.owners[i]]).value;
+		}
+
+		final List<long[]> ipv6Ranges = flattenIpv6(ipv6Intervals);
+		final int ipv6Count = ipv6Ranges.size();
+		this.ipv6LowsHigh = new long[ipv6Count];
+		this.ipv6LowsLow = new long[ipv6Count];
+		this.ipv6HighsHigh = new long[ipv6Count];
+		this.ipv6HighsLow = new long[ipv6Count];
+		this.ipv6Values = new Object[ipv6Count];
+		for (int i = 0; i < ipv6Count; i++) {
+			final long[] range = ipv6Ranges.get(i);
+			ipv6LowsHigh[i] = range[0];
+			ipv6LowsLow[i] = range[1];
+			ipv6HighsHigh[i] = range[2];
+			ipv6HighsLow[i] = range[3];
+			ipv6Values[i] = ipv6Intervals.get((int) range[4]).value;
+		}
+	}
+
+	/**
+	 * Non-overlapping ranges sorted by IP number, each with the position of the interval it was taken from.
+	 */
+	static final class Ranges {
+		final long[] lows;
+		final long[] highs;
+		final int[] owners;
+
+		Ranges(final long[] lows, final long[] highs, final int[] owners) {
+			this.lows = lows;
+			this.highs = highs;
+			this.owners = owners;
+		}
+	}
+
+	/**
+	 * Splits possibly overlapping intervals into sorted, non-overlapping ranges. Each IP number is assigned to the
+	 * first interval that contains it, and adjacent ranges assigned to the same interval are merged.
+	 * @param lows Lowest IPv4 number of each interval.
+	 * @param highs Highest IPv4 number of each interval.
+	 * @param n Number of intervals in the arrays, in order of precedence.
+	 * @return Flattened ranges.
+	 */
+	static Ranges flatten(final long[] lows, final long[] highs, final int n) {
+		// every point where the set of intervals that contain an IP number can change
+		final long[] boundaries = new long[n * 2];
+		// intervals ordered by their low IP number, packed with their position in the arrays
+		final long[] byLow = new long[n];
+		for (int i = 0; i < n; i++) {
+			boundaries[2 * i] = lows[i];
+			boundaries[2 * i + 1] = highs[i] + 1;
+			byLow[i] = (lows[i] << 31) | i;
+		}
+		Arrays.sort(boundaries);
+		Arrays.sort(byLow);
+
+		final long[] rangeLows = new long[n * 2];
+		final long[] rangeHighs = new long[n * 2];
+		final int[] owners = new int[n * 2];
+		int count = 0;
+
+		// sweep the boundaries, keeping the intervals that have started in a queue ordered by their position; an
+		// interval that has ended is only discarded once it reaches the head of the queue
+		final PriorityQueue<Integer> started = new PriorityQueue<Integer>();
+		int next = 0;
+		for (int b = 0; b < boundaries.length - 1; b++) {
+			final long point = boundaries[b];
+			final long end = boundaries[b + 1] - 1;
+			if (end < point) {
+				// duplicate boundary
+				continue;
+			}
+			while (next < n && (byLow[next] >>> 31) <= point) {
+				started.add((int) (byLow[next++] & Integer.MAX_VALUE));
+			}
+			while (!started.isEmpty() && highs[started.peek()] < point) {
+				started.poll();
+			}
+			if (started.isEmpty()) {
+				continue;
+			}
+			final int owner = started.peek();
+			if (count > 0 && owners[count - 1] == owner && rangeHighs[count - 1] == point - 1) {
+				rangeHighs[count - 1] = end;
+			} else {
+				rangeLows[count] = point;
+				rangeHighs[count] = end;
+				owners[count] = owner;
+				count++;
+			}
+		}
+		return new Ranges(
+				Arrays.copyOf(rangeLows, count),
+				Arrays.copyOf(rangeHighs, count),
+				Arrays.copyOf(owners, count));
+	}
+
+	/**
+	 * Splits possibly overlapping IPv6 intervals into sorted, non-overlapping ranges, with the same precedence as
+	 * {@link #flatten(long[], long[], int)}. Each interval in turn claims the gaps that earlier intervals left within its
+	 * range, and the ranges claimed so far are coalesced in a tree map so that each one is only stepped over once.
+	 * @param intervals IPv6 intervals in order of precedence.
+	 * @return Ranges sorted by IP number, each as the upper and lower bits of its low and high IP numbers followed by
+	 * the position of the interval it was taken from.
+	 */
+	static List<long[]> flattenIpv6(final List<? extends Interval<?>> intervals) {
+		final List<long[]> pieces = new ArrayList<long[]>();
+		final TreeMap<IpAddress, IpAddress> claimed = new TreeMap<IpAddress, IpAddress>();
+		for (int i = 0; i < intervals.size(); i++) {
+			final Interval<?> interval = intervals.get(i);
+			final IpAddress low = interval.getLowAddress();
+			final IpAddress high = interval.getHighAddress();
+			IpAddress mergedLow = low;
+			IpAddress mergedHigh = high;
+			IpAddress cursor = low;
+
+			final Map.Entry<IpAddress, IpAddress> before = claimed.lowerEntry(low);
+			if (before != null && before.getValue().compareTo(low) >= 0) {
+				if (before.getValue().compareTo(high) >= 0) {
+					// entirely hidden by earlier intervals
+					continue;
+				}
+				mergedLow = before.getKey();
+				cursor = increment(before.getValue());
+				claimed.remove(before.getKey());
+			}
+			Map.Entry<IpAddress, IpAddress> entry = claimed.ceilingEntry(low);
+			while (cursor != null && entry != null && entry.getKey().compareTo(high) <= 0) {
+				if (entry.getKey().compareTo(cursor) > 0) {
+					pieces.add(piece(cursor, decrement(entry.getKey()), i));
+				}
+				if (entry.getValue().compareTo(high) >= 0) {
+					mergedHigh = entry.getValue();
+					cursor = null;
+				} else {
+					cursor = increment(entry.getValue());
+				}
+				claimed.remove(entry.getKey());
+				entry = claimed.higherEntry(entry.getKey());
+			}
+			if (cursor != null) {
+				pieces.add(piece(cursor, high, i));
+			}
+			claimed.put(mergedLow, mergedHigh);
+		}
+
+		Collections.sort(pieces, new Comparator<long[]>() {
+			@Override
+			public int compare(final long[] a, final long[] b) {
+				return IpAddressUtils.compareIpv6(a[0], a[1], b[0], b[1]);
+			}
+		});
+		// merge adjacent ranges taken from the same interval
+		final List<long[]> ranges = new ArrayList<long[]>(pieces.size());
+		for (final long[] piece: pieces) {
+			if (!ranges.isEmpty()) {
+				final long[] last = ranges.get(ranges.size() - 1);
+				if (last[4] == piece[4] && last[3] + 1 == piece[1] && last[2] + (last[3] == -1L ? 1 : 0) == piece[0]) {
+					last[2] = piece[2];
+					last[3] = piece[3];
+					continue;
+				}
+			}
+			ranges.add(piece);
+		}
+		return ranges;
+	}
+
+	private static long[] piece(final IpAddress low, final IpAddress high, final int owner) {
+		return new long[] {low.getHighBits(), low.getLowBits(), high.getHighBits(), high.getLowBits(), owner};
+	}
+
+	/**
+	 * Adds one to an IPv6 address that is below the highest address.
+	 */
+	private static IpAddress increment(final IpAddress address) {
+		final long lowBits = address.getLowBits() + 1;
+		return new IpAddress(address.getHighBits() + (lowBits == 0 ? 1 : 0), lowBits);
+	}
+
+	/**
+	 * Subtracts one from an IPv6 address that is above the lowest address.
+	 */
+	private static IpAddress decrement(final IpAddress address) {
+		final long lowBits = address.getLowBits() - 1;
+		return new IpAddress(address.getHighBits() - (lowBits == -1L ? 1 : 0), lowBits);
+	}
+
+	/**
+	 * Finds the range that contains an IP number.
+	 * @param ipNumber IP number to look up.
+	 * @return Index of the range, or -1 if no range contains the IP number.
+	 */
+	int indexOf(final long ipNumber) {
+		// find the last range whose low IP number is at most the given IP number
+		int lo = 0;
+		int hi = lows.length - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (lows[mid] <= ipNumber) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return hi >= 0 && ipNumber <= highs[hi] ? hi : -1;
+	}
+
+	/**
+	 * Returns the value of the range that contains an IP number.
+	 * @param ipNumber IP number to look up.
+	 * @return Value, or null if no range contains the IP number.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(final long ipNumber) {
+		final int index = indexOf(ipNumber);
+		return index < 0 ? null : (T) values[index];
+	}
+
+	/**
+	 * Finds the IPv6 range that contains an IP number.
+	 * @param highBits Upper 64 bits of the IPv6 number to look up.
+	 * @param lowBits Lower 64 bits of the IPv6 number to look up.
+	 * @return Index of the range, or -1 if no range contains the IP number.
+	 */
+	int indexOfIpv6(final long highBits, final long lowBits) {
+		int lo = 0;
+		int hi = ipv6LowsHigh.length - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (IpAddressUtils.compareIpv6(ipv6LowsHigh[mid], ipv6LowsLow[mid], highBits, lowBits) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return hi >= 0 && IpAddressUtils.compareIpv6(highBits, lowBits, ipv6HighsHigh[hi], ipv6HighsLow[hi]) <= 0 ?
+				hi : -1;
+	}
+
+	/**
+	 * Returns the value of the range that contains an IPv6 number.
+	 * @param highBits Upper 64 bits of the IPv6 number to look up.
+	 * @param lowBits Lower 64 bits of the IPv6 number to look up.
+	 * @return Value, or null if no range contains the IP number.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getIpv6(final long highBits, final long lowBits) {
+		final int index = indexOfIpv6(highBits, lowBits);
+		return index < 0 ? null : (T) ipv6Values[index];
+	}
+
+	/**
+	 * Returns the value of the range that contains an IP address.
+	 * @param ipAddress IPv4 or IPv6 address to look up.
+	 * @return Value, or null if no range contains the IP address.
+	 */
+	public T get(final IpAddress ipAddress) {
+		if (ipAddress.isIpv6()) {
+			return getIpv6(ipAddress.getHighBits(), ipAddress.getLowBits());
+		}
+		return get(ipAddress.getIpNumber());
+	}
+
+	/**
+	 * Indicates if an IP number is in any range.
+	 * @param ipNumber IP number to look up.
+	 * @return true if a range contains the IP number
+	 */
+	public boolean exists(final long ipNumber) {
+		return indexOf(ipNumber) >= 0;
+	}
+
+	/**
+	 * Indicates if an IP address is in any range.
+	 * @param ipAddress IPv4 or IPv6 address to look up.
+	 * @return true if a range contains the IP address
+	 */
+	public boolean exists(final IpAddress ipAddress) {
+		if (ipAddress.isIpv6()) {
+			return indexOfIpv6(ipAddress.getHighBits(), ipAddress.getLowBits()) >= 0;
+		}
+		return indexOf(ipAddress.getIpNumber()) >= 0;
+	}
+
+	/**
+	 * Looks up a batch of IPv4 numbers, such as the client addresses of an access log. The batch is processed in
+	 * chunks that fit in cache: each chunk's IP numbers are radix sorted together with their positions and then walked
+	 * alongside the sorted ranges, so the cost per IP number is a few sequential passes over memory rather than a binary
+	 * search.
+	 * @param ipNumbers IPv4 numbers to look up; numbers outside the IPv4 range are treated as not found.
+	 * @param values Array that receives the value of the range that contains each IP number at the same index, or
+	 * null if no range contains it.
+	 * @param parallel true to process the chunks in parallel on the common fork-join pool
+	 * @throws IllegalArgumentException if the output array is shorter than the input
+	 */
+	public void getAll(final long[] ipNumbers, final T[] values, final boolean parallel)
+			throws IllegalArgumentException {
+		ValidateAs.notNull(ipNumbers, "ipNumbers");
+		checkLength(ipNumbers.length, ValidateAs.notNull(values, "values").length);
+		lookupAll(ipNumbers, null, values, null, parallel);
+	}
+
+	/**
+	 * Looks up a batch of IPv4 numbers held as unsigned ints.
+	 * @param ipNumbers IPv4 numbers to look up, each read as an unsigned int.
+	 * @param values Array that receives the value of the range that contains each IP number at the same index, or
+	 * null if no range contains it.
+	 * @param parallel true to process the chunks in parallel on the common fork-join pool
+	 * @throws IllegalArgumentException if the output array is shorter than the input
+	 * @see #getAll(long[], Object[], boolean)
+	 */
+	public void getAll(final int[] ipNumbers, final T[] values, final boolean parallel)
+			throws IllegalArgumentException {
+		ValidateAs.notNull(ipNumbers, "ipNumbers");
+		checkLength(ipNumbers.length, ValidateAs.notNull(values, "values").length);
+		lookupAll(null, ipNumbers, values, null, parallel);
+	}
+
+	/**
+	 * Indicates for a batch of IPv4 numbers if each is in any range.
+	 * @param ipNumbers IPv4 numbers to look up; numbers outside the IPv4 range are treated as not found.
+	 * @param results Array that receives true at the index of each IP number that a range contains.
+	 * @param parallel true to process the chunks in parallel on the common fork-join pool
+	 * @throws IllegalArgumentException if the output array is shorter than the input
+	 * @see #getAll(long[], Object[], boolean)
+	 */
+	public void existsAll(final long[] ipNumbers, final boolean[] results, final boolean parallel)
+			throws IllegalArgumentException {
+		ValidateAs.notNull(ipNumbers, "ipNumbers");
+		checkLength(ipNumbers.length, ValidateAs.notNull(results, "results").length);
+		lookupAll(ipNumbers, null, null, results, parallel);
+	}
+
+	/**
+	 * Indicates for a batch of IPv4 numbers held as unsigned ints if each is in any range.
+	 * @param ipNumbers IPv4 numbers to look up, each read as an unsigned int.
+	 * @param results Array that receives true at the index of each IP number that a range contains.
+	 * @param parallel true to process the chunks in parallel on the common fork-join pool
+	 * @throws IllegalArgumentException if the output array is shorter than the input
+	 * @see #getAll(long[], Object[], boolean)
+	 */
+	public void existsAll(final int[] ipNumbers, final boolean[] results, final boolean parallel)
+			throws IllegalArgumentException {
+		ValidateAs.notNull(ipNumbers, "ipNumbers");
+		checkLength(ipNumbers.length, ValidateAs.notNull(results, "results").length);
+		lookupAll(null, ipNumbers, null, results, parallel);
+	}
+
+	private static void checkLength(final int inputLength, final int outputLength) throws IllegalArgumentException {
+		if (outputLength < inputLength) {
+			throw new IllegalArgumentException(
+					"Output array of length " + outputLength + " cannot hold " + inputLength + " results.");
+		}
+	}
+
+	/**
+	 * Runs a batch lookup over either long or int IP numbers, writing either values or existence flags.
+	 */
+	private void lookupAll(
+			final long[] longIpNumbers,
+			final int[] intIpNumbers,
+			final Object[] values,
+			final boolean[] results,
+			final boolean parallel) {
+		final int length = longIpNumbers != null ? longIpNumbers.length : intIpNumbers.length;
+		if (!parallel || length <= CHUNK_SIZE) {
+			lookupChunks(longIpNumbers, intIpNumbers, values, results, 0, length);
+		} else {
+			ForkJoinPool.commonPool().invoke(
+					new LookupTask(this, longIpNumbers, intIpNumbers, values, results, 0, length));
+		}
+	}
+
+	/**
+	 * Looks up the chunks of a slice of a batch in sequence, sharing the scratch arrays between them.
+	 */
+	private void lookupChunks(
+			final long[] longIpNumbers,
+			final int[] intIpNumbers,
+			final Object[] values,
+			final boolean[] results,
+			final int from,
+			final int to) {
+		final int size = Math.min(to - from, CHUNK_SIZE);
+		final long[] keys = new long[size];
+		final long[] scratch = new long[size];
+		for (int start = from; start < to; start += CHUNK_SIZE) {
+			lookupChunk(
+					longIpNumbers, intIpNumbers, values, results,
+					start, Math.min(start + CHUNK_SIZE, to), keys, scratch);
+		}
+	}
+
+	/**
+	 * Looks up one chunk of a batch.
+	 * @param keys Scratch array of at least the chunk's length.
+	 * @param scratch Second scratch array of the same length.
+	 */
+	private void lookupChunk(
+			final long[] longIpNumbers,
+			final int[] intIpNumbers,
+			final Object[] values,
+			final boolean[] results,
+			final int from,
+			final int to,
+			final long[] keys,
+			final long[] scratch) {
+		// pack each IP number above its offset within the chunk
+		int count = 0;
+		if (longIpNumbers != null) {
+			for (int i = from; i < to; i++) {
+				final long ipNumber = longIpNumbers[i];
+				if (ipNumber >= 0 && ipNumber <= MAX_IP_NUMBER) {
+					keys[count++] = (ipNumber << 32) | (i - from);
+				} else if (values != null) {
+					values[i] = null;
+				} else {
+					results[i] = false;
+				}
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				keys[count++] = ((long) intIpNumbers[i] << 32) | (i - from);
+			}
+		}
+
+		final long[] sorted = radixSortIpNumbers(keys, scratch, count);
+
+		// walk the sorted IP numbers alongside the ranges
+		final int n = lows.length;
+		int r = 0;
+		for (int k = 0; k < count; k++) {
+			final long key = sorted[k];
+			final long ipNumber = key >>> 32;
+			final int position = from + (int) key;
+			if (r < n && highs[r] < ipNumber) {
+				r = firstEndingAtOrAfter(ipNumber, r);
+			}
+			final boolean found = r < n && lows[r] <= ipNumber;
+			if (values != null) {
+				values[position] = found ? this.values[r] : null;
+			} else {
+				results[position] = found;
+			}
+		}
+	}
+
+	/**
+	 * Sorts keys by their upper 32 bits with a least significant digit radix sort, one byte per pass. Passes over a
+	 * byte that is the same in every key are skipped.
+	 * @param keys Keys to sort.
+	 * @param scratch Array of at least the same length to sort through.
+	 * @param count Number of keys.
+	 * @return Whichever of the two arrays holds the sorted keys.
+	 */
+	static long[] radixSortIpNumbers(final long[] keys, final long[] scratch, final int count) {
+		long[] from = keys;
+		long[] to = scratch;
+		final int[] offsets = new int[256];
+		for (int shift = 32; shift < 64; shift += 8) {
+			Arrays.fill(offsets, 0);
+			for (int k = 0; k < count; k++) {
+				offsets[(int) (from[k] >>> shift) & 0xFF]++;
+			}
+			if (count == 0 || offsets[(int) (from[0] >>> shift) & 0xFF] == count) {
+				continue;
+			}
+			int offset = 0;
+			for (int b = 0; b < 256; b++) {
+				final int c = offsets[b];
+				offsets[b] = offset;
+				offset += c;
+			}
+			for (int k = 0; k < count; k++) {
+				final long key = from[k];
+				to[offsets[(int) (key >>> shift) & 0xFF]++] = key;
+			}
+			final long[] swap = from;
+			from = to;
+			to = swap;
+		}
+		return from;
+	}
+
+	/**
+	 * Finds the first range at or after a position whose high IP number is at least the given IP number.
+	 * @param ipNumber IP number to look for.
+	 * @param from Position of a range whose high IP number is below the IP number.
+	 * @return Position of the range, or the number of ranges if there is none.
+	 */
+	private int firstEndingAtOrAfter(final long ipNumber, final int from) {
+		final int n = highs.length;
+		// gallop to bracket the range, then binary search within the bracket
+		int lo = from + 1;
+		int step = 1;
+		int hi = lo;
+		while (hi < n && highs[hi] < ipNumber) {
+			lo = hi + 1;
+			hi += step;
+			step <<= 1;
+		}
+		hi = Math.min(hi, n);
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (highs[mid] < ipNumber) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static final class LookupTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final IpIntervalIndex<?> index;
+		private final long[] longIpNumbers;
+		private final int[] intIpNumbers;
+		private final Object[] values;
+		private final boolean[] results;
+		private final int from;
+		private final int to;
+
+		private LookupTask(
+				final IpIntervalIndex<?> index,
+				final long[] longIpNumbers,
+				final int[] intIpNumbers,
+				final Object[] values,
+				final boolean[] results,
+				final int from,
+				final int to) {
+			this.index = index;
+			this.longIpNumbers = longIpNumbers;
+			this.intIpNumbers = intIpNumbers;
+			this.values = values;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= CHUNK_SIZE) {
+				index.lookupChunks(longIpNumbers, intIpNumbers, values, results, from, to);
+			} else {
+				// split on a chunk boundary
+				final int chunks = (to - from + CHUNK_SIZE - 1) / CHUNK_SIZE;
+				final int middle = from + (chunks / 2) * CHUNK_SIZE;
+				invokeAll(
+						new LookupTask(index, longIpNumbers, intIpNumbers, values, results, from, middle),
+						new LookupTask(index, longIpNumbers, intIpNumbers, values, results, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of non-overlapping ranges in the index, which can be more than the number of intervals it was
+	 * built from if overlapping intervals were split.
+	 * @return Number of ranges.
+	 */
+	public int size() {
+		return lows.length + ipv6LowsHigh.length;
+	}
+
+	/**
+	 * Returns the number of IPv4 ranges, which are numbered before the IPv6 ranges.
+	 * @return Number of IPv4 ranges.
+	 */
+	int ipv4Size() {
+		return lows.length;
+	}
+
+	long getLow(final int index) {
+		return lows[index];
+	}
+
+	long getHigh(final int index) {
+		return highs[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	T getValue(final int index) {
+		return (T) values[index];
+	}
+}
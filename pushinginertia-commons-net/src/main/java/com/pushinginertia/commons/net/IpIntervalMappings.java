@@ -17,41 +17,98 @@ package com.pushinginertia.commons.net;
 
 import com.pushinginertia.commons.core.init.CsvResourceListInitializer;
 import com.pushinginertia.commons.core.init.ListInitializer;
-import edu.jwetherell.algorithms.dataStructures.IntervalTree;
+import com.pushinginertia.commons.core.validation.ValidateAs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Contains a set of IP intervals, each mapping to a value that identifies the IP range.
+ * Contains a set of IP intervals, each mapping to a value that identifies the IP range. Intervals are stored in an
+ * {@link IpIntervalIndex}, so lookups are a binary search that allocates nothing. Where intervals overlap, the one that
+ * comes first in the initialized list takes precedence.
+ * <p>
+ * The intervals can be reloaded from the initializer while the instance is in use, such as from a
+ * {@link CsvFileInitializer} on a schedule. A new index is built aside and published atomically, so lookups never
+ * block and each one sees either the old or the new index in full. If a reload fails, the last index that loaded
+ * successfully continues to be served.
  */
 public class IpIntervalMappings<T> {
 	private static final Logger LOG = LoggerFactory.getLogger(IpIntervalMappings.class);
 
-	private IntervalTree<T> tree;
+	private final ListInitializer<IpIntervalIndex.Interval<T>> initializer;
+	private final AtomicReference<Snapshot<T>> snapshot = new AtomicReference<>();
 
-	public IpIntervalMappings(final ListInitializer<IntervalTree.IntervalData<T>> initializer) {
+	/**
+	 * Reload metrics that aren't tied to the published index, only written while holding the lock on this instance.
+	 */
+	private volatile long lastReloadDurationNanos;
+	private volatile long reloadCount;
+	private volatile long reloadFailureCount;
+
+	public IpIntervalMappings(final ListInitializer<IpIntervalIndex.Interval<T>> initializer) {
+		this.initializer = ValidateAs.notNull(initializer, "initializer");
+		reload();
+	}
+
+	/**
+	 * Rebuilds the index from the initializer and publishes it once it is complete. Lookups continue against the
+	 * current index while this runs. Concurrent calls run one at a time.
+	 * @return true if the new index was published, false if the initializer failed and the current index was kept
+	 */
+	public synchronized boolean reload() {
+		final long start = System.nanoTime();
 		try {
-			final List<IntervalTree.IntervalData<T>> list = initializer.newList();
-			tree = new IntervalTree<>(list);
+			final List<IpIntervalIndex.Interval<T>> list = initializer.newList();
+			final IpIntervalIndex<T> newIndex = new IpIntervalIndex<>(list);
+			snapshot.set(new Snapshot<>(newIndex, list.size(), System.currentTimeMillis()));
+			reloadCount++;
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Loaded " + list.size() + " intervals into " + newIndex.size() + " ranges in " +
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms: " + getClass().getName());
+			}
+			return true;
 		} catch (final Exception e) {
-			LOG.error("A failure occurred initializing class: " + this.getClass().getName(), e);
-			tree = null;
+			reloadFailureCount++;
+			if (snapshot.get() == null) {
+				LOG.error("A failure occurred initializing class: " + this.getClass().getName(), e);
+			} else {
+				LOG.error("A failure occurred reloading class, keeping the previous intervals: " +
+						this.getClass().getName(), e);
+			}
+			return false;
+		} finally {
+			lastReloadDurationNanos = System.nanoTime() - start;
 		}
 	}
 
+	/**
+	 * Reloads the intervals in the background at a fixed delay after each reload completes. Failed reloads are logged
+	 * and don't stop later ones.
+	 * @param executor executor that runs the reloads
+	 * @param delay time between the end of a reload and the start of the next
+	 * @param unit unit of the delay
+	 * @return handle to cancel the reloads
+	 */
+	public ScheduledFuture<?> scheduleReload(
+			final ScheduledExecutorService executor,
+			final long delay,
+			final TimeUnit unit) {
+		ValidateAs.notNull(executor, "executor");
+		ValidateAs.notNull(unit, "unit");
+		return executor.scheduleWithFixedDelay(this::reload, delay, delay, unit);
+	}
+
 	public T get(final IpAddress ipAddress) {
-		if (tree == null) {
-			throw new IllegalStateException("Class did not initialize successfully.");
-		}
-		final IntervalTree.IntervalData<T> data = tree.query(ipAddress.getIpNumber());
-		if (data == null) {
-			return null;
-		}
-		final Set<T> matches = data.matches();
-		return matches.iterator().next();
+		return getIndex().get(ipAddress);
 	}
 
 	/**
@@ -60,24 +117,142 @@ public class IpIntervalMappings<T> {
 	 * @return true if an interval contains the given IP address
 	 */
 	public boolean exists(final IpAddress ipAddress) {
-		if (tree == null) {
+		return getIndex().exists(ipAddress);
+	}
+
+	/**
+	 * Looks up a batch of IPv4 numbers without creating an {@link IpAddress} for each one.
+	 * @param ipNumbers IPv4 numbers to look up
+	 * @param values array that receives the value mapped to each IP number at the same index, or null if none is
+	 * @param parallel true to process the batch in parallel on the common fork-join pool
+	 * @see IpIntervalIndex#getAll(long[], Object[], boolean)
+	 */
+	public void getAll(final long[] ipNumbers, final T[] values, final boolean parallel) {
+		getIndex().getAll(ipNumbers, values, parallel);
+	}
+
+	/**
+	 * Looks up a batch of IPv4 numbers held as unsigned ints without creating an {@link IpAddress} for each one.
+	 * @param ipNumbers IPv4 numbers to look up
+	 * @param values array that receives the value mapped to each IP number at the same index, or null if none is
+	 * @param parallel true to process the batch in parallel on the common fork-join pool
+	 * @see IpIntervalIndex#getAll(int[], Object[], boolean)
+	 */
+	public void getAll(final int[] ipNumbers, final T[] values, final boolean parallel) {
+		getIndex().getAll(ipNumbers, values, parallel);
+	}
+
+	/**
+	 * Indicates for a batch of IPv4 numbers if each exists in at least one interval.
+	 * @param ipNumbers IPv4 numbers to test
+	 * @param results array that receives true at the index of each IP number that an interval contains
+	 * @param parallel true to process the batch in parallel on the common fork-join pool
+	 * @see IpIntervalIndex#existsAll(long[], boolean[], boolean)
+	 */
+	public void existsAll(final long[] ipNumbers, final boolean[] results, final boolean parallel) {
+		getIndex().existsAll(ipNumbers, results, parallel);
+	}
+
+	/**
+	 * Indicates for a batch of IPv4 numbers held as unsigned ints if each exists in at least one interval.
+	 * @param ipNumbers IPv4 numbers to test
+	 * @param results array that receives true at the index of each IP number that an interval contains
+	 * @param parallel true to process the batch in parallel on the common fork-join pool
+	 * @see IpIntervalIndex#existsAll(int[], boolean[], boolean)
+	 */
+	public void existsAll(final int[] ipNumbers, final boolean[] results, final boolean parallel) {
+		getIndex().existsAll(ipNumbers, results, parallel);
+	}
+
+	/**
+	 * Returns the number of intervals that the current index was built from.
+	 * @return interval count, 0 if no index has loaded
+	 */
+	public int getIntervalCount() {
+		final Snapshot<T> current = snapshot.get();
+		return current == null ? 0 : current.intervalCount;
+	}
+
+	/**
+	 * Returns the number of non-overlapping ranges in the current index.
+	 * @return range count, 0 if no index has loaded
+	 * @see IpIntervalIndex#size()
+	 */
+	public int getRangeCount() {
+		final Snapshot<T> current = snapshot.get();
+		return current == null ? 0 : current.index.size();
+	}
+
+	/**
+	 * Returns when the current index was published.
+	 * @return time in milliseconds since the epoch, 0 if no index has loaded
+	 */
+	public long getLastReloadTime() {
+		final Snapshot<T> current = snapshot.get();
+		return current == null ? 0 : current.loadTime;
+	}
+
+	/**
+	 * Returns how long the last reload took, whether it succeeded or not.
+	 * @return duration in nanoseconds
+	 */
+	public long getLastReloadDurationNanos() {
+		return lastReloadDurationNanos;
+	}
+
+	/**
+	 * Returns the number of successful loads, including the initial one.
+	 * @return reload count
+	 */
+	public long getReloadCount() {
+		return reloadCount;
+	}
+
+	/**
+	 * Returns the number of loads that failed, including a failed initial one.
+	 * @return failure count
+	 */
+	public long getReloadFailureCount() {
+		return reloadFailureCount;
+	}
+
+	/**
+	 * Returns the current index, read once so that a batch lookup runs against a single index.
+	 */
+	private IpIntervalIndex<T> getIndex() {
+		final Snapshot<T> current = snapshot.get();
+		if (current == null) {
 			throw new IllegalStateException("Class did not initialize successfully.");
 		}
-		final IntervalTree.IntervalData<T> data = tree.query(ipAddress.getIpNumber());
-		return data != null;
+		return current.index;
+	}
+
+	/**
+	 * An index published together with the metrics that describe it, so they are always read consistently.
+	 */
+	private static final class Snapshot<T> {
+		private final IpIntervalIndex<T> index;
+		private final int intervalCount;
+		private final long loadTime;
+
+		Snapshot(final IpIntervalIndex<T> index, final int intervalCount, final long loadTime) {
+			this.index = index;
+			this.intervalCount = intervalCount;
+			this.loadTime = loadTime;
+		}
 	}
 
 	/**
 	 * A convenience class that initializes the dataset from a CSV file packaged within the root of the JAR file
 	 * containing this class.
 	 */
-	public static class CsvInitializer extends CsvResourceListInitializer<IntervalTree.IntervalData<String>> {
+	public static class CsvInitializer extends CsvResourceListInitializer<IpIntervalIndex.Interval<String>> {
 		public CsvInitializer(final Class c) {
 			super(c);
 		}
 
 		@Override
-		protected IntervalTree.IntervalData<String> transformCsvData(int lineNumber, String[] csvData, final String rawData) {
+		protected IpIntervalIndex.Interval<String> transformCsvData(int lineNumber, String[] csvData, final String rawData) {
 			if (csvData.length < 2) {
 				throw new IllegalArgumentException("Two fields are required on line " + lineNumber + ": " + rawData);
 			}
@@ -88,10 +263,34 @@ public class IpIntervalMappings<T> {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Adding " + range + " => " + netName);
 			}
-			return new IntervalTree.IntervalData<>(
-					range.getLowAddress().getIpNumber(),
-					range.getHighAddress().getIpNumber(),
-					netName);
+			return new IpIntervalIndex.Interval<>(range, netName);
+		}
+	}
+
+	/**
+	 * Initializes the dataset from a CSV file on the file system, in the same format as {@link CsvInitializer}. The
+	 * file is read again on each reload, so it can be replaced while the mappings are in use.
+	 */
+	public static class CsvFileInitializer extends CsvInitializer {
+		private final File file;
+
+		public CsvFileInitializer(final File file) {
+			super(IpIntervalMappings.class);
+			this.file = ValidateAs.notNull(file, "file");
+		}
+
+		@Override
+		protected String getResourceName() {
+			return file.getPath();
+		}
+
+		@Override
+		protected InputStream getResourceStream(final String resourceName) {
+			try {
+				return new FileInputStream(file);
+			} catch (final FileNotFoundException e) {
+				return null;
+			}
 		}
 	}
 }
@@ -0,0 +1,369 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only database of IPv4 ranges and the string values they map to (such as country codes or network names),
+ * stored in a compact binary file that is memory-mapped when opened. Lookups are a binary search over the mapped file,
+ * so no heap objects are created per range and millions of ranges can be opened almost instantly.
+ * <p>
+ * The file is compiled from the same CSV format read by {@link IpIntervalMappings.CsvInitializer}: one
+ * <code>range,value</code> pair per line, where the range is in any format accepted by
+ * {@link IpAddressRange#parse(String)}. Empty lines and lines starting with <code>#</code> are ignored. Where ranges
+ * overlap, the one that comes first in the file takes precedence.
+ * <p>
+ * File layout (big-endian):
+ * <ol>
+ *     <li>header: magic number, format version, range count, string count (4 ints)</li>
+ *     <li>ranges sorted by IP number: low IP number, high IP number, string index (3 ints per range)</li>
+ *     <li>string table: byte offset of each string plus the end offset (string count + 1 ints)</li>
+ *     <li>UTF-8 bytes of the distinct strings</li>
+ * </ol>
+ * The distinct strings are decoded when the file is opened, so a lookup returns a shared instance. Instances are safe
+ * to use from any number of threads.
+ */
+public final class IpRangeDatabase {
+	static final int MAGIC = 0x49505244; // "IPRD"
+	static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 16;
+	private static final int RANGE_LENGTH = 12;
+
+	private final ByteBuffer buffer;
+	private final int rangeCount;
+	private final String[] strings;
+
+	private IpRangeDatabase(final ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		final long length = buffer.limit();
+		if (length < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an IP range database.");
+		}
+		final int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported IP range database version: " + version);
+		}
+		rangeCount = buffer.getInt(8);
+		final int stringCount = buffer.getInt(12);
+		final long offsetsStart = HEADER_LENGTH + (long) RANGE_LENGTH * rangeCount;
+		final long bytesStart = offsetsStart + 4L * ((long) stringCount + 1);
+		// each string has a 4 byte offset, so bound the count by the bytes left before allocating the table for it
+		if (rangeCount < 0 || stringCount < 0 || offsetsStart > length || stringCount > (length - offsetsStart) / 4 ||
+				bytesStart > length ||
+				bytesStart + buffer.getInt((int) offsetsStart + 4 * stringCount) != length) {
+			throw new IOException("Truncated or corrupt IP range database.");
+		}
+
+		strings = new String[stringCount];
+		final byte[] bytes = new byte[(int) (length - bytesStart)];
+		final ByteBuffer view = buffer.duplicate();
+		view.position((int) bytesStart);
+		view.get(bytes);
+		for (int i = 0; i < stringCount; i++) {
+			final int from = buffer.getInt((int) offsetsStart + 4 * i);
+			final int to = buffer.getInt((int) offsetsStart + 4 * (i + 1));
+			if (from < 0 || to < from || to > bytes.length) {
+				throw new IOException("Corrupt string table in IP range database.");
+			}
+			strings[i] = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+		}
+
+		// lookups binary search the ranges and index the string table, so check both up front in one pass
+		long previousHigh = -1;
+		for (int i = 0; i < rangeCount; i++) {
+			final long low = low(i);
+			final long high = high(i);
+			final int value = buffer.getInt(HEADER_LENGTH + RANGE_LENGTH * i + 8);
+			if (low <= previousHigh || high < low || value < 0 || value >= stringCount) {
+				throw new IOException("Truncated or corrupt IP range database.");
+			}
+			previousHigh = high;
+		}
+	}
+
+	/**
+	 * Memory-maps a database file. The file must not be modified while it is open; replace it with a new file instead.
+	 * @param file Database file written by {@link #compile(Reader, OutputStream)} or {@link #write(IpIntervalIndex, OutputStream)}.
+	 * @return New instance.
+	 * @throws IOException if the file cannot be mapped or isn't a valid database
+	 */
+	public static IpRangeDatabase open(final File file) throws IOException {
+		ValidateAs.notNull(file, "file");
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("IP range database is too large to map: " + file);
+			}
+			// the mapping stays valid once the channel is closed
+			return new IpRangeDatabase(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Compiles a CSV file into a database file.
+	 * @param csvFile CSV file to read.
+	 * @param databaseFile Database file to write.
+	 * @throws IOException if either file cannot be accessed
+	 * @throws IllegalArgumentException if a line of the CSV file is malformed
+	 */
+	public static void compile(final File csvFile, final File databaseFile) throws IOException {
+		ValidateAs.notNull(csvFile, "csvFile");
+		ValidateAs.notNull(databaseFile, "databaseFile");
+		final Reader reader = new InputStreamReader(Files.newInputStream(csvFile.toPath()), StandardCharsets.UTF_8);
+		try {
+			final OutputStream out = new FileOutputStream(databaseFile);
+			try {
+				compile(reader, out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Compiles CSV data into the binary database format. Ranges are parsed into primitive arrays, so compiling millions
+	 * of ranges only creates one object per distinct value.
+	 * @param csv CSV data to read.
+	 * @param out Stream to write the database to (not closed by this method).
+	 * @throws IOException if the data cannot be read or written
+	 * @throws IllegalArgumentException if a line of the CSV data is malformed or contains an IPv6 range
+	 */
+	public static void compile(final Reader csv, final OutputStream out) throws IOException {
+		ValidateAs.notNull(csv, "csv");
+		ValidateAs.notNull(out, "out");
+		final BufferedReader br = new BufferedReader(csv);
+		final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+		final List<String> strings = new ArrayList<String>();
+		long[] lows = new long[1024];
+		long[] highs = new long[1024];
+		int[] stringIndex = new int[1024];
+		int n = 0;
+		int lineNumber = 0;
+		String line;
+		while ((line = br.readLine()) != null) {
+			lineNumber++;
+			final String s = line.trim();
+			if (s.isEmpty() || s.startsWith("#")) {
+				continue;
+			}
+			final String[] ss = s.split("\\s*,\\s*");
+			if (ss.length < 2) {
+				throw new IllegalArgumentException("Two fields are required on line " + lineNumber + ": " + s);
+			}
+			final IpAddressRange range = IpAddressRange.parse(ss[0]);
+			if (range.isIpv6()) {
+				throw new IllegalArgumentException("IPv6 ranges are not supported on line " + lineNumber + ": " + s);
+			}
+			if (n == lows.length) {
+				lows = Arrays.copyOf(lows, n * 2);
+				highs = Arrays.copyOf(highs, n * 2);
+				stringIndex = Arrays.copyOf(stringIndex, n * 2);
+			}
+			Integer index = stringIndexes.get(ss[1]);
+			if (index == null) {
+				index = strings.size();
+				stringIndexes.put(ss[1], index);
+				strings.add(ss[1]);
+			}
+			lows[n] = range.getLowAddress().getIpNumber();
+			highs[n] = range.getHighAddress().getIpNumber();
+			stringIndex[n] = index;
+			n++;
+		}
+
+		final IpIntervalIndex.Ranges ranges = IpIntervalIndex.flatten(lows, highs, n);
+		final int[] values = new int[ranges.owners.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = stringIndex[ranges.owners[i]];
+		}
+		write(ranges.lows, ranges.highs, values, strings, out);
+	}
+
+	/**
+	 * Writes the ranges of an index in the binary database format.
+	 * @param index Index to write.
+	 * @param out Stream to write the database to (not closed by this method).
+	 * @throws IOException if the database cannot be written
+	 * @throws IllegalArgumentException if the index contains IPv6 ranges
+	 */
+	public static void write(final IpIntervalIndex<String> index, final OutputStream out) throws IOException {
+		ValidateAs.notNull(index, "index");
+		ValidateAs.notNull(out, "out");
+		if (index.size() != index.ipv4Size()) {
+			throw new IllegalArgumentException("IPv6 ranges are not supported.");
+		}
+		final int n = index.ipv4Size();
+		final long[] lows = new long[n];
+		final long[] highs = new long[n];
+		final int[] values = new int[n];
+		final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+		final List<String> strings = new ArrayList<String>();
+		for (int i = 0; i < n; i++) {
+			lows[i] = index.getLow(i);
+			highs[i] = index.getHigh(i);
+			final String value = ValidateAs.notNull(index.getValue(i), "value");
+			Integer stringIndex = stringIndexes.get(value);
+			if (stringIndex == null) {
+				stringIndex = strings.size();
+				stringIndexes.put(value, stringIndex);
+				strings.add(value);
+			}
+			values[i] = stringIndex;
+		}
+		write(lows, highs, values, strings, out);
+	}
+
+	private static void write(
+			final long[] lows,
+			final long[] highs,
+			final int[] values,
+			final List<String> strings,
+			final OutputStream out) throws IOException {
+		final byte[][] encoded = new byte[strings.size()][];
+		long byteCount = 0;
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+			byteCount += encoded[i].length;
+		}
+		final long length =
+				HEADER_LENGTH + (long) RANGE_LENGTH * lows.length + 4L * (encoded.length + 1) + byteCount;
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("IP range database would exceed 2GB: " + length + " bytes");
+		}
+
+		final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeInt(lows.length);
+		dos.writeInt(encoded.length);
+		for (int i = 0; i < lows.length; i++) {
+			dos.writeInt((int) lows[i]);
+			dos.writeInt((int) highs[i]);
+			dos.writeInt(values[i]);
+		}
+		int offset = 0;
+		for (final byte[] bytes: encoded) {
+			dos.writeInt(offset);
+			offset += bytes.length;
+		}
+		dos.writeInt(offset);
+		for (final byte[] bytes: encoded) {
+			dos.write(bytes);
+		}
+		dos.flush();
+	}
+
+	/**
+	 * Finds the range that contains an IP number.
+	 * @param ipNumber IP number to look up.
+	 * @return Index of the range, or -1 if no range contains the IP number.
+	 */
+	private int indexOf(final long ipNumber) {
+		// find the last range whose low IP number is at most the given IP number
+		int lo = 0;
+		int hi = rangeCount - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (low(mid) <= ipNumber) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return hi >= 0 && ipNumber <= high(hi) ? hi : -1;
+	}
+
+	private long low(final int index) {
+		return buffer.getInt(HEADER_LENGTH + RANGE_LENGTH * index) & 0xFFFFFFFFL;
+	}
+
+	private long high(final int index) {
+		return buffer.getInt(HEADER_LENGTH + RANGE_LENGTH * index + 4) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Returns the value of the range that contains an IP number.
+	 * @param ipNumber IP number to look up.
+	 * @return Value, or null if no range contains the IP number.
+	 */
+	public String get(final long ipNumber) {
+		final int index = indexOf(ipNumber);
+		return index < 0 ? null : strings[buffer.getInt(HEADER_LENGTH + RANGE_LENGTH * index + 8)];
+	}
+
+	/**
+	 * Returns the value of the range that contains an IP address.
+	 * @param ipAddress IP address to look up.
+	 * @return Value, or null if no range contains the IP address (always null for IPv6 addresses).
+	 */
+	public String get(final IpAddress ipAddress) {
+		return ipAddress.isIpv6() ? null : get(ipAddress.getIpNumber());
+	}
+
+	/**
+	 * Indicates if an IP number is in any range.
+	 * @param ipNumber IP number to look up.
+	 * @return true if a range contains the IP number
+	 */
+	public boolean exists(final long ipNumber) {
+		return indexOf(ipNumber) >= 0;
+	}
+
+	/**
+	 * Resolves the country of an IP address from a database whose values are 2-character ISO country codes.
+	 * @param ipAddress IP address to look up.
+	 * @return IP address and its country, with a null country code if no range contains the IP address
+	 * @throws IllegalArgumentException if the matching value isn't a 2-character country code
+	 */
+	public IpAddressAndCountry getIpAddressAndCountry(final IpAddress ipAddress) throws IllegalArgumentException {
+		ValidateAs.notNull(ipAddress, "ipAddress");
+		return new IpAddressAndCountry(ipAddress, get(ipAddress));
+	}
+
+	/**
+	 * Returns the number of non-overlapping ranges in the database.
+	 * @return Number of ranges.
+	 */
+	public int size() {
+		return rangeCount;
+	}
+}
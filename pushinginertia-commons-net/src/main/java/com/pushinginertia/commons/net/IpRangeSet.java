@@ -0,0 +1,366 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable set of IPv4 addresses, such as a blocklist, held as disjoint ranges. Input ranges are sorted and those
+ * that overlap or touch are coalesced, so every IP number is covered by at most one range and no two ranges could be
+ * merged. The ranges are stored in two primitive arrays and membership is a binary search.
+ */
+public final class IpRangeSet implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final IpRangeSet EMPTY = new IpRangeSet(new long[0], new long[0]);
+
+	private final long[] lows;
+	private final long[] highs;
+
+	/**
+	 * Wraps normalized ranges: sorted, disjoint and not touching.
+	 */
+	private IpRangeSet(final long[] lows, final long[] highs) {
+		this.lows = lows;
+		this.highs = highs;
+	}
+
+	/**
+	 * Creates a set covering the union of a collection of IPv4 ranges.
+	 * @param ranges ranges in any order, which can overlap or touch each other
+	 * @return new instance
+	 * @throws IllegalArgumentException if a range is an IPv6 range
+	 */
+	public static IpRangeSet of(final Collection<IpAddressRange> ranges) throws IllegalArgumentException {
+		ValidateAs.notNull(ranges, "ranges");
+		final long[] lowIpNumbers = new long[ranges.size()];
+		final long[] highIpNumbers = new long[ranges.size()];
+		int i = 0;
+		for (final IpAddressRange range: ranges) {
+			if (range.isIpv6()) {
+				throw new IllegalArgumentException("Not an IPv4 range: " + range);
+			}
+			lowIpNumbers[i] = range.getLowAddress().getIpNumber();
+			highIpNumbers[i] = range.getHighAddress().getIpNumber();
+			i++;
+		}
+		return of(lowIpNumbers, highIpNumbers);
+	}
+
+	/**
+	 * Creates a set covering the union of IPv4 ranges.
+	 * @param ranges ranges in any order, which can overlap or touch each other
+	 * @return new instance
+	 * @throws IllegalArgumentException if a range is an IPv6 range
+	 */
+	public static IpRangeSet of(final IpAddressRange... ranges) throws IllegalArgumentException {
+		return of(Arrays.asList(ranges));
+	}
+
+	/**
+	 * Creates a set covering the union of IP ranges given by their bounds.
+	 * @param lowIpNumbers lowest inclusive IP number of each range
+	 * @param highIpNumbers highest inclusive IP number of each range, at the same index
+	 * @return new instance
+	 * @throws IllegalArgumentException if the arrays differ in length, an IP number is out of range or a range's low IP
+	 * number is above its high IP number
+	 */
+	public static IpRangeSet of(final long[] lowIpNumbers, final long[] highIpNumbers) throws IllegalArgumentException {
+		if (lowIpNumbers.length != highIpNumbers.length) {
+			throw new IllegalArgumentException(
+					lowIpNumbers.length + " low IP numbers don't match " + highIpNumbers.length + " high IP numbers.");
+		}
+		final int n = lowIpNumbers.length;
+		final long[] lows = new long[n];
+		final long[] highs = new long[n];
+		final int count = IpAddressUtils.coalesceRanges(lowIpNumbers, highIpNumbers, n, lows, highs);
+		return create(lows, highs, count);
+	}
+
+	/**
+	 * Parses each entry with {@link IpAddressRange#parse(String)} and creates a set covering their union.
+	 * @param ranges ranges as strings
+	 * @return new instance
+	 * @throws IllegalArgumentException if an entry cannot be parsed or is an IPv6 range
+	 */
+	public static IpRangeSet parse(final Collection<String> ranges) throws IllegalArgumentException {
+		ValidateAs.notNull(ranges, "ranges");
+		final List<IpAddressRange> parsed = new ArrayList<IpAddressRange>(ranges.size());
+		for (final String range: ranges) {
+			parsed.add(IpAddressRange.parse(range));
+		}
+		return of(parsed);
+	}
+
+	private static IpRangeSet create(final long[] lows, final long[] highs, final int count) {
+		if (count == 0) {
+			return EMPTY;
+		}
+		if (count == lows.length) {
+			return new IpRangeSet(lows, highs);
+		}
+		return new IpRangeSet(Arrays.copyOf(lows, count), Arrays.copyOf(highs, count));
+	}
+
+	/**
+	 * Indicates if the set contains an IP number, with a binary search over the ranges.
+	 * @param ipNumber IP number to look up
+	 * @return true if a range contains it
+	 */
+	public boolean contains(final long ipNumber) {
+		final int i = indexOf(ipNumber);
+		return i >= 0 && ipNumber <= highs[i];
+	}
+
+	/**
+	 * Indicates if the set contains an IP address.
+	 * @param ipAddress IP address to look up
+	 * @return true if a range contains it (always false for IPv6 addresses)
+	 */
+	public boolean contains(final IpAddress ipAddress) {
+		return !ipAddress.isIpv6() && contains(ipAddress.getIpNumber());
+	}
+
+	/**
+	 * Indicates if the set contains every address of a range.
+	 * @param range range to look up
+	 * @return true if the range is entirely within the set (always false for IPv6 ranges)
+	 */
+	public boolean containsAll(final IpAddressRange range) {
+		if (range.isIpv6()) {
+			return false;
+		}
+		final long low = range.getLowAddress().getIpNumber();
+		final int i = indexOf(low);
+		// ranges don't touch, so one range must cover all of it
+		return i >= 0 && range.getHighAddress().getIpNumber() <= highs[i];
+	}
+
+	/**
+	 * Finds the range with the highest low IP number at or below an IP number.
+	 * @return position of the range, or -1 if there is none
+	 */
+	private int indexOf(final long ipNumber) {
+		final int i = Arrays.binarySearch(lows, ipNumber);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Creates a set containing the addresses in either this set or another.
+	 * @param other set to combine with
+	 * @return new instance
+	 */
+	public IpRangeSet union(final IpRangeSet other) {
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+		final Builder builder = new Builder(lows.length + other.lows.length);
+		int i = 0;
+		int j = 0;
+		while (i < lows.length || j < other.lows.length) {
+			if (j == other.lows.length || (i < lows.length && lows[i] <= other.lows[j])) {
+				builder.append(lows[i], highs[i]);
+				i++;
+			} else {
+				builder.append(other.lows[j], other.highs[j]);
+				j++;
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Creates a set containing the addresses in both this set and another.
+	 * @param other set to intersect with
+	 * @return new instance
+	 */
+	public IpRangeSet intersection(final IpRangeSet other) {
+		final Builder builder = new Builder(lows.length + other.lows.length);
+		int i = 0;
+		int j = 0;
+		while (i < lows.length && j < other.lows.length) {
+			final long low = Math.max(lows[i], other.lows[j]);
+			final long high = Math.min(highs[i], other.highs[j]);
+			if (low <= high) {
+				builder.append(low, high);
+			}
+			// move past whichever range ends first
+			if (highs[i] < other.highs[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Creates a set containing the addresses in this set that aren't in another.
+	 * @param other set of addresses to remove
+	 * @return new instance
+	 */
+	public IpRangeSet difference(final IpRangeSet other) {
+		if (isEmpty() || other.isEmpty()) {
+			return this;
+		}
+		final Builder builder = new Builder(lows.length + other.lows.length);
+		int j = 0;
+		for (int i = 0; i < lows.length; i++) {
+			long low = lows[i];
+			final long high = highs[i];
+			while (j < other.lows.length && other.highs[j] < low) {
+				j++;
+			}
+			// cut out each range of the other set that overlaps, leaving one that extends past this range for the next
+			while (j < other.lows.length && other.lows[j] <= high) {
+				if (other.lows[j] > low) {
+					builder.append(low, other.lows[j] - 1);
+				}
+				low = other.highs[j] + 1;
+				if (other.highs[j] > high) {
+					break;
+				}
+				j++;
+			}
+			if (low <= high) {
+				builder.append(low, high);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns the number of disjoint ranges in the set.
+	 * @return range count
+	 */
+	public int size() {
+		return lows.length;
+	}
+
+	public boolean isEmpty() {
+		return lows.length == 0;
+	}
+
+	public long getLow(final int index) {
+		return lows[index];
+	}
+
+	public long getHigh(final int index) {
+		return highs[index];
+	}
+
+	/**
+	 * Counts the IP numbers in the set.
+	 * @return number of IP numbers covered by the ranges
+	 */
+	public long getIpNumberCount() {
+		long count = 0;
+		for (int i = 0; i < lows.length; i++) {
+			count += highs[i] - lows[i] + 1;
+		}
+		return count;
+	}
+
+	public List<IpAddressRange> toRanges() {
+		final List<IpAddressRange> ranges = new ArrayList<IpAddressRange>(lows.length);
+		for (int i = 0; i < lows.length; i++) {
+			ranges.add(IpAddressRange.fromIpAddressRange(new IpAddress(lows[i]), new IpAddress(highs[i])));
+		}
+		return ranges;
+	}
+
+	/**
+	 * Returns the minimal list of CIDR blocks covering the set.
+	 * @return blocks in ascending order packed by {@link IpAddressUtils#cidrBlock(long, int)}
+	 */
+	public long[] toCidrBlocks() {
+		return IpAddressUtils.toCidrBlocks(lows, highs, lows.length);
+	}
+
+	/**
+	 * Returns the minimal list of CIDR blocks covering the set in n.n.n.n/n notation.
+	 * @return generated list
+	 */
+	public List<String> toCidrNotationList() {
+		return IpAddressUtils.toCidrNotationList(toCidrBlocks());
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		final IpRangeSet that = (IpRangeSet) o;
+		return Arrays.equals(lows, that.lows) && Arrays.equals(highs, that.highs);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(lows) + Arrays.hashCode(highs);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("IpRangeSet{");
+		for (int i = 0; i < lows.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(IpAddressUtils.toIpAddress(lows[i])).append('-').append(IpAddressUtils.toIpAddress(highs[i]));
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * Collects ranges in ascending order of low IP number, merging each with the last one if they overlap or touch.
+	 */
+	private static final class Builder {
+		private final long[] lows;
+		private final long[] highs;
+		private int count;
+
+		Builder(final int capacity) {
+			lows = new long[capacity];
+			highs = new long[capacity];
+		}
+
+		void append(final long low, final long high) {
+			if (count > 0 && low <= highs[count - 1] + 1) {
+				highs[count - 1] = Math.max(highs[count - 1], high);
+			} else {
+				lows[count] = low;
+				highs[count] = high;
+				count++;
+			}
+		}
+
+		IpRangeSet build() {
+			return create(lows, highs, count);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import java.io.Serializable;
+
+/**
+ * A compact, immutable IPv4 address backed by a single unsigned int. An instance takes 16 bytes on a typical JVM,
+ * against 40 bytes plus a cached string for an {@link IpAddress}, which matters when tens of millions of addresses are
+ * held in caches. Use {@link IpAddressMap} or {@link IpAddressSet} to avoid the object altogether.
+ */
+public final class Ipv4Address implements Serializable, Comparable<Ipv4Address> {
+	private static final long serialVersionUID = 1L;
+
+	private final int ipNumber;
+
+	/**
+	 * Constructs the instance from a string representation of the IP address.
+	 * @param ipAddress IPv4 address in n.n.n.n format
+	 * @throws IllegalArgumentException if the input is not a valid IPv4 address
+	 */
+	public Ipv4Address(final String ipAddress) throws IllegalArgumentException {
+		this.ipNumber = (int) IpAddressUtils.toIpNumber(ipAddress);
+	}
+
+	/**
+	 * Constructs the instance from an IP number.
+	 * @param ipNumber IP number between 0 and 4294967295
+	 * @throws IllegalArgumentException if the IP number is out of range
+	 */
+	public Ipv4Address(final long ipNumber) throws IllegalArgumentException {
+		this.ipNumber = IpAddressMap.toKey(ipNumber);
+	}
+
+	/**
+	 * Converts an IPv4 {@link IpAddress}.
+	 * @param ipAddress IP address to convert
+	 * @return new instance
+	 * @throws IllegalArgumentException if the IP address is an IPv6 address
+	 */
+	public static Ipv4Address valueOf(final IpAddress ipAddress) throws IllegalArgumentException {
+		ValidateAs.notNull(ipAddress, "ipAddress");
+		if (ipAddress.isIpv6()) {
+			throw new IllegalArgumentException("Not an IPv4 address: " + ipAddress.getIpAddress());
+		}
+		return new Ipv4Address(ipAddress.getIpNumber());
+	}
+
+	/**
+	 * Constructs the instance from the unsigned int representation of an IP number.
+	 * @param ipNumber IP number read as an unsigned int
+	 * @return new instance
+	 */
+	public static Ipv4Address fromInt(final int ipNumber) {
+		return new Ipv4Address(ipNumber & IpIntervalIndex.MAX_IP_NUMBER);
+	}
+
+	public long getIpNumber() {
+		return ipNumber & IpIntervalIndex.MAX_IP_NUMBER;
+	}
+
+	/**
+	 * Returns the IP number as an unsigned int, as stored by this instance.
+	 * @return IP number read as an unsigned int
+	 */
+	public int toInt() {
+		return ipNumber;
+	}
+
+	/**
+	 * Formats the IP address. The result isn't cached, to keep instances small.
+	 * @return IPv4 address in n.n.n.n format
+	 */
+	public String getIpAddress() {
+		return IpAddressUtils.toIpAddress(getIpNumber());
+	}
+
+	public IpAddress toIpAddress() {
+		return new IpAddress(getIpNumber());
+	}
+
+	@Override
+	public int compareTo(final Ipv4Address other) {
+		return Integer.compareUnsigned(ipNumber, other.ipNumber);
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		return ipNumber == ((Ipv4Address) o).ipNumber;
+	}
+
+	@Override
+	public int hashCode() {
+		return ipNumber;
+	}
+
+	@Override
+	public String toString() {
+		return "Ipv4Address{ipAddress=" + getIpAddress() + '}';
+	}
+}
@@ -0,0 +1,125 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+/**
+ * Packs an IPv4 address and its 2-character country code into a single long, so that large caches of
+ * {@link IpAddressAndCountry} values can be held in a long[] or as the values of an {@link IpAddressMap} with no object
+ * per entry. The IP number takes the low 32 bits and the two characters of the country code take 16 bits each above
+ * it, the first character highest. A country code of 0 means that there is none.
+ * <p>
+ * Country codes made of two letters A-Z are returned as shared canonical strings, so unpacking never allocates a
+ * string for them.
+ */
+public class PackedIpAddressAndCountry {
+	private static final String[] COUNTRY_CODES = new String[26 * 26];
+	static {
+		for (char c1 = 'A'; c1 <= 'Z'; c1++) {
+			for (char c2 = 'A'; c2 <= 'Z'; c2++) {
+				COUNTRY_CODES[(c1 - 'A') * 26 + c2 - 'A'] = new String(new char[] {c1, c2});
+			}
+		}
+	}
+
+	/**
+	 * Packs an IP number and a country code.
+	 * @param ipNumber IPv4 number
+	 * @param countryCode 2-character country code (can be null, will be transformed to uppercase)
+	 * @return packed value
+	 * @throws IllegalArgumentException if the IP number is out of range or the country code isn't 2 characters long
+	 */
+	public static long pack(final long ipNumber, final String countryCode) throws IllegalArgumentException {
+		final long ip = IpAddressMap.toKey(ipNumber) & IpIntervalIndex.MAX_IP_NUMBER;
+		if (countryCode == null) {
+			return ip;
+		}
+		ValidateAs.ofLength(countryCode, 2, "countryCode");
+		final long c1 = Character.toUpperCase(countryCode.charAt(0));
+		final long c2 = Character.toUpperCase(countryCode.charAt(1));
+		return c1 << 48 | c2 << 32 | ip;
+	}
+
+	/**
+	 * Packs an IPv4 address and its country code.
+	 * @param ipAddressAndCountry value to pack
+	 * @return packed value
+	 * @throws IllegalArgumentException if the IP address is an IPv6 address
+	 */
+	public static long pack(final IpAddressAndCountry ipAddressAndCountry) throws IllegalArgumentException {
+		final IpAddress ipAddress = ipAddressAndCountry.getIpAddress();
+		if (ipAddress.isIpv6()) {
+			throw new IllegalArgumentException("Not an IPv4 address: " + ipAddress.getIpAddress());
+		}
+		return pack(ipAddress.getIpNumber(), ipAddressAndCountry.getCountryCode());
+	}
+
+	public static IpAddressAndCountry unpack(final long packed) {
+		return new IpAddressAndCountry(new IpAddress(ipNumber(packed)), countryCode(packed));
+	}
+
+	/**
+	 * Extracts the IP number from a packed value.
+	 * @param packed packed value
+	 * @return IPv4 number
+	 */
+	public static long ipNumber(final long packed) {
+		return packed & IpIntervalIndex.MAX_IP_NUMBER;
+	}
+
+	/**
+	 * Extracts the country code from a packed value.
+	 * @param packed packed value
+	 * @return 2-character country code, or null if none was packed
+	 */
+	public static String countryCode(final long packed) {
+		final char c1 = (char) (packed >>> 48);
+		final char c2 = (char) (packed >>> 32);
+		if (c1 == 0 && c2 == 0) {
+			return null;
+		}
+		return countryCode(c1, c2);
+	}
+
+	/**
+	 * Indicates if a packed value holds a country code.
+	 * @param packed packed value
+	 * @return true if a country code was packed
+	 */
+	public static boolean hasCountryCode(final long packed) {
+		return (packed >>> 32) != 0;
+	}
+
+	/**
+	 * Returns the canonical instance of an uppercase 2-character country code.
+	 * @param countryCode 2-character country code (can be null, will be transformed to uppercase)
+	 * @return shared instance for codes made of letters A-Z, otherwise the uppercase code
+	 */
+	static String canonicalCountryCode(final String countryCode) {
+		if (countryCode == null || countryCode.length() != 2) {
+			return countryCode == null ? null : countryCode.toUpperCase();
+		}
+		return countryCode(Character.toUpperCase(countryCode.charAt(0)), Character.toUpperCase(countryCode.charAt(1)));
+	}
+
+	private static String countryCode(final char c1, final char c2) {
+		if (c1 >= 'A' && c1 <= 'Z' && c2 >= 'A' && c2 <= 'Z') {
+			return COUNTRY_CODES[(c1 - 'A') * 26 + c2 - 'A'];
+		}
+		return new String(new char[] {c1, c2});
+	}
+}
@@ -0,0 +1,152 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IpAddressMapTest {
+	@Test
+	public void putGetRemove() {
+		final IpAddressMap<String> map = new IpAddressMap<>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(new IpAddress("10.0.0.1"), "a"));
+		assertEquals("a", map.put(0x0A000001L, "b"));
+		assertNull(map.put(0, "zero"));
+		assertNull(map.put(0xFFFFFFFFL, null));
+		assertEquals(3, map.size());
+
+		assertEquals("b", map.get(new IpAddress("10.0.0.1")));
+		assertEquals("zero", map.get(0));
+		assertNull(map.get(0xFFFFFFFFL));
+		assertTrue(map.containsKey(0xFFFFFFFFL));
+		assertFalse(map.containsKey(0x0A000002L));
+		assertNull(map.get(new IpAddress("::ffff:10.0.0.1")));
+		assertNull(map.get(-1));
+
+		assertEquals("zero", map.remove(0));
+		assertFalse(map.containsKey(0));
+		assertNull(map.remove(0));
+		assertEquals(2, map.size());
+
+		final Map<Long, String> entries = new HashMap<>();
+		map.forEach(entries::put);
+		assertEquals(2, entries.size());
+		assertEquals("b", entries.get(0x0A000001L));
+		assertTrue(entries.containsKey(0xFFFFFFFFL));
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(0x0A000001L));
+	}
+
+	@Test
+	public void matchesHashMap() {
+		// narrow key range so that puts and removes collide often and exercise the backward shift
+		final Random random = new Random(22);
+		final IpAddressMap<Integer> map = new IpAddressMap<>(0);
+		final Map<Long, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 200000; i++) {
+			final long ipNumber = random.nextInt(5000) * 0x10001L;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(ipNumber), map.remove(ipNumber));
+			} else {
+				assertEquals(expected.put(ipNumber, i), map.put(ipNumber, i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(expected.get(i * 0x10001L), map.get(i * 0x10001L));
+		}
+	}
+
+	@Test
+	public void rejectsInvalidKeys() {
+		final IpAddressMap<String> map = new IpAddressMap<>();
+		try {
+			map.put(new IpAddress("2001:db8::1"), "a");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			map.put(0x100000000L, "a");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Compares the memory allocated to fill the map against a {@link HashMap} keyed by {@link IpAddress}, then the
+	 * latency of lookups. Opt-in, see {@link IpIntervalIndexTest#assumeBenchmarks()}.
+	 */
+	@Test
+	public void footprint() {
+		IpIntervalIndexTest.assumeBenchmarks();
+		final com.sun.management.ThreadMXBean bean = IpIntervalIndexTest.threadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		final int entries = 1000000;
+		final Random random = new Random(7);
+		final long[] ips = new long[entries];
+		for (int i = 0; i < entries; i++) {
+			ips[i] = random.nextInt() & IpIntervalIndex.MAX_IP_NUMBER;
+		}
+		final String value = "CA";
+
+		long before = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId);
+		final IpAddressMap<String> map = new IpAddressMap<>(entries);
+		for (final long ip: ips) {
+			map.put(ip, value);
+		}
+		final long mapBytes = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId) - before;
+
+		before = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId);
+		final Map<IpAddress, String> hashMap = new HashMap<>(entries * 4 / 3 + 1);
+		for (final long ip: ips) {
+			hashMap.put(new IpAddress(ip), value);
+		}
+		final long hashMapBytes = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId) - before;
+
+		long start = 0;
+		int hits = 0;
+		for (int round = 0; round < 3; round++) {
+			start = System.nanoTime();
+			hits = 0;
+			for (final long ip: ips) {
+				if (map.get(ip) != null) {
+					hits++;
+				}
+			}
+		}
+		final double nanos = (double) (System.nanoTime() - start) / entries;
+
+		assertEquals(entries, hits);
+		assertEquals(hashMap.size(), map.size());
+		System.out.println("IpAddressMap=" + mapBytes / entries + " bytes/entry, get=" + nanos + " ns/op, " +
+				"HashMap<IpAddress,String>=" + hashMapBytes / entries + " bytes/entry");
+		assertTrue(bean == null || mapBytes < hashMapBytes);
+	}
+}
@@ -48,6 +48,9 @@ public class IpAddressRangeTest {
 		final List<String> cidrList = range.getCidrNotationList();
 		assertEquals(1, cidrList.size());
 		assertEquals("67.117.201.128/28", cidrList.get(0));
+		final long[] blocks = range.getCidrBlocks();
+		assertEquals(1, blocks.length);
+		assertEquals(IpAddressUtils.cidrBlock(range.getLowAddress().getIpNumber(), 28), blocks[0]);
 	}
 
 	@Test
@@ -70,4 +73,48 @@ public class IpAddressRangeTest {
 		assertEquals("67.117.201.128", range.getLowAddress().getIpAddress());
 		assertEquals("67.117.201.128", range.getHighAddress().getIpAddress());
 	}
+
+	@Test
+	public void fromIpv6CidrNotation() {
+		final IpAddressRange range = IpAddressRange.fromCidrNotation("2001:db8:abcd:12::/63");
+		assertTrue(range.isIpv6());
+		assertEquals("2001:db8:abcd:12::", range.getLowAddress().getIpAddress());
+		assertEquals("2001:db8:abcd:13:ffff:ffff:ffff:ffff", range.getHighAddress().getIpAddress());
+
+		assertTrue(range.isInRange("2001:db8:abcd:12::1"));
+		assertTrue(range.isInRange("2001:db8:abcd:13:ffff:ffff:ffff:ffff"));
+		assertFalse(range.isInRange("2001:db8:abcd:14::"));
+		assertFalse(range.isInRange("32.1.13.184"));
+
+		final IpAddressRange host = IpAddressRange.parse("2001:db8::8:800:200c:417a/128");
+		assertEquals(host.getLowAddress(), host.getHighAddress());
+		final IpAddressRange narrow = IpAddressRange.parse("2001:db8::ff00:0/100");
+		assertEquals("2001:db8::f000:0", narrow.getLowAddress().getIpAddress());
+		assertEquals("2001:db8::ffff:ffff", narrow.getHighAddress().getIpAddress());
+		final IpAddressRange all = IpAddressRange.parse("::/0");
+		assertEquals("::", all.getLowAddress().getIpAddress());
+		assertEquals("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff", all.getHighAddress().getIpAddress());
+	}
+
+	@Test
+	public void ipv6Range() {
+		final IpAddressRange range = IpAddressRange.parse("2001:db8::1 - 2001:db8::8");
+		assertTrue(range.isInRange(new IpAddress("2001:db8::4")));
+		final List<String> cidrList = range.getCidrNotationList();
+		assertEquals(4, cidrList.size());
+		assertEquals("2001:db8::1/128", cidrList.get(0));
+		assertEquals("2001:db8::2/127", cidrList.get(1));
+		assertEquals("2001:db8::4/126", cidrList.get(2));
+		assertEquals("2001:db8::8/128", cidrList.get(3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mixedFamilies() {
+		IpAddressRange.fromIpAddressRange("1.2.3.4", "::1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidIpv6Prefix() {
+		IpAddressRange.fromCidrNotation("2001:db8::/129");
+	}
 }
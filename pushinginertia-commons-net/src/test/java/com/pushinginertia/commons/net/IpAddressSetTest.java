@@ -0,0 +1,89 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IpAddressSetTest {
+	@Test
+	public void addContainsRemove() {
+		final IpAddressSet set = new IpAddressSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(new IpAddress("10.0.0.1")));
+		assertFalse(set.add(0x0A000001L));
+		assertTrue(set.add(0));
+		assertTrue(set.add(0xFFFFFFFFL));
+		assertEquals(3, set.size());
+
+		assertTrue(set.contains(new IpAddress("10.0.0.1")));
+		assertTrue(set.contains(0));
+		assertTrue(set.contains(0xFFFFFFFFL));
+		assertFalse(set.contains(new IpAddress("::ffff:10.0.0.1")));
+		assertFalse(set.contains(-1));
+
+		assertTrue(set.remove(0));
+		assertFalse(set.remove(0));
+		assertFalse(set.contains(0));
+		assertEquals(2, set.size());
+
+		final long[] sum = new long[1];
+		set.forEach(ipNumber -> sum[0] += ipNumber);
+		assertEquals(0x0A000001L + 0xFFFFFFFFL, sum[0]);
+
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(0xFFFFFFFFL));
+	}
+
+	@Test
+	public void matchesHashSet() {
+		// narrow key range so that adds and removes collide often and exercise the backward shift
+		final Random random = new Random(19);
+		final IpAddressSet set = new IpAddressSet(0);
+		final Set<Long> expected = new HashSet<>();
+		for (int i = 0; i < 200000; i++) {
+			final long ipNumber = random.nextInt(5000) * 0x10001L;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(ipNumber), set.remove(ipNumber));
+			} else {
+				assertEquals(expected.add(ipNumber), set.add(ipNumber));
+			}
+			assertEquals(expected.size(), set.size());
+		}
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(expected.contains(i * 0x10001L), set.contains(i * 0x10001L));
+		}
+	}
+
+	@Test
+	public void rejectsIpv6() {
+		try {
+			new IpAddressSet().add(new IpAddress("2001:db8::1"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -18,6 +18,7 @@ package com.pushinginertia.commons.net;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -41,4 +42,33 @@ public class IpAddressTest {
 		assertFalse(ip.isBetween("100.100.100.1", "100.100.100.255"));
 
 	}
+
+	@Test
+	public void ipv6() {
+		final IpAddress ip = new IpAddress("2001:0DB8:0000:0000:0000:0000:0000:0001");
+		assertTrue(ip.isIpv6());
+		assertEquals(0x20010DB800000000L, ip.getHighBits());
+		assertEquals(1L, ip.getLowBits());
+		assertEquals("2001:db8::1", ip.getIpAddress());
+		assertEquals(ip, new IpAddress("2001:db8::1"));
+		assertEquals(ip.hashCode(), new IpAddress(0x20010DB800000000L, 1L).hashCode());
+
+		assertTrue(ip.isLower("2001:db8::2"));
+		assertTrue(ip.isHigher("2001:db8::"));
+		assertTrue(ip.isBetween("2001:db8::", "2001:db8::ffff"));
+		assertFalse(ip.isBetween("2001:db8::2", "2001:db8::ffff"));
+
+		// unsigned ordering of the upper bits
+		assertTrue(ip.isLower("ffff::"));
+		// every IPv4 address is below every IPv6 address
+		assertTrue(ip.isHigher("255.255.255.255"));
+		assertTrue(ip.isHigher(0xFFFFFFFFL));
+		assertFalse(ip.isEqual(1L));
+		assertFalse(new IpAddress("0.0.0.1").equals(new IpAddress("::1")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void ipv6IpNumber() {
+		new IpAddress("::1").getIpNumber();
+	}
 }
@@ -19,7 +19,9 @@ package com.pushinginertia.commons.net;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -36,6 +38,110 @@ public class IpAddressUtilsTest {
 		assertEquals(4294967295L, IpAddressUtils.toIpNumber("255.255.255.255"));
 	}
 
+	@Test
+	public void toIpNumberInvalid() {
+		final String[] invalid = {
+				"", "1", "1.2.3", "1.2.3.4.5", "1.2.3.4.", ".1.2.3", "1..2.3", "256.1.1.1", "1.1.1.256", "1.1.1.1000",
+				"0001.1.1.1", "-1.1.1.1", "+1.1.1.1", " 1.1.1.1", "1.1.1.1 ", "a.b.c.d", "1.2.3.4/32", "::1"};
+		for (final String s: invalid) {
+			try {
+				IpAddressUtils.toIpNumber(s);
+				Assert.fail(s);
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void toIpNumberCharSequence() {
+		final StringBuilder sb = new StringBuilder("202.191.68.0");
+		assertEquals(3401532416L, IpAddressUtils.toIpNumber(sb));
+		assertEquals(0L, IpAddressUtils.toIpNumber((CharSequence) "000.0.00.0"));
+		sb.append(".1");
+		try {
+			IpAddressUtils.toIpNumber(sb);
+			Assert.fail();
+		} catch (final IllegalArgumentException e) {
+			assertEquals("Not an IP address: 202.191.68.0.1", e.getMessage());
+		}
+	}
+
+	@Test
+	public void toIpNumbers() {
+		final String[] ips = {"202.191.68.0", "202.186.13.4", "255.255.255.255"};
+		final long[] expected = {3401532416L, 3401190660L, 4294967295L};
+		Assert.assertArrayEquals(expected, IpAddressUtils.toIpNumbers(ips));
+		Assert.assertArrayEquals(expected, IpAddressUtils.toIpNumbers(Arrays.stream(ips)).toArray());
+		final long[] out = new long[4];
+		IpAddressUtils.toIpNumbers(ips, out);
+		assertEquals(4294967295L, out[2]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void toIpNumbersInvalid() {
+		IpAddressUtils.toIpNumbers(new String[] {"1.2.3.4", "1.2.3"});
+	}
+
+	@Test
+	public void toIpNumberMatchesSplit() {
+		final Random rand = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			final String ip = IpAddressUtils.toIpAddress(rand.nextLong() & 0xFFFFFFFFL);
+			assertEquals(ip, splitToIpNumber(ip), IpAddressUtils.toIpNumber(ip));
+		}
+	}
+
+	/**
+	 * Compares the single pass parser with the split-based parser it replaced. Opt-in, see
+	 * {@link IpIntervalIndexTest#assumeBenchmarks()}.
+	 */
+	@Test
+	public void toIpNumberLatency() {
+		IpIntervalIndexTest.assumeBenchmarks();
+		final Random rand = new Random(1);
+		final String[] ips = new String[1 << 16];
+		for (int i = 0; i < ips.length; i++) {
+			ips[i] = IpAddressUtils.toIpAddress(rand.nextLong() & 0xFFFFFFFFL);
+		}
+		final com.sun.management.ThreadMXBean bean = IpIntervalIndexTest.threadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		final int rounds = 16;
+		for (int warmup = 0; warmup < 3; warmup++) {
+			long sum = 0;
+			long start = System.nanoTime();
+			for (int r = 0; r < rounds; r++) {
+				for (final String ip: ips) {
+					sum += splitToIpNumber(ip);
+				}
+			}
+			final double splitNanos = (double) (System.nanoTime() - start) / (rounds * ips.length);
+
+			final long before = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId);
+			start = System.nanoTime();
+			for (int r = 0; r < rounds; r++) {
+				for (final String ip: ips) {
+					sum -= IpAddressUtils.toIpNumber(ip);
+				}
+			}
+			final double nanos = (double) (System.nanoTime() - start) / (rounds * ips.length);
+			final long allocated = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId) - before;
+
+			assertEquals(0, sum);
+			if (warmup == 2) {
+				System.out.println("IpAddressUtils.toIpNumber=" + nanos + " ns/op (" + allocated + " bytes total), " +
+						"split=" + splitNanos + " ns/op");
+				Assert.assertTrue(bean == null || allocated < 1024);
+			}
+		}
+	}
+
+	private static long splitToIpNumber(final String ipAddress) {
+		final String[] s = ipAddress.split("\\.");
+		return (Long.parseLong(s[0]) << 24) + (Long.parseLong(s[1]) << 16) + (Long.parseLong(s[2]) << 8) +
+				Long.parseLong(s[3]);
+	}
+
 	@Test
 	public void toIpAddress() {
 		assertEquals("202.191.68.0", IpAddressUtils.toIpAddress(3401532416L));
@@ -58,6 +164,116 @@ public class IpAddressUtilsTest {
 		assertEquals("1.1.1.120/32", l.get(2));
 	}
 
+	@Test
+	public void toCidrBlocks() {
+		final long[] blocks = IpAddressUtils.toCidrBlocks(0x01010100L + 111, 0x01010100L + 120);
+		assertEquals(3, blocks.length);
+		assertEquals(0x01010100L + 111, IpAddressUtils.cidrBase(blocks[0]));
+		assertEquals(32, IpAddressUtils.cidrPrefix(blocks[0]));
+		assertEquals(29, IpAddressUtils.cidrPrefix(blocks[1]));
+		assertEquals("1.1.1.120/32", IpAddressUtils.toCidrNotation(blocks[2]));
+
+		assertEquals(Arrays.asList("0.0.0.0/0"), IpAddressUtils.toCidrNotationList(0, 0xFFFFFFFFL));
+		assertEquals(Arrays.asList("255.255.255.255/32"), IpAddressUtils.toCidrNotationList(0xFFFFFFFFL, 0xFFFFFFFFL));
+		assertEquals(Arrays.asList("0.0.0.1/32", "0.0.0.2/31", "0.0.0.4/30", "0.0.0.8/29", "0.0.0.16/28",
+				"0.0.0.32/27", "0.0.0.64/26", "0.0.0.128/25", "0.0.1.0/24", "0.0.2.0/23", "0.0.4.0/22", "0.0.8.0/21",
+				"0.0.16.0/20", "0.0.32.0/19", "0.0.64.0/18", "0.0.128.0/17", "0.1.0.0/16", "0.2.0.0/15", "0.4.0.0/14",
+				"0.8.0.0/13", "0.16.0.0/12", "0.32.0.0/11", "0.64.0.0/10", "0.128.0.0/9", "1.0.0.0/8", "2.0.0.0/7",
+				"4.0.0.0/6", "8.0.0.0/5", "16.0.0.0/4", "32.0.0.0/3", "64.0.0.0/2", "128.0.0.0/1"),
+				IpAddressUtils.toCidrNotationList(1, 0xFFFFFFFFL));
+		assertEquals(0, IpAddressUtils.toCidrBlocks(2, 1).length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void toCidrBlocksOutOfRange() {
+		IpAddressUtils.toCidrBlocks(0, 0x100000000L);
+	}
+
+	@Test
+	public void toCidrBlocksUnion() {
+		// overlapping, touching and out of order ranges merge into 10.0.0.0/23 plus a separate /32
+		final long base = 0x0A000000L;
+		final long[] blocks = IpAddressUtils.toCidrBlocks(
+				new long[] {base + 256, base + 10, base, base + 600},
+				new long[] {base + 511, base + 300, base + 99, base + 600});
+		assertEquals(Arrays.asList("10.0.0.0/23", "10.0.2.88/32"), IpAddressUtils.toCidrNotationList(blocks));
+		assertEquals(0, IpAddressUtils.toCidrBlocks(new long[0], new long[0]).length);
+	}
+
+	@Test
+	public void toCidrBlocksUnionIsExactAndMinimal() {
+		final Random random = new Random(23);
+		for (int round = 0; round < 200; round++) {
+			final int n = 1 + random.nextInt(8);
+			final long[] lows = new long[n];
+			final long[] highs = new long[n];
+			final boolean[] expected = new boolean[4096];
+			for (int i = 0; i < n; i++) {
+				lows[i] = random.nextInt(4096);
+				highs[i] = Math.min(4095, lows[i] + random.nextInt(600));
+				Arrays.fill(expected, (int) lows[i], (int) highs[i] + 1, true);
+			}
+
+			final long[] blocks = IpAddressUtils.toCidrBlocks(lows, highs);
+			final boolean[] covered = new boolean[4096];
+			long previousEnd = -1;
+			for (int k = 0; k < blocks.length; k++) {
+				final long start = IpAddressUtils.cidrBase(blocks[k]);
+				final long size = 1L << (32 - IpAddressUtils.cidrPrefix(blocks[k]));
+				Assert.assertEquals("block aligned", 0, start & (size - 1));
+				Assert.assertTrue("ascending and disjoint", start > previousEnd);
+				Arrays.fill(covered, (int) start, (int) (start + size), true);
+				if (k > 0 && IpAddressUtils.cidrPrefix(blocks[k - 1]) == IpAddressUtils.cidrPrefix(blocks[k])) {
+					// two sibling halves of a larger block would not be minimal
+					Assert.assertFalse("mergeable siblings", start == previousEnd + 1 && (start & size) != 0);
+				}
+				previousEnd = start + size - 1;
+			}
+			for (int i = 0; i < 4096; i++) {
+				Assert.assertEquals("IP number " + i, expected[i], covered[i]);
+			}
+		}
+	}
+
+	/**
+	 * Times splitting ranges into CIDR blocks against formatting the same blocks as strings. Opt-in, see
+	 * {@link IpIntervalIndexTest#assumeBenchmarks()}.
+	 */
+	@Test
+	public void toCidrBlocksLatency() {
+		IpIntervalIndexTest.assumeBenchmarks();
+		final Random random = new Random(5);
+		final int ranges = 50000;
+		final long[] lows = new long[ranges];
+		final long[] highs = new long[ranges];
+		for (int i = 0; i < ranges; i++) {
+			lows[i] = random.nextInt() & 0xFFFFFFFFL;
+			highs[i] = Math.min(0xFFFFFFFFL, lows[i] + random.nextInt(1 << 20));
+		}
+
+		long blockNanos = 0;
+		long stringNanos = 0;
+		int blocks = 0;
+		int strings = 0;
+		for (int round = 0; round < 3; round++) {
+			blocks = 0;
+			strings = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < ranges; i++) {
+				blocks += IpAddressUtils.toCidrBlocks(lows[i], highs[i]).length;
+			}
+			blockNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < ranges; i++) {
+				strings += IpAddressUtils.toCidrNotationList(lows[i], highs[i]).size();
+			}
+			stringNanos = System.nanoTime() - start;
+		}
+		assertEquals(blocks, strings);
+		System.out.println("IpAddressUtils.toCidrBlocks=" + blockNanos / ranges + " ns/range, " +
+				"toCidrNotationList=" + stringNanos / ranges + " ns/range, blocks/range=" + (double) blocks / ranges);
+	}
+
 	@Test
 	public void isNonRoutable() {
 		Assert.assertTrue(IpAddressUtils.isNonRoutable(new IpAddress("172.16.0.0")));
@@ -66,4 +282,139 @@ public class IpAddressUtilsTest {
 		Assert.assertFalse(IpAddressUtils.isNonRoutable(new IpAddress("8.8.8.8")));
 		Assert.assertFalse(IpAddressUtils.isNonRoutable(new IpAddress("189.125.121.50")));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void toIpv6Number() {
+		assertIpv6(0, 0, "::");
+		assertIpv6(0, 1, "::1");
+		assertIpv6(0x0001000000000000L, 0, "1::");
+		assertIpv6(0x20010DB800000000L, 0x00080800200C417AL, "2001:DB8::8:800:200C:417A");
+		assertIpv6(0x20010DB800000000L, 0x00080800200C417AL, "2001:db8:0:0:8:800:200c:417a");
+		assertIpv6(0xFF01000000000000L, 0x101L, "ff01::101");
+		assertIpv6(0, 0xFFFFC0A80001L, "::ffff:192.168.0.1");
+		assertIpv6(0x0001000200030004L, 0x00050006C0A80001L, "1:2:3:4:5:6:192.168.0.1");
+		assertIpv6(0x0001000200030004L, 0x0005000600070000L, "1:2:3:4:5:6:7::");
+		assertIpv6(-1L, -1L, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff");
+	}
+
+	@Test
+	public void toIpv6NumberInvalid() {
+		final String[] invalid = {
+				":", ":::", "1:2", "1::2::3", ":1::", "1::2:", "12345::", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7::8:9",
+				"g::", "::1.2.3", "::1.2.3.256", "::1.2.3.4:5", "1:2:3:4:5:6:7:1.2.3.4", "[::1]", "::1%eth0",
+				// only ASCII hex digits are accepted: fullwidth digits and letters, Arabic-Indic digits
+				"\uFF12001:db8::1", "2001:db8::\u0661", "\uFF21::", "fe80::\uFF41", "2001:db8::\u0967"};
+		for (final String s: invalid) {
+			try {
+				IpAddressUtils.toIpv6Number(s, new long[2]);
+				Assert.fail(s);
+			} catch (final IllegalArgumentException e) {
+				assertEquals("Not an IP address: " + s, e.getMessage());
+			}
+			try {
+				new IpAddress(s);
+				Assert.fail(s);
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void toIpv6Address() {
+		assertEquals("::", IpAddressUtils.toIpv6Address(0, 0));
+		assertEquals("::1", IpAddressUtils.toIpv6Address(0, 1));
+		assertEquals("2001:db8::1:0:0:1", IpAddressUtils.toIpv6Address(0x20010DB800000000L, 0x0001000000000001L));
+		// a single zero group is not compressed
+		assertEquals("2001:db8:0:1:1:1:1:1", IpAddressUtils.toIpv6Address(0x20010DB800000001L, 0x0001000100010001L));
+		// the first of two equally long runs is compressed
+		assertEquals("1::1:0:0:1:1", IpAddressUtils.toIpv6Address(0x0001000000000001L, 0x0000000000010001L));
+		assertEquals("::ffff:192.168.0.1", IpAddressUtils.toIpv6Address(0, 0xFFFFC0A80001L));
+
+		final Random rand = new Random(1);
+		final long[] parsed = new long[2];
+		for (int i = 0; i < 10000; i++) {
+			// sparse groups exercise the zero compression
+			final long hi = rand.nextLong() & rand.nextLong() & rand.nextLong();
+			final long lo = rand.nextLong() & rand.nextLong() & rand.nextLong();
+			IpAddressUtils.toIpv6Number(IpAddressUtils.toIpv6Address(hi, lo), parsed);
+			assertEquals(hi, parsed[0]);
+			assertEquals(lo, parsed[1]);
+		}
+	}
+
+	@Test
+	public void toIpv6CidrNotationList() {
+		List<String> l = IpAddressUtils.toIpv6CidrNotationList(0, 0, -1L, -1L);
+		assertEquals(1, l.size());
+		assertEquals("::/0", l.get(0));
+
+		l = IpAddressUtils.toIpv6CidrNotationList(0, 1, -1L, -1L);
+		assertEquals(128, l.size());
+		assertEquals("::1/128", l.get(0));
+		assertEquals("8000::/1", l.get(127));
+
+		l = IpAddressUtils.toCidrNotationList(new IpAddress("2001:db8::"), new IpAddress("2001:db8:0:1::"));
+		assertEquals(2, l.size());
+		assertEquals("2001:db8::/64", l.get(0));
+		assertEquals("2001:db8:0:1::/128", l.get(1));
+	}
+
+	@Test
+	public void isLocalhost() {
+		Assert.assertTrue(IpAddressUtils.isLocalhost("127.0.0.1"));
+		Assert.assertTrue(IpAddressUtils.isLocalhost("::1"));
+		Assert.assertTrue(IpAddressUtils.isLocalhost("0:0:0:0:0:0:0:1"));
+		Assert.assertFalse(IpAddressUtils.isLocalhost("::2"));
+		Assert.assertFalse(IpAddressUtils.isLocalhost("not:an:address"));
+		Assert.assertTrue(IpAddressUtils.isLocalhost(new IpAddress("127.0.0.1")));
+		Assert.assertTrue(IpAddressUtils.isLocalhost(new IpAddress("::1")));
+		Assert.assertTrue(IpAddressUtils.isLocalhost(new IpAddress("::ffff:127.0.0.1")));
+		Assert.assertFalse(IpAddressUtils.isLocalhost(new IpAddress("::")));
+	}
+
+	@Test
+	public void isNonRoutableBatch() {
+		final Random rand = new Random(2);
+		final long[] ips = new long[10000];
+		final int[] intIps = new int[ips.length];
+		for (int i = 0; i < ips.length; i++) {
+			// bias towards the private ranges
+			final long prefix = new long[] {10L << 24, 0xAC1L << 20, 0xC0A8L << 16, 0}[i & 3];
+			ips[i] = (prefix | (rand.nextLong() & 0xFFFFFL)) ^ (rand.nextInt(4) == 0 ? rand.nextLong() & 0xFFFFFFFFL : 0);
+			intIps[i] = (int) ips[i];
+		}
+		final boolean[] results = new boolean[ips.length];
+		final boolean[] intResults = new boolean[ips.length];
+		IpAddressUtils.isNonRoutable(ips, results);
+		IpAddressUtils.isNonRoutable(intIps, intResults);
+		for (int i = 0; i < ips.length; i++) {
+			final boolean expected = IpAddressUtils.isNonRoutable(new IpAddress(ips[i]));
+			assertEquals(expected, results[i]);
+			assertEquals(expected, intResults[i]);
+		}
+	}
+
+	@Test
+	public void isNonRoutableIpv6() {
+		Assert.assertTrue(IpAddressUtils.isNonRoutable(new IpAddress("fc00::1")));
+		Assert.assertTrue(IpAddressUtils.isNonRoutable(new IpAddress("fdff:ffff::")));
+		Assert.assertTrue(IpAddressUtils.isNonRoutable(new IpAddress("fe80::1:2")));
+		Assert.assertTrue(IpAddressUtils.isNonRoutable(new IpAddress("febf::")));
+		Assert.assertTrue(IpAddressUtils.isNonRoutable(new IpAddress("::ffff:10.1.2.3")));
+		Assert.assertFalse(IpAddressUtils.isNonRoutable(new IpAddress("fec0::")));
+		Assert.assertFalse(IpAddressUtils.isNonRoutable(new IpAddress("2001:4860:4860::8888")));
+		Assert.assertFalse(IpAddressUtils.isNonRoutable(new IpAddress("::ffff:8.8.8.8")));
+		Assert.assertTrue(IpAddressUtils.isNonRoutable(new IpAddress("10.0.0.0")));
+		Assert.assertTrue(IpAddressUtils.isNonRoutable(new IpAddress("192.168.255.255")));
+		Assert.assertFalse(IpAddressUtils.isNonRoutable(new IpAddress("192.169.0.0")));
+		Assert.assertFalse(IpAddressUtils.isNonRoutable(new IpAddress("172.32.0.0")));
+	}
+
+	private static void assertIpv6(final long highBits, final long lowBits, final String ipAddress) {
+		final long[] out = new long[2];
+		IpAddressUtils.toIpv6Number(ipAddress, out);
+		assertEquals(ipAddress, highBits, out[0]);
+		assertEquals(ipAddress, lowBits, out[1]);
+	}
+}
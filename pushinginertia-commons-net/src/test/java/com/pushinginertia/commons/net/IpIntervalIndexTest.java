@@ -0,0 +1,316 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class IpIntervalIndexTest {
+	@Test
+	public void firstIntervalWins() {
+		final List<IpIntervalIndex.Interval<String>> intervals = Arrays.asList(
+				new IpIntervalIndex.Interval<>(100, 199, "a"),
+				new IpIntervalIndex.Interval<>(50, 300, "b"),
+				new IpIntervalIndex.Interval<>(150, 160, "c"),
+				new IpIntervalIndex.Interval<>(301, 310, "d"),
+				new IpIntervalIndex.Interval<>(0, 0, "e"),
+				new IpIntervalIndex.Interval<>(IpIntervalIndex.MAX_IP_NUMBER, IpIntervalIndex.MAX_IP_NUMBER, "f"));
+		final IpIntervalIndex<String> index = new IpIntervalIndex<>(intervals);
+		Assert.assertEquals("e", index.get(0));
+		Assert.assertNull(index.get(1));
+		Assert.assertNull(index.get(49));
+		Assert.assertEquals("b", index.get(50));
+		Assert.assertEquals("b", index.get(99));
+		Assert.assertEquals("a", index.get(100));
+		Assert.assertEquals("a", index.get(155));
+		Assert.assertEquals("a", index.get(199));
+		Assert.assertEquals("b", index.get(200));
+		Assert.assertEquals("b", index.get(300));
+		Assert.assertEquals("d", index.get(301));
+		Assert.assertEquals("d", index.get(310));
+		Assert.assertNull(index.get(311));
+		Assert.assertEquals("f", index.get(IpIntervalIndex.MAX_IP_NUMBER));
+		Assert.assertTrue(index.exists(new IpAddress("0.0.0.0").getIpNumber()));
+		Assert.assertFalse(index.exists(new IpAddress("1.0.0.0").getIpNumber()));
+		// e, b, a, b, d, f ("c" is hidden by "a")
+		Assert.assertEquals(6, index.size());
+	}
+
+	@Test
+	public void matchesLinearScan() {
+		final Random rand = new Random(1);
+		final List<IpIntervalIndex.Interval<Integer>> intervals = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			final long low = rand.nextInt(10000);
+			intervals.add(new IpIntervalIndex.Interval<>(low, low + rand.nextInt(200), i));
+		}
+		final IpIntervalIndex<Integer> index = new IpIntervalIndex<>(intervals);
+		for (long ip = 0; ip < 10300; ip++) {
+			Integer expected = null;
+			for (final IpIntervalIndex.Interval<Integer> interval: intervals) {
+				if (interval.getLow() <= ip && ip <= interval.getHigh()) {
+					expected = interval.getValue();
+					break;
+				}
+			}
+			Assert.assertEquals(expected, index.get(ip));
+		}
+	}
+
+	@Test
+	public void ipv6() {
+		final List<IpIntervalIndex.Interval<String>> intervals = Arrays.asList(
+				new IpIntervalIndex.Interval<>(IpAddressRange.parse("2001:4860::/32"), "Google"),
+				new IpIntervalIndex.Interval<>(IpAddressRange.parse("66.249.64.0/19"), "Google"),
+				new IpIntervalIndex.Interval<>(IpAddressRange.parse("2001:4860:4801::/48"), "hidden"),
+				new IpIntervalIndex.Interval<>(IpAddressRange.parse("2001:4800::/24"), "wide"),
+				new IpIntervalIndex.Interval<>(IpAddressRange.parse("ffff::/16"), "top"));
+		final IpIntervalIndex<String> index = new IpIntervalIndex<>(intervals);
+		Assert.assertEquals("Google", index.get(new IpAddress("2001:4860:4801:2::1")));
+		Assert.assertEquals("Google", index.get(new IpAddress("66.249.64.1")));
+		Assert.assertEquals("wide", index.get(new IpAddress("2001:4800::")));
+		Assert.assertEquals("wide", index.get(new IpAddress("2001:4861::")));
+		Assert.assertNull(index.get(new IpAddress("2001:4900::")));
+		Assert.assertEquals("top", index.get(new IpAddress("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")));
+		Assert.assertNull(index.get(new IpAddress("::ffff:66.249.64.1")));
+		Assert.assertTrue(index.exists(new IpAddress("2001:4860::")));
+		Assert.assertFalse(index.exists(new IpAddress("::")));
+		// 66.249.64.0/19, then wide, Google, wide and top
+		Assert.assertEquals(5, index.size());
+	}
+
+	@Test
+	public void ipv6MatchesLinearScan() {
+		final Random rand = new Random(3);
+		final long base = 0x20010DB800000000L;
+		final List<IpIntervalIndex.Interval<Integer>> intervals = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			// ranges that straddle the boundary between the lower and upper 64 bits
+			final long low = rand.nextInt(10000) - 5000;
+			final long high = low + rand.nextInt(200);
+			intervals.add(new IpIntervalIndex.Interval<>(ipv6(base, low), ipv6(base, high), i));
+		}
+		final IpIntervalIndex<Integer> index = new IpIntervalIndex<>(intervals);
+		for (long offset = -5100; offset < 5300; offset++) {
+			final IpAddress ip = ipv6(base, offset);
+			Integer expected = null;
+			for (final IpIntervalIndex.Interval<Integer> interval: intervals) {
+				if (ip.isBetween(interval.getLowAddress(), interval.getHighAddress())) {
+					expected = interval.getValue();
+					break;
+				}
+			}
+			Assert.assertEquals(expected, index.get(ip));
+		}
+	}
+
+	private static IpAddress ipv6(final long highBits, final long offset) {
+		return new IpAddress(offset < 0 ? highBits - 1 : highBits, offset);
+	}
+
+	@Test
+	public void batchMatchesSingleLookups() {
+		final Random rand = new Random(4);
+		final List<IpIntervalIndex.Interval<Integer>> intervals = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			final long low = rand.nextLong() & IpIntervalIndex.MAX_IP_NUMBER;
+			intervals.add(new IpIntervalIndex.Interval<>(low, Math.min(low + rand.nextInt(1 << 20), IpIntervalIndex.MAX_IP_NUMBER), i));
+		}
+		final IpIntervalIndex<Integer> index = new IpIntervalIndex<>(intervals);
+
+		final int n = 300000;
+		final long[] ips = new long[n];
+		final int[] intIps = new int[n];
+		for (int i = 0; i < n; i++) {
+			// a few numbers outside the IPv4 range are not found
+			ips[i] = i % 1000 == 0 ? -i : i % 1000 == 1 ? IpIntervalIndex.MAX_IP_NUMBER + i :
+					rand.nextLong() & IpIntervalIndex.MAX_IP_NUMBER;
+			intIps[i] = (int) ips[i];
+		}
+		for (final boolean parallel: new boolean[] {false, true}) {
+			final Integer[] values = new Integer[n];
+			final Integer[] intValues = new Integer[n];
+			final boolean[] exists = new boolean[n];
+			final boolean[] intExists = new boolean[n];
+			index.getAll(ips, values, parallel);
+			index.getAll(intIps, intValues, parallel);
+			index.existsAll(ips, exists, parallel);
+			index.existsAll(intIps, intExists, parallel);
+			for (int i = 0; i < n; i++) {
+				final Integer expected = ips[i] < 0 || ips[i] > IpIntervalIndex.MAX_IP_NUMBER ? null : index.get(ips[i]);
+				Assert.assertEquals(expected, values[i]);
+				Assert.assertEquals(expected != null, exists[i]);
+				Assert.assertEquals(index.get(intIps[i] & IpIntervalIndex.MAX_IP_NUMBER), intValues[i]);
+				Assert.assertEquals(intValues[i] != null, intExists[i]);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void batchOutputTooShort() {
+		new IpIntervalIndex<>(new ArrayList<IpIntervalIndex.Interval<String>>()).getAll(new long[2], new String[1], false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidInterval() {
+		new IpIntervalIndex.Interval<>(10, 9, "a");
+	}
+
+	/**
+	 * Compares lookups against a {@link TreeMap} keyed by the low IP number of each range, which like an interval tree
+	 * allocates an entry view or iterator for every lookup. Opt-in, see {@link #assumeBenchmarks()}.
+	 */
+	@Test
+	public void lookupLatency() {
+		assumeBenchmarks();
+		final int ranges = 200000;
+		final Random rand = new Random(2);
+		final List<IpIntervalIndex.Interval<String>> intervals = new ArrayList<>(ranges);
+		final TreeMap<Long, IpIntervalIndex.Interval<String>> tree = new TreeMap<>();
+		for (int i = 0; i < ranges; i++) {
+			// disjoint ranges of 256 addresses with gaps between them
+			final long low = (long) i * 16384 + rand.nextInt(8192);
+			final IpIntervalIndex.Interval<String> interval = new IpIntervalIndex.Interval<>(low, low + 255, "v" + i);
+			intervals.add(interval);
+			tree.put(low, interval);
+		}
+		Collections.shuffle(intervals, rand);
+		final IpIntervalIndex<String> index = new IpIntervalIndex<>(intervals);
+
+		final int ops = 1 << 20;
+		final long[] ips = new long[ops];
+		for (int i = 0; i < ops; i++) {
+			ips[i] = (long) (rand.nextDouble() * ranges * 16384);
+		}
+		final com.sun.management.ThreadMXBean bean = threadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		for (int round = 0; round < 3; round++) {
+			int treeHits = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < ops; i++) {
+				final Map.Entry<Long, IpIntervalIndex.Interval<String>> entry = tree.floorEntry(ips[i]);
+				if (entry != null && ips[i] <= entry.getValue().getHigh()) {
+					treeHits++;
+				}
+			}
+			final double treeNanos = (double) (System.nanoTime() - start) / ops;
+
+			int indexHits = 0;
+			final long before = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId);
+			start = System.nanoTime();
+			for (int i = 0; i < ops; i++) {
+				if (index.get(ips[i]) != null) {
+					indexHits++;
+				}
+			}
+			final double indexNanos = (double) (System.nanoTime() - start) / ops;
+			final long allocated = bean == null ? 0 : bean.getThreadAllocatedBytes(threadId) - before;
+
+			Assert.assertEquals(treeHits, indexHits);
+			if (round == 2) {
+				System.out.println("IpIntervalIndex.get=" + indexNanos + " ns/op (" + allocated + " bytes total), " +
+						"TreeMap.floorEntry=" + treeNanos + " ns/op, ranges=" + ranges);
+				Assert.assertTrue(bean == null || allocated < 1024);
+			}
+		}
+	}
+
+	/**
+	 * Compares a batch lookup of access log sized input with one lookup per IP address. Opt-in, see
+	 * {@link #assumeBenchmarks()}.
+	 */
+	@Test
+	public void batchThroughput() {
+		assumeBenchmarks();
+		final Random rand = new Random(5);
+		final List<IpIntervalIndex.Interval<String>> intervals = new ArrayList<>();
+		for (int i = 0; i < 200000; i++) {
+			final long low = (long) i * 16384 + rand.nextInt(8192);
+			intervals.add(new IpIntervalIndex.Interval<>(low, low + 255, "v" + i));
+		}
+		final IpIntervalIndex<String> index = new IpIntervalIndex<>(intervals);
+		final int n = 1 << 22;
+		final int[] ips = new int[n];
+		for (int i = 0; i < n; i++) {
+			ips[i] = rand.nextInt();
+		}
+		final String[] values = new String[n];
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			int hits = 0;
+			for (int i = 0; i < n; i++) {
+				if (index.get(new IpAddress(ips[i] & IpIntervalIndex.MAX_IP_NUMBER)) != null) {
+					hits++;
+				}
+			}
+			final double singleNanos = (double) (System.nanoTime() - start) / n;
+
+			start = System.nanoTime();
+			index.getAll(ips, values, false);
+			final double batchNanos = (double) (System.nanoTime() - start) / n;
+
+			start = System.nanoTime();
+			index.getAll(ips, values, true);
+			final double parallelNanos = (double) (System.nanoTime() - start) / n;
+
+			int batchHits = 0;
+			for (final String value: values) {
+				if (value != null) {
+					batchHits++;
+				}
+			}
+			Assert.assertEquals(hits, batchHits);
+			if (round == 2) {
+				System.out.println("IpIntervalIndex.get=" + singleNanos + " ns/op, getAll=" + batchNanos +
+						" ns/op, parallel getAll=" + parallelNanos + " ns/op, batch=" + n);
+			}
+		}
+	}
+
+	/**
+	 * Skips a benchmark unless the tests are run with <code>-Dbenchmarks=true</code>. Timings and allocation counts
+	 * depend on the JIT, so they can't be asserted under an interpreter, a coverage agent or a cold JVM.
+	 */
+	static void assumeBenchmarks() {
+		Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+	}
+
+	static com.sun.management.ThreadMXBean threadMXBean() {
+		try {
+			final com.sun.management.ThreadMXBean bean =
+					(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (!bean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			bean.setThreadAllocatedMemoryEnabled(true);
+			return bean;
+		} catch (ClassCastException e) {
+			return null;
+		} catch (NoClassDefFoundError e) {
+			return null;
+		}
+	}
+}
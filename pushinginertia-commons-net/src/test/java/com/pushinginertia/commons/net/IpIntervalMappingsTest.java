@@ -16,11 +16,26 @@
 package com.pushinginertia.commons.net;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class IpIntervalMappingsTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void initializer() throws IOException {
 		final IpIntervalMappings.CsvInitializer initializer = new IpIntervalMappings.CsvInitializer(IpIntervalMappings.class);
@@ -31,5 +46,118 @@ public class IpIntervalMappingsTest {
 		Assert.assertNull(f.get(new IpAddress("66.249.96.0")));
 		Assert.assertEquals("Baidu", f.get(new IpAddress("180.76.15.143")));
 		Assert.assertNull(f.get(new IpAddress("1.1.1.1")));
+
+		final long[] ips = {
+				IpAddressUtils.toIpNumber("180.76.15.143"),
+				IpAddressUtils.toIpNumber("1.1.1.1"),
+				IpAddressUtils.toIpNumber("66.249.64.0")};
+		final String[] values = new String[ips.length];
+		f.getAll(ips, values, false);
+		Assert.assertArrayEquals(new String[] {"Baidu", null, "Google"}, values);
+		final boolean[] exists = new boolean[ips.length];
+		f.existsAll(ips, exists, true);
+		Assert.assertTrue(exists[0]);
+		Assert.assertFalse(exists[1]);
+		Assert.assertTrue(exists[2]);
+	}
+
+	@Test
+	public void ipv6() {
+		final IpIntervalMappings.CsvInitializer initializer = new IpIntervalMappings.CsvInitializer(IpIntervalMappings.class) {
+			@Override
+			protected String getResourceName() {
+				return "/IpIntervalMappingsIpv6.csv";
+			}
+		};
+		final IpIntervalMappings<String> f = new IpIntervalMappings<>(initializer);
+
+		Assert.assertEquals("Google", f.get(new IpAddress("2001:4860:4801:10::1")));
+		Assert.assertEquals("Google", f.get(new IpAddress("66.249.64.1")));
+		Assert.assertEquals("Facebook", f.get(new IpAddress("2a03:2880:f012:1::face:b00c")));
+		Assert.assertNull(f.get(new IpAddress("2001:4860:4802::")));
+		Assert.assertTrue(f.exists(new IpAddress("2a03:2880::")));
+		Assert.assertFalse(f.exists(new IpAddress("::ffff:66.249.64.1")));
+	}
+
+	@Test
+	public void reloadFromFile() throws IOException {
+		final File file = folder.newFile("networks.csv");
+		write(file, "66.249.64.0/19, Google\n");
+		final IpIntervalMappings<String> f = new IpIntervalMappings<>(new IpIntervalMappings.CsvFileInitializer(file));
+		Assert.assertEquals("Google", f.get(new IpAddress("66.249.64.1")));
+		Assert.assertEquals(1, f.getIntervalCount());
+		Assert.assertEquals(1, f.getRangeCount());
+		Assert.assertEquals(1, f.getReloadCount());
+		Assert.assertTrue(f.getLastReloadTime() > 0);
+
+		write(file, "66.249.64.0/19, Googlebot\n180.76.15.0/24, Baidu\n");
+		Assert.assertTrue(f.reload());
+		Assert.assertEquals("Googlebot", f.get(new IpAddress("66.249.64.1")));
+		Assert.assertEquals("Baidu", f.get(new IpAddress("180.76.15.143")));
+		Assert.assertEquals(2, f.getIntervalCount());
+		Assert.assertEquals(2, f.getReloadCount());
+
+		// a bad file or a missing one keeps the last good intervals
+		write(file, "not an IP range, Broken\n");
+		Assert.assertFalse(f.reload());
+		Assert.assertTrue(file.delete());
+		Assert.assertFalse(f.reload());
+		Assert.assertEquals("Baidu", f.get(new IpAddress("180.76.15.143")));
+		Assert.assertEquals(2, f.getIntervalCount());
+		Assert.assertEquals(2, f.getReloadCount());
+		Assert.assertEquals(2, f.getReloadFailureCount());
+		Assert.assertTrue(f.getLastReloadDurationNanos() > 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failedInitialLoad() {
+		final IpIntervalMappings<String> f =
+				new IpIntervalMappings<>(new IpIntervalMappings.CsvFileInitializer(new File(folder.getRoot(), "none")));
+		Assert.assertEquals(1, f.getReloadFailureCount());
+		f.get(new IpAddress("1.1.1.1"));
+	}
+
+	@Test
+	public void scheduledReloadDoesNotBlockReaders() throws Exception {
+		final File file = folder.newFile("networks.csv");
+		write(file, "66.249.64.0/19, Google\n");
+		final IpIntervalMappings<String> f = new IpIntervalMappings<>(new IpIntervalMappings.CsvFileInitializer(file));
+		write(file, "66.249.64.0/19, Googlebot\n");
+
+		final AtomicBoolean unexpected = new AtomicBoolean();
+		final AtomicBoolean done = new AtomicBoolean();
+		final Thread reader = new Thread(() -> {
+			final IpAddress ip = new IpAddress("66.249.64.1");
+			while (!done.get()) {
+				final String value = f.get(ip);
+				if (!"Google".equals(value) && !"Googlebot".equals(value)) {
+					unexpected.set(true);
+				}
+			}
+		});
+		reader.start();
+
+		final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try {
+			final ScheduledFuture<?> future = f.scheduleReload(executor, 10, TimeUnit.MILLISECONDS);
+			final long deadline = System.currentTimeMillis() + 10000;
+			while (f.getReloadCount() < 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			future.cancel(false);
+		} finally {
+			executor.shutdownNow();
+			done.set(true);
+			reader.join();
+		}
+		Assert.assertTrue(f.getReloadCount() >= 3);
+		Assert.assertEquals("Googlebot", f.get(new IpAddress("66.249.64.1")));
+		Assert.assertFalse(unexpected.get());
+	}
+
+	private static void write(final File file, final String contents) throws IOException {
+		try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+			writer.write(contents);
+		}
 	}
 }
@@ -0,0 +1,178 @@
+/* Copyright (c) 2011-2021 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class IpRangeDatabaseTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void matchesIpIntervalMappings() throws IOException {
+		final File file = folder.newFile("mappings.db");
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			IpRangeDatabase.compile(new InputStreamReader(
+					getClass().getResourceAsStream("/IpIntervalMappings.csv"), StandardCharsets.UTF_8), out);
+		} finally {
+			out.close();
+		}
+		final IpRangeDatabase db = IpRangeDatabase.open(file);
+		final IpIntervalMappings<String> mappings =
+				new IpIntervalMappings<>(new IpIntervalMappings.CsvInitializer(IpIntervalMappings.class));
+
+		Assert.assertEquals("Google", db.get(new IpAddress("66.249.64.0")));
+		Assert.assertEquals("Google", db.get(new IpAddress("66.249.95.255")));
+		Assert.assertNull(db.get(new IpAddress("66.249.96.0")));
+		Assert.assertEquals("Baidu", db.get(new IpAddress("180.76.15.143")));
+		Assert.assertFalse(db.exists(new IpAddress("1.1.1.1").getIpNumber()));
+
+		final Random rand = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			// probe around the bundled ranges as well as uniformly
+			final long ip = i % 2 == 0 ?
+					rand.nextLong() & IpIntervalIndex.MAX_IP_NUMBER :
+					new IpAddress("66.249.64.0").getIpNumber() + rand.nextInt(1 << 16) - (1 << 15);
+			Assert.assertEquals(mappings.get(new IpAddress(ip)), db.get(ip));
+		}
+	}
+
+	@Test
+	public void countries() throws IOException {
+		final String csv =
+				"# country ranges\n" +
+				"0.0.0.0 - 0.0.0.255, ca\n" +
+				"\n" +
+				"10.0.0.0/8, us\n" +
+				"10.1.0.0/16, ca\n" +
+				"255.255.255.0/24, de\n";
+		final File file = compile(csv);
+		final IpRangeDatabase db = IpRangeDatabase.open(file);
+		// 10.1.0.0/16 is hidden by the first range that contains it
+		Assert.assertEquals(3, db.size());
+
+		Assert.assertEquals(new IpAddressAndCountry("0.0.0.0", "CA"), db.getIpAddressAndCountry(new IpAddress("0.0.0.0")));
+		Assert.assertEquals(new IpAddressAndCountry("10.1.2.3", "US"), db.getIpAddressAndCountry(new IpAddress("10.1.2.3")));
+		Assert.assertEquals(new IpAddressAndCountry("11.0.0.0", null), db.getIpAddressAndCountry(new IpAddress("11.0.0.0")));
+		Assert.assertEquals("de", db.get(IpIntervalIndex.MAX_IP_NUMBER));
+		Assert.assertNull(db.get(new IpAddress("255.255.254.255")));
+	}
+
+	@Test
+	public void writeIndex() throws IOException {
+		final List<IpIntervalIndex.Interval<String>> intervals = new ArrayList<>();
+		intervals.add(new IpIntervalIndex.Interval<>(100, 200, "\u00fc"));
+		intervals.add(new IpIntervalIndex.Interval<>(150, 300, "b"));
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		IpRangeDatabase.write(new IpIntervalIndex<>(intervals), bytes);
+		final File file = folder.newFile("index.db");
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes.toByteArray());
+		} finally {
+			out.close();
+		}
+
+		final IpRangeDatabase db = IpRangeDatabase.open(file);
+		Assert.assertEquals(2, db.size());
+		Assert.assertNull(db.get(99));
+		Assert.assertEquals("\u00fc", db.get(200));
+		Assert.assertEquals("b", db.get(201));
+		Assert.assertEquals("b", db.get(300));
+		Assert.assertNull(db.get(301));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void malformedCsv() throws IOException {
+		compile("10.0.0.0/8\n");
+	}
+
+	@Test(expected = IOException.class)
+	public void notADatabase() throws IOException {
+		final File file = folder.newFile("bad.db");
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			out.write("10.0.0.0/8,us\n".getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		IpRangeDatabase.open(file);
+	}
+
+	@Test
+	public void corruptStringCount() throws IOException {
+		assertCorrupt(compile("10.0.0.0/8,us\n"), 12, Integer.MAX_VALUE);
+	}
+
+	@Test
+	public void corruptRanges() throws IOException {
+		final String csv = "10.0.0.0/8,us\n192.168.0.0/16,ca\n";
+		// string index past the end of the string table, then negative
+		assertCorrupt(compile(csv), 16 + 8, 2);
+		assertCorrupt(compile(csv), 16 + 8, -1);
+		// high below low
+		assertCorrupt(compile(csv), 16 + 4, 0x09FFFFFF);
+		// second range starts inside the first, so the ranges are no longer sorted and disjoint
+		assertCorrupt(compile(csv), 16 + 12, 0x0A000001);
+	}
+
+	/**
+	 * Overwrites an int in a database file and checks that it no longer opens.
+	 */
+	private static void assertCorrupt(final File file, final long position, final int value) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(position);
+			raf.writeInt(value);
+		} finally {
+			raf.close();
+		}
+		try {
+			IpRangeDatabase.open(file);
+			Assert.fail();
+		} catch (final IOException e) {
+			Assert.assertEquals("Truncated or corrupt IP range database.", e.getMessage());
+		}
+	}
+
+	private File compile(final String csv) throws IOException {
+		final File file = folder.newFile();
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			IpRangeDatabase.compile(new StringReader(csv), out);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
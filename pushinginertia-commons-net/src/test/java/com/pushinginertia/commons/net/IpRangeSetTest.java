@@ -0,0 +1,116 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IpRangeSetTest {
+	@Test
+	public void coalesces() {
+		final IpRangeSet set = IpRangeSet.parse(Arrays.asList(
+				"10.0.1.0/24", "10.0.0.0 - 10.0.0.255", "10.0.0.10", "192.168.0.1", "10.0.2.0/23", "192.168.0.3"));
+		assertEquals(3, set.size());
+		assertEquals("IpRangeSet{10.0.0.0-10.0.3.255, 192.168.0.1-192.168.0.1, 192.168.0.3-192.168.0.3}",
+				set.toString());
+		assertEquals(1026, set.getIpNumberCount());
+		assertEquals(Arrays.asList("10.0.0.0/22", "192.168.0.1/32", "192.168.0.3/32"), set.toCidrNotationList());
+		assertEquals(IpAddressRange.fromIpAddressRange("10.0.0.0", "10.0.3.255").getLowAddress(),
+				set.toRanges().get(0).getLowAddress());
+
+		assertTrue(set.contains(new IpAddress("10.0.2.17")));
+		assertTrue(set.contains(new IpAddress("192.168.0.3")));
+		assertFalse(set.contains(new IpAddress("192.168.0.2")));
+		assertFalse(set.contains(new IpAddress("9.255.255.255")));
+		assertFalse(set.contains(new IpAddress("::ffff:10.0.0.1")));
+		assertTrue(set.containsAll(IpAddressRange.parse("10.0.1.128/25")));
+		assertFalse(set.containsAll(IpAddressRange.parse("192.168.0.1 - 192.168.0.3")));
+
+		assertSame(IpRangeSet.EMPTY, IpRangeSet.of());
+		assertFalse(IpRangeSet.EMPTY.contains(0));
+		assertEquals(set, IpRangeSet.of(set.toRanges()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsIpv6() {
+		IpRangeSet.of(IpAddressRange.parse("2001:db8::/32"));
+	}
+
+	@Test
+	public void fullAddressSpace() {
+		final IpRangeSet all = IpRangeSet.of(new long[] {0}, new long[] {0xFFFFFFFFL});
+		final IpRangeSet one = IpRangeSet.of(new long[] {0xFFFFFFFFL}, new long[] {0xFFFFFFFFL});
+		assertEquals(Arrays.asList("0.0.0.0/0"), all.toCidrNotationList());
+		assertEquals(0xFFFFFFFEL, all.difference(one).getHigh(0));
+		assertEquals(one, all.intersection(one));
+		assertEquals(all, one.union(all));
+		assertTrue(one.difference(all).isEmpty());
+	}
+
+	@Test
+	public void algebraMatchesBitmaps() {
+		final Random random = new Random(24);
+		for (int round = 0; round < 300; round++) {
+			final boolean[] a = new boolean[1024];
+			final boolean[] b = new boolean[1024];
+			final IpRangeSet setA = randomSet(random, a);
+			final IpRangeSet setB = randomSet(random, b);
+
+			final IpRangeSet union = setA.union(setB);
+			final IpRangeSet intersection = setA.intersection(setB);
+			final IpRangeSet difference = setA.difference(setB);
+			for (int ip = 0; ip < 1024; ip++) {
+				assertEquals(a[ip], setA.contains(ip));
+				assertEquals(a[ip] || b[ip], union.contains(ip));
+				assertEquals(a[ip] && b[ip], intersection.contains(ip));
+				assertEquals(a[ip] && !b[ip], difference.contains(ip));
+			}
+			assertNormalized(union);
+			assertNormalized(intersection);
+			assertNormalized(difference);
+		}
+	}
+
+	private static IpRangeSet randomSet(final Random random, final boolean[] bitmap) {
+		final int n = random.nextInt(10);
+		final long[] lows = new long[n];
+		final long[] highs = new long[n];
+		for (int i = 0; i < n; i++) {
+			lows[i] = random.nextInt(1024);
+			highs[i] = Math.min(1023, lows[i] + random.nextInt(100));
+			Arrays.fill(bitmap, (int) lows[i], (int) highs[i] + 1, true);
+		}
+		final IpRangeSet set = IpRangeSet.of(lows, highs);
+		assertNormalized(set);
+		return set;
+	}
+
+	private static void assertNormalized(final IpRangeSet set) {
+		for (int i = 0; i < set.size(); i++) {
+			assertTrue(set.getLow(i) <= set.getHigh(i));
+			if (i > 0) {
+				assertTrue("ranges overlap or touch", set.getLow(i) > set.getHigh(i - 1) + 1);
+			}
+		}
+	}
+}
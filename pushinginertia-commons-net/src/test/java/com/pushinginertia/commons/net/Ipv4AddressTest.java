@@ -0,0 +1,62 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Ipv4AddressTest {
+	@Test
+	public void conversions() {
+		final Ipv4Address ip = new Ipv4Address("202.191.68.1");
+		assertEquals(3401532417L, ip.getIpNumber());
+		assertEquals((int) 3401532417L, ip.toInt());
+		assertEquals("202.191.68.1", ip.getIpAddress());
+		assertEquals(new IpAddress("202.191.68.1"), ip.toIpAddress());
+		assertEquals(ip, Ipv4Address.valueOf(new IpAddress("202.191.68.1")));
+		assertEquals(ip, Ipv4Address.fromInt(ip.toInt()));
+		assertEquals(ip.hashCode(), new Ipv4Address(3401532417L).hashCode());
+		assertNotEquals(ip, new Ipv4Address("202.191.68.2"));
+		assertEquals("255.255.255.255", new Ipv4Address(0xFFFFFFFFL).getIpAddress());
+	}
+
+	@Test
+	public void compareUnsigned() {
+		assertTrue(new Ipv4Address("127.0.0.1").compareTo(new Ipv4Address("128.0.0.1")) < 0);
+		assertTrue(new Ipv4Address("255.0.0.0").compareTo(new Ipv4Address("1.0.0.0")) > 0);
+		assertEquals(0, new Ipv4Address("10.0.0.1").compareTo(new Ipv4Address(0x0A000001L)));
+	}
+
+	@Test
+	public void invalid() {
+		try {
+			new Ipv4Address(0x100000000L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			Ipv4Address.valueOf(new IpAddress("::1"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/* Copyright (c) 2011-2013 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.commons.net;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackedIpAddressAndCountryTest {
+	@Test
+	public void roundTrip() {
+		final IpAddressAndCountry value = new IpAddressAndCountry("202.191.68.1", "jp");
+		final long packed = PackedIpAddressAndCountry.pack(value);
+		assertEquals(3401532417L, PackedIpAddressAndCountry.ipNumber(packed));
+		assertEquals("JP", PackedIpAddressAndCountry.countryCode(packed));
+		assertTrue(PackedIpAddressAndCountry.hasCountryCode(packed));
+		assertEquals(value, PackedIpAddressAndCountry.unpack(packed));
+
+		final long noCountry = PackedIpAddressAndCountry.pack(0xFFFFFFFFL, null);
+		assertEquals(0xFFFFFFFFL, noCountry);
+		assertFalse(PackedIpAddressAndCountry.hasCountryCode(noCountry));
+		assertNull(PackedIpAddressAndCountry.countryCode(noCountry));
+		assertEquals(new IpAddressAndCountry("255.255.255.255", null), PackedIpAddressAndCountry.unpack(noCountry));
+
+		// codes that aren't two letters still round trip
+		assertEquals("A1", PackedIpAddressAndCountry.countryCode(PackedIpAddressAndCountry.pack(0, "a1")));
+	}
+
+	@Test
+	public void countryCodesAreShared() {
+		final long packed = PackedIpAddressAndCountry.pack(1, "ca");
+		assertSame(PackedIpAddressAndCountry.countryCode(packed), PackedIpAddressAndCountry.countryCode(packed));
+		assertSame(
+				new IpAddressAndCountry("10.0.0.1", new String("ca")).getCountryCode(),
+				new IpAddressAndCountry("10.0.0.2", "CA").getCountryCode());
+	}
+
+	@Test
+	public void invalid() {
+		try {
+			PackedIpAddressAndCountry.pack(new IpAddressAndCountry("2001:db8::1", "US"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			PackedIpAddressAndCountry.pack(-1, "US");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			PackedIpAddressAndCountry.pack(1, "USA");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
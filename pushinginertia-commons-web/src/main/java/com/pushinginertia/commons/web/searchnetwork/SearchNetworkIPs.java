@@ -16,14 +16,14 @@
 package com.pushinginertia.commons.web.searchnetwork;
 
 import com.pushinginertia.commons.core.init.ListInitializer;
+import com.pushinginertia.commons.net.IpIntervalIndex;
 import com.pushinginertia.commons.net.IpIntervalMappings;
-import edu.jwetherell.algorithms.dataStructures.IntervalTree;
 
 /**
  * Enumerates the big and well-known search networks, such as Google or Bing.
  */
 public class SearchNetworkIPs extends IpIntervalMappings<String> {
-	public SearchNetworkIPs(final ListInitializer<IntervalTree.IntervalData<String>> initializer) {
+	public SearchNetworkIPs(final ListInitializer<IpIntervalIndex.Interval<String>> initializer) {
 		super(initializer);
 	}
 }